@@ -26,6 +26,7 @@ import eu.interedition.collatex.util.StreamUtil;
 import eu.interedition.collatex.util.VertexMatch;
 
 import java.util.*;
+import java.util.function.ToIntFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -64,6 +65,22 @@ public interface CollationAlgorithm {
         }
 
         protected void merge(VariantGraph into, Iterable<Token> witnessTokens, Map<Token, VariantGraph.Vertex> alignments) {
+            final List<Token> tokens = StreamUtil.stream(witnessTokens).collect(Collectors.toList());
+            final int[] vertices = merge(into, tokens, token -> Optional.ofNullable(alignments.get(token)).map(VariantGraph.Vertex::id).orElse(-1));
+
+            witnessTokenVertices = new HashMap<>();
+            for (int tc = 0; tc < vertices.length; tc++) {
+                witnessTokenVertices.put(tokens.get(tc), into.vertex(vertices[tc]));
+            }
+        }
+
+        /**
+         * Merges a witness into the given graph.
+         *
+         * @param alignments yields the vertex a token is aligned with or <code>-1</code>, if the token is not aligned
+         * @return the vertices of the witness' tokens in token order
+         */
+        protected int[] merge(MutableIndexedVariantGraph into, Iterable<Token> witnessTokens, ToIntFunction<Token> alignments) {
             final Witness witness = StreamUtil.stream(witnessTokens)
                     .findFirst()
                     .map(Token::getWitness)
@@ -72,25 +89,30 @@ public interface CollationAlgorithm {
             if (LOG.isLoggable(Level.FINE)) {
                 LOG.log(Level.FINE, "{0} + {1}: Merge comparand into graph", new Object[]{into, witness});
             }
-            witnessTokenVertices = new HashMap<>();
-            VariantGraph.Vertex last = into.getStart();
-            final Set<Witness> witnessSet = Collections.singleton(witness);
+            int[] vertices = new int[16];
+            int tokenCount = 0;
+            int last = into.start();
+            final WitnessSet witnessSet = into.witnessIndex().of(witness);
             for (Token token : witnessTokens) {
-                VariantGraph.Vertex matchingVertex = alignments.get(token);
-                if (matchingVertex == null) {
-                    matchingVertex = into.add(token);
+                int matchingVertex = alignments.applyAsInt(token);
+                if (matchingVertex < 0) {
+                    matchingVertex = into.addVertex(token);
                 } else {
                     if (LOG.isLoggable(Level.FINE)) {
-                        LOG.log(Level.FINE, "Match: {0} to {1}", new Object[]{matchingVertex, token});
+                        LOG.log(Level.FINE, "Match: {0} to {1}", new Object[]{into.tokens(matchingVertex), token});
                     }
-                    matchingVertex.add(Collections.singleton(token));
+                    into.addToken(matchingVertex, token);
+                }
+                if (tokenCount == vertices.length) {
+                    vertices = Arrays.copyOf(vertices, tokenCount * 2);
                 }
-                witnessTokenVertices.put(token, matchingVertex);
+                vertices[tokenCount++] = matchingVertex;
 
                 into.connect(last, matchingVertex, witnessSet);
                 last = matchingVertex;
             }
-            into.connect(last, into.getEnd(), witnessSet);
+            into.connect(last, into.end(), witnessSet);
+            return Arrays.copyOf(vertices, tokenCount);
         }
 
         protected void mergeTranspositions(VariantGraph into, Iterable<SortedSet<VertexMatch.WithToken>> transpositions) {
@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A variant graph kept in primitive arrays.
+ * <p>
+ * Vertices are dense integer identifiers; edges, tokens and transposition memberships are stored in
+ * parallel arrays and chained per vertex (a "forward star", i.e. a CSR layout which can still grow). Compared to
+ * {@link VariantGraph}, no objects are allocated per vertex or edge apart from the witness sets labelling the
+ * edges.
+ */
+public class CompactVariantGraph implements MutableIndexedVariantGraph {
+
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final WitnessSet.Index witnessIndex = new WitnessSet.Index();
+    private final int start;
+    private final int end;
+
+    private int vertexCount = 0;
+    private int[] firstOutgoing = new int[INITIAL_CAPACITY];
+    private int[] firstIncoming = new int[INITIAL_CAPACITY];
+    private int[] outDegree = new int[INITIAL_CAPACITY];
+    private int[] inDegree = new int[INITIAL_CAPACITY];
+    private int[] firstToken = new int[INITIAL_CAPACITY];
+    private int[] firstMembership = new int[INITIAL_CAPACITY];
+
+    private int edgeCount = 0;
+    private int[] edgeSource = new int[INITIAL_CAPACITY];
+    private int[] edgeTarget = new int[INITIAL_CAPACITY];
+    private int[] nextOutgoing = new int[INITIAL_CAPACITY];
+    private int[] nextIncoming = new int[INITIAL_CAPACITY];
+    private WitnessSet[] edgeWitnesses = new WitnessSet[INITIAL_CAPACITY];
+
+    private int tokenCount = 0;
+    private Token[] tokens = new Token[INITIAL_CAPACITY];
+    private int[] nextToken = new int[INITIAL_CAPACITY];
+
+    private final List<int[]> transpositions = new ArrayList<>();
+    private int membershipCount = 0;
+    private int[] membershipTransposition = new int[INITIAL_CAPACITY];
+    private int[] nextMembership = new int[INITIAL_CAPACITY];
+
+    public CompactVariantGraph() {
+        this.start = newVertex();
+        this.end = newVertex();
+        link(start, end, witnessIndex.empty());
+    }
+
+    @Override
+    public int start() {
+        return start;
+    }
+
+    @Override
+    public int end() {
+        return end;
+    }
+
+    @Override
+    public int size() {
+        return vertexCount;
+    }
+
+    @Override
+    public int addVertex(Token token) {
+        final int vertex = newVertex();
+        addToken(vertex, token);
+        return vertex;
+    }
+
+    @Override
+    public void addToken(int vertex, Token token) {
+        if (tokenCount == tokens.length) {
+            tokens = Arrays.copyOf(tokens, tokenCount * 2);
+            nextToken = Arrays.copyOf(nextToken, tokenCount * 2);
+        }
+        tokens[tokenCount] = token;
+        nextToken[tokenCount] = firstToken[vertex];
+        firstToken[vertex] = tokenCount++;
+    }
+
+    @Override
+    public void connect(int from, int to, Set<Witness> witnesses) {
+        if (from == to) {
+            throw new IllegalArgumentException();
+        }
+
+        final int edge = edge(from, to);
+        if (edge == NONE) {
+            link(from, to, witnessIndex.of(witnesses));
+        } else {
+            edgeWitnesses[edge] = edgeWitnesses[edge].union(witnessIndex.of(witnesses));
+        }
+
+        final int startEnd = edge(start, end);
+        if (startEnd != NONE) {
+            unlink(startEnd);
+        }
+    }
+
+    @Override
+    public int transpose(int[] vertices) {
+        if (vertices.length == 0) {
+            throw new IllegalArgumentException();
+        }
+        final int[] members = Arrays.stream(vertices).sorted().distinct().toArray();
+        for (int m = firstMembership[members[0]]; m != NONE; m = nextMembership[m]) {
+            if (Arrays.equals(members, transpositions.get(membershipTransposition[m]))) {
+                return membershipTransposition[m];
+            }
+        }
+        final int transposition = transpositions.size();
+        transpositions.add(members);
+        for (int vertex : members) {
+            if (membershipCount == membershipTransposition.length) {
+                membershipTransposition = Arrays.copyOf(membershipTransposition, membershipCount * 2);
+                nextMembership = Arrays.copyOf(nextMembership, membershipCount * 2);
+            }
+            membershipTransposition[membershipCount] = transposition;
+            nextMembership[membershipCount] = firstMembership[vertex];
+            firstMembership[vertex] = membershipCount++;
+        }
+        return transposition;
+    }
+
+    @Override
+    public int outDegree(int vertex) {
+        return outDegree[vertex];
+    }
+
+    @Override
+    public int inDegree(int vertex) {
+        return inDegree[vertex];
+    }
+
+    @Override
+    public int[] outgoing(int vertex, int[] targets) {
+        if (targets.length < outDegree[vertex]) {
+            targets = new int[outDegree[vertex]];
+        }
+        int i = 0;
+        for (int e = firstOutgoing[vertex]; e != NONE; e = nextOutgoing[e]) {
+            targets[i++] = edgeTarget[e];
+        }
+        return targets;
+    }
+
+    @Override
+    public int[] incoming(int vertex, int[] sources) {
+        if (sources.length < inDegree[vertex]) {
+            sources = new int[inDegree[vertex]];
+        }
+        int i = 0;
+        for (int e = firstIncoming[vertex]; e != NONE; e = nextIncoming[e]) {
+            sources[i++] = edgeSource[e];
+        }
+        return sources;
+    }
+
+    @Override
+    public WitnessSet witnesses(int from, int to) {
+        final int edge = edge(from, to);
+        return (edge == NONE ? null : edgeWitnesses[edge]);
+    }
+
+    @Override
+    public WitnessSet witnesses(int vertex) {
+        WitnessSet witnesses = witnessIndex.empty();
+        for (int e = firstIncoming[vertex]; e != NONE; e = nextIncoming[e]) {
+            witnesses = witnesses.union(edgeWitnesses[e]);
+        }
+        return witnesses;
+    }
+
+    @Override
+    public WitnessSet witnesses() {
+        WitnessSet witnesses = witnessIndex.empty();
+        for (int e = firstOutgoing[start]; e != NONE; e = nextOutgoing[e]) {
+            witnesses = witnesses.union(edgeWitnesses[e]);
+        }
+        return witnesses;
+    }
+
+    @Override
+    public WitnessSet.Index witnessIndex() {
+        return witnessIndex;
+    }
+
+    @Override
+    public Collection<Token> tokens(int vertex) {
+        final List<Token> vertexTokens = new ArrayList<>();
+        for (int t = firstToken[vertex]; t != NONE; t = nextToken[t]) {
+            vertexTokens.add(tokens[t]);
+        }
+        return vertexTokens;
+    }
+
+    @Override
+    public int[] transpositions(int vertex) {
+        int count = 0;
+        for (int m = firstMembership[vertex]; m != NONE; m = nextMembership[m]) {
+            count++;
+        }
+        // memberships are prepended, so they are listed in descending order
+        final int[] vertexTranspositions = new int[count];
+        for (int m = firstMembership[vertex]; m != NONE; m = nextMembership[m]) {
+            vertexTranspositions[--count] = membershipTransposition[m];
+        }
+        return vertexTranspositions;
+    }
+
+    @Override
+    public int[] transposition(int transposition) {
+        return transpositions.get(transposition).clone();
+    }
+
+    @Override
+    public int transpositionCount() {
+        return transpositions.size();
+    }
+
+    @Override
+    public String toString() {
+        return witnesses().toString();
+    }
+
+    private int newVertex() {
+        if (vertexCount == firstOutgoing.length) {
+            final int capacity = vertexCount * 2;
+            firstOutgoing = Arrays.copyOf(firstOutgoing, capacity);
+            firstIncoming = Arrays.copyOf(firstIncoming, capacity);
+            outDegree = Arrays.copyOf(outDegree, capacity);
+            inDegree = Arrays.copyOf(inDegree, capacity);
+            firstToken = Arrays.copyOf(firstToken, capacity);
+            firstMembership = Arrays.copyOf(firstMembership, capacity);
+        }
+        firstOutgoing[vertexCount] = NONE;
+        firstIncoming[vertexCount] = NONE;
+        firstToken[vertexCount] = NONE;
+        firstMembership[vertexCount] = NONE;
+        return vertexCount++;
+    }
+
+    private int edge(int from, int to) {
+        for (int e = firstOutgoing[from]; e != NONE; e = nextOutgoing[e]) {
+            if (edgeTarget[e] == to) {
+                return e;
+            }
+        }
+        return NONE;
+    }
+
+    private void link(int from, int to, WitnessSet witnesses) {
+        if (edgeCount == edgeSource.length) {
+            final int capacity = edgeCount * 2;
+            edgeSource = Arrays.copyOf(edgeSource, capacity);
+            edgeTarget = Arrays.copyOf(edgeTarget, capacity);
+            nextOutgoing = Arrays.copyOf(nextOutgoing, capacity);
+            nextIncoming = Arrays.copyOf(nextIncoming, capacity);
+            edgeWitnesses = Arrays.copyOf(edgeWitnesses, capacity);
+        }
+        final int edge = edgeCount++;
+        edgeSource[edge] = from;
+        edgeTarget[edge] = to;
+        edgeWitnesses[edge] = witnesses;
+        nextOutgoing[edge] = firstOutgoing[from];
+        firstOutgoing[from] = edge;
+        nextIncoming[edge] = firstIncoming[to];
+        firstIncoming[to] = edge;
+        outDegree[from]++;
+        inDegree[to]++;
+    }
+
+    private void unlink(int edge) {
+        final int from = edgeSource[edge];
+        final int to = edgeTarget[edge];
+        if (firstOutgoing[from] == edge) {
+            firstOutgoing[from] = nextOutgoing[edge];
+        } else {
+            int e = firstOutgoing[from];
+            while (nextOutgoing[e] != edge) {
+                e = nextOutgoing[e];
+            }
+            nextOutgoing[e] = nextOutgoing[edge];
+        }
+        if (firstIncoming[to] == edge) {
+            firstIncoming[to] = nextIncoming[edge];
+        } else {
+            int e = firstIncoming[to];
+            while (nextIncoming[e] != edge) {
+                e = nextIncoming[e];
+            }
+            nextIncoming[e] = nextIncoming[edge];
+        }
+        edgeWitnesses[edge] = null;
+        outDegree[from]--;
+        inDegree[to]--;
+    }
+}
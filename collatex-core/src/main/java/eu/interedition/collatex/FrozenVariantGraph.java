@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex;
+
+import eu.interedition.collatex.util.VariantGraphRanking;
+import eu.interedition.collatex.util.VariantGraphTraversal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of a finished variant graph, kept in flat arrays.
+ * <p>
+ * Only vertices reachable from the start vertex are retained. They are renumbered in rank order, so identifiers
+ * are a topological order of the graph, the start vertex is <code>0</code>, the end vertex is
+ * <code>size() - 1</code> and the vertices of each rank are contiguous. Adjacency, tokens and transpositions are
+ * stored in CSR layout; ranks and the witnesses of each vertex are computed once when freezing.
+ * <p>
+ * A frozen graph never changes after construction and can be read by concurrent threads without locking.
+ *
+ * @see VariantGraph#freeze()
+ */
+public final class FrozenVariantGraph implements IndexedVariantGraph {
+
+    private static final int[] NONE = new int[0];
+
+    private final WitnessSet.Index witnessIndex = new WitnessSet.Index();
+    private final WitnessSet witnesses;
+    private final int size;
+
+    private final int[] ranks;
+    private final int[] rankOffsets;
+
+    private final int[] outOffsets;
+    private final int[] outTargets;
+    private final WitnessSet[] outWitnesses;
+    private final int[] inOffsets;
+    private final int[] inSources;
+    private final WitnessSet[] vertexWitnesses;
+
+    private final int[] tokenOffsets;
+    private final Token[] tokens;
+
+    private final int[][] transpositions;
+    private final int[] membershipOffsets;
+    private final int[] memberships;
+
+    private FrozenVariantGraph(IndexedVariantGraph graph) {
+        final WitnessSet.Index sourceIndex = graph.witnessIndex();
+        for (int ordinal = 0; ordinal < sourceIndex.size(); ordinal++) {
+            witnessIndex.ordinal(sourceIndex.witness(ordinal));
+        }
+        final Map<WitnessSet, WitnessSet> labels = new IdentityHashMap<>();
+
+        // renumber reachable vertices in rank order, keeping the topological order within a rank
+        final int[] order = VariantGraphTraversal.order(graph);
+        final int[] sourceRanks = VariantGraphRanking.ranks(graph);
+        this.size = order.length;
+        final int rankCount = sourceRanks[graph.end()] + 1;
+        this.rankOffsets = new int[rankCount + 1];
+        for (int v : order) {
+            rankOffsets[sourceRanks[v] + 1]++;
+        }
+        for (int r = 0; r < rankCount; r++) {
+            rankOffsets[r + 1] += rankOffsets[r];
+        }
+        final int[] vertices = new int[size];
+        final int[] ids = new int[graph.size()];
+        Arrays.fill(ids, -1);
+        final int[] next = Arrays.copyOf(rankOffsets, rankCount);
+        for (int v : order) {
+            final int id = next[sourceRanks[v]]++;
+            vertices[id] = v;
+            ids[v] = id;
+        }
+        this.ranks = new int[size];
+        for (int id = 0; id < size; id++) {
+            ranks[id] = sourceRanks[vertices[id]];
+        }
+
+        // outgoing edges, sorted by target
+        this.outOffsets = new int[size + 1];
+        for (int id = 0; id < size; id++) {
+            outOffsets[id + 1] = outOffsets[id] + graph.outDegree(vertices[id]);
+        }
+        this.outTargets = new int[outOffsets[size]];
+        this.outWitnesses = new WitnessSet[outTargets.length];
+        final int[] inDegrees = new int[size + 1];
+        int[] targets = NONE;
+        for (int id = 0; id < size; id++) {
+            final int v = vertices[id];
+            final int outDegree = graph.outDegree(v);
+            targets = graph.outgoing(v, targets);
+            for (int oc = 0; oc < outDegree; oc++) {
+                final int target = ids[targets[oc]];
+                final WitnessSet label = labels.computeIfAbsent(graph.witnesses(v, targets[oc]), witnessIndex::of);
+                int edge = outOffsets[id] + oc;
+                for (; edge > outOffsets[id] && outTargets[edge - 1] > target; edge--) {
+                    outTargets[edge] = outTargets[edge - 1];
+                    outWitnesses[edge] = outWitnesses[edge - 1];
+                }
+                outTargets[edge] = target;
+                outWitnesses[edge] = label;
+                inDegrees[target + 1]++;
+            }
+        }
+
+        // incoming edges, sorted by source as edges are visited in source order
+        this.inOffsets = inDegrees;
+        for (int id = 0; id < size; id++) {
+            inOffsets[id + 1] += inOffsets[id];
+        }
+        this.inSources = new int[outTargets.length];
+        final int[] inNext = Arrays.copyOf(inOffsets, size);
+        for (int id = 0; id < size; id++) {
+            for (int edge = outOffsets[id]; edge < outOffsets[id + 1]; edge++) {
+                inSources[inNext[outTargets[edge]]++] = id;
+            }
+        }
+
+        this.vertexWitnesses = new WitnessSet[size];
+        final List<WitnessSet> incoming = new ArrayList<>();
+        for (int id = 0; id < size; id++) {
+            incoming.clear();
+            for (int ic = inOffsets[id]; ic < inOffsets[id + 1]; ic++) {
+                incoming.add(witnesses(inSources[ic], id));
+            }
+            vertexWitnesses[id] = witnessIndex.union(incoming);
+        }
+        final List<WitnessSet> outgoing = new ArrayList<>();
+        for (int edge = outOffsets[0]; edge < outOffsets[1]; edge++) {
+            outgoing.add(outWitnesses[edge]);
+        }
+        this.witnesses = witnessIndex.union(outgoing);
+
+        // tokens
+        final List<Token> tokens = new ArrayList<>();
+        this.tokenOffsets = new int[size + 1];
+        for (int id = 0; id < size; id++) {
+            tokens.addAll(graph.tokens(vertices[id]));
+            tokenOffsets[id + 1] = tokens.size();
+        }
+        this.tokens = tokens.toArray(new Token[tokens.size()]);
+
+        // transpositions, renumbered densely and restricted to reachable vertices
+        final List<int[]> transpositions = new ArrayList<>();
+        this.membershipOffsets = new int[size + 1];
+        for (int t = 0; t < graph.transpositionCount(); t++) {
+            final int[] members = graph.transposition(t);
+            if (members == null) {
+                continue;
+            }
+            int memberCount = 0;
+            for (int member : members) {
+                if (ids[member] >= 0) {
+                    members[memberCount++] = ids[member];
+                }
+            }
+            if (memberCount == 0) {
+                continue;
+            }
+            final int[] transposition = Arrays.copyOf(members, memberCount);
+            Arrays.sort(transposition);
+            transpositions.add(transposition);
+            for (int member : transposition) {
+                membershipOffsets[member + 1]++;
+            }
+        }
+        this.transpositions = transpositions.toArray(new int[transpositions.size()][]);
+        for (int id = 0; id < size; id++) {
+            membershipOffsets[id + 1] += membershipOffsets[id];
+        }
+        this.memberships = new int[membershipOffsets[size]];
+        final int[] membershipNext = Arrays.copyOf(membershipOffsets, size);
+        for (int t = 0; t < this.transpositions.length; t++) {
+            for (int member : this.transpositions[t]) {
+                memberships[membershipNext[member]++] = t;
+            }
+        }
+    }
+
+    public static FrozenVariantGraph of(IndexedVariantGraph graph) {
+        return (graph instanceof FrozenVariantGraph ? (FrozenVariantGraph) graph : new FrozenVariantGraph(graph));
+    }
+
+    @Override
+    public int start() {
+        return 0;
+    }
+
+    @Override
+    public int end() {
+        return size - 1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int rank(int vertex) {
+        return ranks[vertex];
+    }
+
+    /**
+     * @return the rank of each vertex, indexed by vertex identifier
+     */
+    public int[] ranks() {
+        return ranks.clone();
+    }
+
+    public int rankCount() {
+        return rankOffsets.length - 1;
+    }
+
+    /**
+     * @return the first vertex of the given rank; vertices of a rank are numbered consecutively up to
+     * <code>firstOfRank(rank + 1)</code>
+     */
+    public int firstOfRank(int rank) {
+        return rankOffsets[rank];
+    }
+
+    @Override
+    public int outDegree(int vertex) {
+        return outOffsets[vertex + 1] - outOffsets[vertex];
+    }
+
+    @Override
+    public int inDegree(int vertex) {
+        return inOffsets[vertex + 1] - inOffsets[vertex];
+    }
+
+    @Override
+    public int[] outgoing(int vertex, int[] targets) {
+        return copy(outTargets, outOffsets[vertex], outOffsets[vertex + 1], targets);
+    }
+
+    @Override
+    public int[] incoming(int vertex, int[] sources) {
+        return copy(inSources, inOffsets[vertex], inOffsets[vertex + 1], sources);
+    }
+
+    @Override
+    public WitnessSet witnesses(int from, int to) {
+        final int edge = Arrays.binarySearch(outTargets, outOffsets[from], outOffsets[from + 1], to);
+        return (edge < 0 ? null : outWitnesses[edge]);
+    }
+
+    @Override
+    public WitnessSet witnesses(int vertex) {
+        return vertexWitnesses[vertex];
+    }
+
+    @Override
+    public WitnessSet witnesses() {
+        return witnesses;
+    }
+
+    @Override
+    public WitnessSet.Index witnessIndex() {
+        return witnessIndex;
+    }
+
+    @Override
+    public Collection<Token> tokens(int vertex) {
+        return Collections.unmodifiableList(Arrays.asList(tokens).subList(tokenOffsets[vertex], tokenOffsets[vertex + 1]));
+    }
+
+    @Override
+    public int[] transpositions(int vertex) {
+        return Arrays.copyOfRange(memberships, membershipOffsets[vertex], membershipOffsets[vertex + 1]);
+    }
+
+    @Override
+    public int[] transposition(int transposition) {
+        return transpositions[transposition].clone();
+    }
+
+    @Override
+    public int transpositionCount() {
+        return transpositions.length;
+    }
+
+    private static int[] copy(int[] source, int from, int to, int[] buf) {
+        final int length = to - from;
+        final int[] result = (buf.length >= length ? buf : new int[length]);
+        System.arraycopy(source, from, result, 0, length);
+        return result;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex;
+
+import java.util.Collection;
+
+/**
+ * A variant graph whose vertices are addressed by dense integer identifiers.
+ * <p>
+ * Identifiers are handed out in creation order, starting with zero; {@link #size()} is an exclusive upper bound
+ * for all identifiers issued so far, so per-vertex data can be kept in plain arrays. Vertices that became
+ * unreachable from the start vertex (e.g. after joining) keep their identifier.
+ * <p>
+ * Adjacency is read via {@link #outgoing(int, int[])} and {@link #incoming(int, int[])}, which follow the
+ * contract of {@link Collection#toArray(Object[])}: the given buffer is filled and returned if it is large
+ * enough, otherwise a new array is allocated. The number of valid entries is given by {@link #outDegree(int)}
+ * resp. {@link #inDegree(int)}.
+ * <p>
+ * This interface only reads a graph; graphs built by collation algorithms implement
+ * {@link MutableIndexedVariantGraph}.
+ *
+ * @see VariantGraph
+ * @see CompactVariantGraph
+ * @see FrozenVariantGraph
+ */
+public interface IndexedVariantGraph {
+
+    int start();
+
+    int end();
+
+    int size();
+
+    int outDegree(int vertex);
+
+    int inDegree(int vertex);
+
+    int[] outgoing(int vertex, int[] targets);
+
+    int[] incoming(int vertex, int[] sources);
+
+    /**
+     * @return the witnesses labelling the edge between the given vertices or <code>null</code>, if there is no such
+     * edge
+     */
+    WitnessSet witnesses(int from, int to);
+
+    WitnessSet witnesses(int vertex);
+
+    WitnessSet witnesses();
+
+    /**
+     * @return the index assigning ordinals to the witnesses of this graph; all edge labels are interned by it
+     */
+    WitnessSet.Index witnessIndex();
+
+    Collection<Token> tokens(int vertex);
+
+    /**
+     * @return the identifiers of the transpositions the given vertex is part of, in ascending order
+     */
+    int[] transpositions(int vertex);
+
+    /**
+     * @return the vertices of the given transposition in ascending order, or <code>null</code> if the transposition
+     * has been removed
+     */
+    int[] transposition(int transposition);
+
+    /**
+     * @return an exclusive upper bound for all transposition identifiers issued so far
+     */
+    int transpositionCount();
+}
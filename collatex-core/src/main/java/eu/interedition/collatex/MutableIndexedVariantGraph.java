@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex;
+
+import java.util.Set;
+
+/**
+ * An {@link IndexedVariantGraph indexed variant graph} which can be extended, e.g. by merging witnesses into it.
+ *
+ * @see VariantGraph
+ * @see CompactVariantGraph
+ */
+public interface MutableIndexedVariantGraph extends IndexedVariantGraph {
+
+    int addVertex(Token token);
+
+    void addToken(int vertex, Token token);
+
+    void connect(int from, int to, Set<Witness> witnesses);
+
+    /**
+     * Registers the given vertices as being transposed, unless they already are.
+     *
+     * @return the identifier of the transposition
+     */
+    int transpose(int[] vertices);
+}
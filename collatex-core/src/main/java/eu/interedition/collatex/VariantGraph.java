@@ -19,16 +19,22 @@
 
 package eu.interedition.collatex;
 
+import eu.interedition.collatex.util.VariantGraphRanking;
 import eu.interedition.collatex.util.VariantGraphTraversal;
 
+import java.util.AbstractSet;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Objects;
 import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -36,18 +42,43 @@ import java.util.stream.Collectors;
 /**
  * @author <a href="http://gregor.middell.net/">Gregor Middell</a>
  */
-public class VariantGraph {
+public class VariantGraph implements MutableIndexedVariantGraph {
+    private static final int[] NO_TRANSPOSITIONS = new int[0];
+
+    final List<Vertex> vertexIndex = new ArrayList<>();
+    final WitnessSet.Index witnessIndex = new WitnessSet.Index();
     final VariantGraph.Vertex start;
     final VariantGraph.Vertex end;
-    final Map<Vertex, Set<Set<Vertex>>> transpositionIndex = new HashMap<>();
+    final List<Set<Vertex>> transpositionIndex = new ArrayList<>();
+    final List<int[]> transpositionMembers = new ArrayList<>();
+    private int transpositionCount = 0;
+    private final Set<Set<Vertex>> transpositions = new AbstractSet<Set<Vertex>>() {
+        @Override
+        public Iterator<Set<Vertex>> iterator() {
+            return transpositionIndex.stream().filter(Objects::nonNull).iterator();
+        }
+
+        @Override
+        public int size() {
+            return transpositionCount;
+        }
+    };
+
+    private int[] ranks = new int[64];
+    private boolean ranksInvalid = false;
+    private final Deque<Vertex> rankQueue = new ArrayDeque<>();
+    private int modCount = 0;
 
     public VariantGraph() {
         super();
         this.start = new VariantGraph.Vertex(this);
         this.end = new VariantGraph.Vertex(this);
 
-        this.start.outgoing.put(this.end, Collections.emptySet());
-        this.end.incoming.put(this.start, Collections.emptySet());
+        this.start.outgoing.put(this.end, witnessIndex.empty());
+        this.end.incoming.put(this.start, witnessIndex.empty());
+
+        this.ranks[start.id] = 0;
+        this.ranks[end.id] = 1;
     }
 
     public Vertex getStart() {
@@ -58,8 +89,12 @@ public class VariantGraph {
         return end;
     }
 
+    public Vertex vertex(int id) {
+        return vertexIndex.get(id);
+    }
+
     public Set<Set<Vertex>> transpositions() {
-        return transpositionIndex.values().stream().flatMap(Set::stream).collect(Collectors.toSet());
+        return transpositions;
     }
 
     public Iterable<Vertex> vertices() {
@@ -77,34 +112,262 @@ public class VariantGraph {
             throw new IllegalArgumentException();
         }
 
-        witnesses = new HashSet<>(witnesses);
-        Optional.ofNullable(from.outgoing.remove(to)).ifPresent(witnesses::addAll);
+        WitnessSet label = witnessIndex.of(witnesses);
+        final WitnessSet existing = from.outgoing.get(to);
+        if (existing != null) {
+            label = existing.union(label);
+        }
+
+        from.outgoing.put(to, label);
+        to.incoming.put(from, label);
+        modCount++;
+        if (!ranksInvalid) {
+            raiseRanks(from, to);
+        }
+
+        if (start.outgoing.remove(end) != null) {
+            end.incoming.remove(start);
+            if (!ranksInvalid) {
+                int endRank = -1;
+                for (Vertex incoming : end.incoming.keySet()) {
+                    endRank = Math.max(endRank, ranks[incoming.id] < 0 ? -1 : ranks[incoming.id] + 1);
+                }
+                ranks[end.id] = endRank;
+            }
+        }
+    }
 
-        from.outgoing.put(to, witnesses);
-        to.incoming.put(from, witnesses);
+    /**
+     * @return the length of the longest path from the start vertex to the given vertex, or <code>-1</code> if the
+     * vertex is not reachable from the start vertex
+     */
+    public int rank(Vertex vertex) {
+        return rank(vertex.id);
+    }
+
+    public int rank(int vertex) {
+        if (ranksInvalid) {
+            final int[] ranks = VariantGraphRanking.ranks(this);
+            this.ranks = Arrays.copyOf(ranks, Math.max(this.ranks.length, ranks.length));
+            ranksInvalid = false;
+        }
+        return ranks[vertex];
+    }
+
+    /**
+     * @return the number of structural modifications (added vertices and edges) applied to this graph so far
+     */
+    public int modCount() {
+        return modCount;
+    }
+
+    /**
+     * Updates the ranks kept for all vertices downstream of a newly connected target vertex.
+     * <p>
+     * Ranks only ever increase when an edge is added, so only the vertices whose rank actually changes are visited.
+     * If the propagation leads back to the source vertex, the new edge closed a cycle. As ranks of an acyclic graph are
+     * less than its size, a rank reaching it reveals a cycle as well, e.g. one among previously unranked vertices. The
+     * ranks are then recomputed on demand, where the traversal reports the cycle.
+     */
+    private void raiseRanks(Vertex from, Vertex to) {
+        final int fromRank = ranks[from.id];
+        if (fromRank < 0 || ranks[to.id] > fromRank) {
+            return;
+        }
+        ranks[to.id] = fromRank + 1;
+        rankQueue.clear();
+        rankQueue.add(to);
+        final int size = size();
+        while (!rankQueue.isEmpty()) {
+            final Vertex vertex = rankQueue.poll();
+            final int rank = ranks[vertex.id] + 1;
+            for (Vertex next : vertex.outgoing.keySet()) {
+                if (next == from || rank >= size) {
+                    rankQueue.clear();
+                    ranksInvalid = true;
+                    return;
+                }
+                if (ranks[next.id] < rank) {
+                    ranks[next.id] = rank;
+                    rankQueue.add(next);
+                }
+            }
+        }
+    }
 
-        start.outgoing.remove(end);
-        end.incoming.remove(start);
+    private void register(Vertex vertex) {
+        vertexIndex.add(vertex);
+        if (vertex.id >= ranks.length) {
+            ranks = Arrays.copyOf(ranks, Math.max(ranks.length * 2, vertex.id + 1));
+        }
+        ranks[vertex.id] = -1;
+        modCount++;
     }
 
     public Set<Vertex> transpose(Set<Vertex> vertices) {
         if (vertices.isEmpty()) {
             throw new IllegalArgumentException();
         }
-        for (Set<Vertex> transposition : vertices.iterator().next().transpositions()) {
-            if (transposition.equals(vertices)) {
+        final int[] members = vertices.stream().mapToInt(Vertex::id).sorted().toArray();
+        int transposition = transposition(members);
+        if (transposition < 0) {
+            transposition = addTransposition(members, new HashSet<>(vertices));
+        }
+        return transpositionIndex.get(transposition);
+    }
+
+    /**
+     * @return the identifier of the transposition with the given (sorted) members, or <code>-1</code> if there is none
+     */
+    private int transposition(int[] members) {
+        for (int transposition : vertex(members[0]).transpositions) {
+            if (Arrays.equals(members, transpositionMembers.get(transposition))) {
                 return transposition;
             }
         }
-        final Set<Vertex> t = new HashSet<>(vertices);
-        for (VariantGraph.Vertex vertex : t) {
-            transpositionIndex.computeIfAbsent(vertex, v -> new HashSet<>()).add(t);
+        return -1;
+    }
+
+    private int addTransposition(int[] members, Set<Vertex> vertices) {
+        final int transposition = transpositionIndex.size();
+        transpositionIndex.add(Collections.unmodifiableSet(vertices));
+        transpositionMembers.add(members);
+        transpositionCount++;
+        for (Vertex vertex : vertices) {
+            // identifiers are handed out in ascending order, so appending keeps them sorted
+            vertex.transpositions = Arrays.copyOf(vertex.transpositions, vertex.transpositions.length + 1);
+            vertex.transpositions[vertex.transpositions.length - 1] = transposition;
+        }
+        return transposition;
+    }
+
+    private void removeTransposition(int transposition) {
+        for (Vertex vertex : transpositionIndex.get(transposition)) {
+            vertex.transpositions = Arrays.stream(vertex.transpositions).filter(t -> t != transposition).toArray();
+        }
+        transpositionIndex.set(transposition, null);
+        transpositionMembers.set(transposition, null);
+        transpositionCount--;
+    }
+
+    public WitnessSet witnesses() {
+        return witnessIndex.union(start.outgoing.values());
+    }
+
+    @Override
+    public WitnessSet.Index witnessIndex() {
+        return witnessIndex;
+    }
+
+    /**
+     * @return an immutable, array-backed snapshot of this graph for read-only use by e.g. serializers
+     */
+    public FrozenVariantGraph freeze() {
+        return FrozenVariantGraph.of(this);
+    }
+
+    @Override
+    public int start() {
+        return start.id;
+    }
+
+    @Override
+    public int end() {
+        return end.id;
+    }
+
+    @Override
+    public int size() {
+        return vertexIndex.size();
+    }
+
+    @Override
+    public int addVertex(Token token) {
+        return add(token).id;
+    }
+
+    @Override
+    public void addToken(int vertex, Token token) {
+        vertex(vertex).tokens.add(token);
+    }
+
+    @Override
+    public void connect(int from, int to, Set<Witness> witnesses) {
+        connect(vertex(from), vertex(to), witnesses);
+    }
+
+    @Override
+    public int transpose(int[] vertices) {
+        if (vertices.length == 0) {
+            throw new IllegalArgumentException();
+        }
+        final int[] members = Arrays.stream(vertices).sorted().distinct().toArray();
+        final int transposition = transposition(members);
+        return (transposition < 0
+            ? addTransposition(members, Arrays.stream(members).mapToObj(this::vertex).collect(Collectors.toSet()))
+            : transposition);
+    }
+
+    @Override
+    public int outDegree(int vertex) {
+        return vertex(vertex).outgoing.size();
+    }
+
+    @Override
+    public int inDegree(int vertex) {
+        return vertex(vertex).incoming.size();
+    }
+
+    @Override
+    public int[] outgoing(int vertex, int[] targets) {
+        return ids(vertex(vertex).outgoing.keySet(), targets);
+    }
+
+    @Override
+    public int[] incoming(int vertex, int[] sources) {
+        return ids(vertex(vertex).incoming.keySet(), sources);
+    }
+
+    private static int[] ids(Collection<Vertex> vertices, int[] ids) {
+        if (ids.length < vertices.size()) {
+            ids = new int[vertices.size()];
+        }
+        int i = 0;
+        for (Vertex vertex : vertices) {
+            ids[i++] = vertex.id;
         }
-        return t;
+        return ids;
+    }
+
+    @Override
+    public WitnessSet witnesses(int from, int to) {
+        return vertex(from).outgoing.get(vertex(to));
+    }
+
+    @Override
+    public WitnessSet witnesses(int vertex) {
+        return vertex(vertex).witnesses();
+    }
+
+    @Override
+    public Collection<Token> tokens(int vertex) {
+        return vertex(vertex).tokens;
     }
 
-    public Set<Witness> witnesses() {
-        return start.outgoing().values().stream().flatMap(Collection::stream).collect(Collectors.toSet());
+    @Override
+    public int[] transpositions(int vertex) {
+        return vertex(vertex).transpositions.clone();
+    }
+
+    @Override
+    public int[] transposition(int transposition) {
+        final int[] members = transpositionMembers.get(transposition);
+        return (members == null ? null : members.clone());
+    }
+
+    @Override
+    public int transpositionCount() {
+        return transpositionMembers.size();
     }
 
     @Override
@@ -118,32 +381,64 @@ public class VariantGraph {
      */
     public static class Vertex {
         private final VariantGraph graph;
+        private final int id;
         private final Set<Token> tokens = new HashSet<>();
-        private final Map<Vertex, Set<Witness>> outgoing = new HashMap<>();
-        private final Map<Vertex, Set<Witness>> incoming = new HashMap<>();
+        private int[] transpositions = NO_TRANSPOSITIONS;
+        private final Map<Vertex, WitnessSet> outgoing = new HashMap<>();
+        private final Map<Vertex, WitnessSet> incoming = new HashMap<>();
+        private final Map<Vertex, Set<Witness>> outgoingView = Collections.unmodifiableMap(outgoing);
+        private final Map<Vertex, Set<Witness>> incomingView = Collections.unmodifiableMap(incoming);
 
         public Vertex(VariantGraph graph) {
             this.graph = graph;
+            this.id = graph.vertexIndex.size();
+            graph.register(this);
+        }
+
+        public int id() {
+            return id;
         }
 
         public Map<Vertex, Set<Witness>> incoming() {
-            return incoming;
+            return incomingView;
         }
 
         public Map<Vertex, Set<Witness>> outgoing() {
-            return outgoing;
+            return outgoingView;
+        }
+
+        public WitnessSet witnesses(Vertex to) {
+            return outgoing.get(to);
         }
 
         public Set<Set<Vertex>> transpositions() {
-            return graph.transpositionIndex.getOrDefault(this, Collections.emptySet());
+            if (transpositions.length == 0) {
+                return Collections.emptySet();
+            }
+            final int[] transpositions = this.transpositions;
+            return new AbstractSet<Set<Vertex>>() {
+                @Override
+                public Iterator<Set<Vertex>> iterator() {
+                    return Arrays.stream(transpositions).mapToObj(graph.transpositionIndex::get).iterator();
+                }
+
+                @Override
+                public int size() {
+                    return transpositions.length;
+                }
+            };
+        }
+
+        public boolean hasSameTranspositions(Vertex other) {
+            return Arrays.equals(transpositions, other.transpositions);
         }
 
         public Set<Token> tokens() {
             return tokens;
         }
 
-        public Set<Witness> witnesses() {
-            return incoming().values().stream().flatMap(Set::stream).collect(Collectors.toSet());
+        public WitnessSet witnesses() {
+            return graph.witnessIndex.union(incoming.values());
         }
 
         public void add(Iterable<Token> tokens) {
@@ -159,45 +454,51 @@ public class VariantGraph {
         }
     }
 
+    /**
+     * Joins chains of vertices, which are connected by a single edge and have the same transpositions, into one vertex.
+     * <p>
+     * The chains are merged in place during a single pass in topological order, so every vertex and edge is visited
+     * once.
+     */
     public static final Function<VariantGraph, VariantGraph> JOIN = graph -> {
-        final Set<Vertex> processed = new HashSet<>();
-        final Deque<Vertex> queue = new ArrayDeque<>(graph.start.outgoing.keySet());
-
-        while (!queue.isEmpty()) {
-            final Vertex vertex = queue.pop();
-            final Set<Set<Vertex>> transpositions = new HashSet<>(vertex.transpositions());
-            if (vertex.outgoing.size() == 1) {
+        graph.ranksInvalid = true;
+        graph.modCount++;
+
+        final boolean[] joined = new boolean[graph.size()];
+        for (int v : VariantGraphTraversal.order(graph)) {
+            final Vertex vertex = graph.vertex(v);
+            if (joined[v] || vertex == graph.start) {
+                continue;
+            }
+            while (vertex.outgoing.size() == 1) {
                 final Vertex joinCandidateVertex = vertex.outgoing.keySet().iterator().next();
-                final Set<Set<Vertex>> joinCandidateTranspositions = new HashSet<>(joinCandidateVertex.transpositions());
-
                 boolean canJoin = !graph.end.equals(joinCandidateVertex) && //
                     joinCandidateVertex.incoming.size() == 1 && //
-                    transpositions.equals(joinCandidateTranspositions);
-                if (canJoin) {
-                    vertex.add(joinCandidateVertex.tokens());
-                    for (Set<Vertex> t : new HashSet<>(joinCandidateVertex.transpositions())) {
-                        final Set<Vertex> transposed = new HashSet<>(t);
-                        transposed.remove(joinCandidateVertex);
-                        transposed.add(vertex);
-                        for (Vertex tv : t) {
-                            graph.transpositionIndex.getOrDefault(tv, Collections.emptySet()).remove(t);
-                        }
-                        graph.transpose(transposed);
-                    }
-
-                    vertex.outgoing.clear();
-                    vertex.outgoing.putAll(joinCandidateVertex.outgoing);
-
-                    vertex.outgoing.keySet().forEach(v -> v.incoming.put(vertex, v.incoming.remove(joinCandidateVertex)));
-
-                    queue.push(vertex);
-                    continue;
+                    vertex.hasSameTranspositions(joinCandidateVertex);
+                if (!canJoin) {
+                    break;
+                }
+
+                vertex.add(joinCandidateVertex.tokens());
+                for (int t : joinCandidateVertex.transpositions) {
+                    final Set<Vertex> transposed = new HashSet<>(graph.transpositionIndex.get(t));
+                    transposed.remove(joinCandidateVertex);
+                    transposed.add(vertex);
+                    graph.removeTransposition(t);
+                    graph.transpose(transposed);
+                }
+
+                vertex.outgoing.clear();
+                vertex.outgoing.putAll(joinCandidateVertex.outgoing);
+                for (Map.Entry<Vertex, WitnessSet> edge : joinCandidateVertex.outgoing.entrySet()) {
+                    edge.getKey().incoming.remove(joinCandidateVertex);
+                    edge.getKey().incoming.put(vertex, edge.getValue());
                 }
-            }
 
-            // FIXME: Why do we run out of memory in some cases here, if this is not checked?
-            processed.add(vertex);
-            vertex.outgoing.keySet().stream().filter(v -> !processed.contains(v)).forEach(queue::push);
+                joinCandidateVertex.outgoing.clear();
+                joinCandidateVertex.incoming.clear();
+                joined[joinCandidateVertex.id] = true;
+            }
         }
 
         return graph;
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable set of witnesses, represented as a bitset over the witness ordinals of an {@link Index}.
+ * <p>
+ * Sets are interned per index, so sets with equal members are identical. Sets over up to 64 witnesses are kept in a
+ * single <code>long</code>.
+ */
+public final class WitnessSet extends AbstractSet<Witness> {
+
+    private final Index index;
+    private final long bits;
+    private final long[] words;
+    private int hashCode = -1;
+
+    private WitnessSet(Index index, long bits, long[] words) {
+        this.index = index;
+        this.bits = bits;
+        this.words = words;
+    }
+
+    public Index index() {
+        return index;
+    }
+
+    @Override
+    public int size() {
+        if (words == null) {
+            return Long.bitCount(bits);
+        }
+        int size = 0;
+        for (long word : words) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return (bits == 0 && words == null);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return (o instanceof Witness) && contains(index.ordinalOf((Witness) o));
+    }
+
+    public boolean contains(int ordinal) {
+        if (ordinal < 0) {
+            return false;
+        } else if (ordinal < Long.SIZE) {
+            return (bits & (1L << ordinal)) != 0;
+        }
+        final int word = ordinal >>> 6;
+        return words != null && word < words.length && (words[word] & (1L << ordinal)) != 0;
+    }
+
+    public WitnessSet union(WitnessSet other) {
+        if (other.index != index) {
+            throw new IllegalArgumentException(other.toString());
+        }
+        if (words == null && other.words == null) {
+            final long union = bits | other.bits;
+            return (union == bits ? this : (union == other.bits ? other : index.intern(union)));
+        }
+        final long[] union = Arrays.copyOf(words(), Math.max(words().length, other.words().length));
+        final long[] otherWords = other.words();
+        for (int wc = 0; wc < otherWords.length; wc++) {
+            union[wc] |= otherWords[wc];
+        }
+        return index.intern(union);
+    }
+
+    public boolean intersects(WitnessSet other) {
+        if (other.index != index) {
+            throw new IllegalArgumentException(other.toString());
+        }
+        if (words == null || other.words == null) {
+            return (bits & other.bits) != 0;
+        }
+        for (int wc = 0, wl = Math.min(words.length, other.words.length); wc < wl; wc++) {
+            if ((words[wc] & other.words[wc]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Iterator<Witness> iterator() {
+        return new Iterator<Witness>() {
+            private final long[] words = words();
+            private int word = 0;
+            private long remaining = (words.length == 0 ? 0 : words[0]);
+
+            @Override
+            public boolean hasNext() {
+                while (remaining == 0 && word + 1 < words.length) {
+                    remaining = words[++word];
+                }
+                return remaining != 0;
+            }
+
+            @Override
+            public Witness next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final int ordinal = (word << 6) + Long.numberOfTrailingZeros(remaining);
+                remaining &= (remaining - 1);
+                return index.witness(ordinal);
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (o instanceof WitnessSet && ((WitnessSet) o).index == index) {
+            final WitnessSet other = (WitnessSet) o;
+            return bits == other.bits && Arrays.equals(words, other.words);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        if (hashCode == -1) {
+            hashCode = super.hashCode();
+        }
+        return hashCode;
+    }
+
+    private long[] words() {
+        return (words == null ? new long[] { bits } : words);
+    }
+
+    /**
+     * Assigns stable ordinals to witnesses in the order they are first seen, and interns the sets built from them.
+     * <p>
+     * An index can be used by concurrent threads; lookups of known witnesses and sets do not lock.
+     */
+    public static final class Index {
+
+        private volatile Witness[] witnesses = new Witness[0];
+        private final Map<Witness, Integer> ordinals = new ConcurrentHashMap<>();
+        private final Map<Long, WitnessSet> narrowSets = new ConcurrentHashMap<>();
+        private final Map<BitSet, WitnessSet> wideSets = new ConcurrentHashMap<>();
+        private final WitnessSet empty = intern(0L);
+
+        public int ordinal(Witness witness) {
+            final Integer ordinal = ordinals.get(witness);
+            return (ordinal == null ? assignOrdinal(witness) : ordinal);
+        }
+
+        private synchronized int assignOrdinal(Witness witness) {
+            final Integer assigned = ordinals.get(witness);
+            if (assigned != null) {
+                return assigned;
+            }
+            final int ordinal = witnesses.length;
+            final Witness[] witnesses = Arrays.copyOf(this.witnesses, ordinal + 1);
+            witnesses[ordinal] = witness;
+            this.witnesses = witnesses;
+            ordinals.put(witness, ordinal);
+            return ordinal;
+        }
+
+        /**
+         * @return the ordinal of the given witness, or <code>-1</code> if it has not been assigned one
+         */
+        public int ordinalOf(Witness witness) {
+            final Integer ordinal = ordinals.get(witness);
+            return (ordinal == null ? -1 : ordinal);
+        }
+
+        public Witness witness(int ordinal) {
+            return witnesses[ordinal];
+        }
+
+        public int size() {
+            return witnesses.length;
+        }
+
+        public WitnessSet empty() {
+            return empty;
+        }
+
+        public WitnessSet of(Witness witness) {
+            final int ordinal = ordinal(witness);
+            if (ordinal < Long.SIZE) {
+                return intern(1L << ordinal);
+            }
+            final long[] words = new long[(ordinal >>> 6) + 1];
+            words[ordinal >>> 6] = (1L << ordinal);
+            return intern(words);
+        }
+
+        public WitnessSet of(Collection<? extends Witness> witnesses) {
+            if (witnesses instanceof WitnessSet && ((WitnessSet) witnesses).index == this) {
+                return (WitnessSet) witnesses;
+            }
+            long[] words = new long[1];
+            for (Witness witness : witnesses) {
+                final int ordinal = ordinal(witness);
+                final int word = ordinal >>> 6;
+                if (word >= words.length) {
+                    words = Arrays.copyOf(words, word + 1);
+                }
+                words[word] |= (1L << ordinal);
+            }
+            return intern(words);
+        }
+
+        public WitnessSet union(Collection<WitnessSet> sets) {
+            long bits = 0;
+            WitnessSet union = null;
+            for (WitnessSet set : sets) {
+                if (set.words == null) {
+                    bits |= set.bits;
+                } else {
+                    union = (union == null ? set : union.union(set));
+                }
+            }
+            final WitnessSet narrow = intern(bits);
+            return (union == null ? narrow : union.union(narrow));
+        }
+
+        WitnessSet intern(long bits) {
+            return narrowSets.computeIfAbsent(bits, b -> new WitnessSet(this, b, null));
+        }
+
+        WitnessSet intern(long[] words) {
+            int length = words.length;
+            while (length > 1 && words[length - 1] == 0) {
+                length--;
+            }
+            if (length == 1) {
+                return intern(words[0]);
+            }
+            final long[] normalized = Arrays.copyOf(words, length);
+            return wideSets.computeIfAbsent(BitSet.valueOf(normalized), b -> new WitnessSet(this, normalized[0], normalized));
+        }
+    }
+}
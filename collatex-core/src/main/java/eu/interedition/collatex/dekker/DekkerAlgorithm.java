@@ -26,11 +26,16 @@ import eu.interedition.collatex.dekker.island.Coordinate;
 import eu.interedition.collatex.dekker.island.Island;
 import eu.interedition.collatex.dekker.island.IslandCollection;
 import eu.interedition.collatex.dekker.island.IslandConflictResolver;
+import eu.interedition.collatex.dekker.token_index.BlockIndex;
+import eu.interedition.collatex.dekker.token_index.BlockPruning;
+import eu.interedition.collatex.dekker.token_index.CorpusTokenIndex;
+import eu.interedition.collatex.dekker.token_index.IncrementalTokenIndex;
 import eu.interedition.collatex.dekker.token_index.TokenIndex;
 import eu.interedition.collatex.dekker.token_index.TokenIndexToMatches;
 import eu.interedition.collatex.matching.EqualityTokenComparator;
+import eu.interedition.collatex.suffixarray.Algorithm;
 import eu.interedition.collatex.util.StreamUtil;
-import eu.interedition.collatex.util.VariantGraphRanking;
+import eu.interedition.collatex.util.VariantGraphTraversal;
 
 import java.util.*;
 import java.util.logging.Level;
@@ -38,6 +43,8 @@ import java.util.stream.Collectors;
 
 public class DekkerAlgorithm extends CollationAlgorithm.Base implements InspectableCollationAlgorithm {
     public TokenIndex tokenIndex;
+    // the index matches are derived from: the token index, or an incremental index for progressive alignment
+    private BlockIndex blockIndex;
     // tokens are mapped to vertices by their position in the token array
     protected VariantGraph.Vertex[] vertex_array;
     private final Comparator<Token> comparator;
@@ -49,6 +56,12 @@ public class DekkerAlgorithm extends CollationAlgorithm.Base implements Inspecta
     private List<List<Match>> phraseMatches;
     private List<List<Match>> transpositions;
     private boolean mergeTranspositions = false;
+    private Algorithm suffixArrayAlgorithm = Algorithm.AUTO;
+    // the graph indexed by an incremental token index, for progressive alignment
+    private VariantGraph indexedGraph;
+    private BlockPruning blockPruning = BlockPruning.NONE;
+    private CorpusTokenIndex corpusIndex;
+    private boolean compactTokenIndex = false;
 
     public DekkerAlgorithm() {
         this(new EqualityTokenComparator());
@@ -74,12 +87,19 @@ public class DekkerAlgorithm extends CollationAlgorithm.Base implements Inspecta
         }
 
         this.tokenIndex = new TokenIndex(comparator, witnesses);
+        tokenIndex.setSuffixArrayAlgorithm(suffixArrayAlgorithm);
+        tokenIndex.setBlockPruning(blockPruning);
+        tokenIndex.setCorpusIndex(corpusIndex);
+        tokenIndex.setCompact(compactTokenIndex);
         tokenIndex.prepare();
 
         // phase 2: alignment phase
-        this.vertex_array = new VariantGraph.Vertex[tokenIndex.token_array.length];
-        boolean firstWitness = true;
+        this.vertex_array = new VariantGraph.Vertex[tokenIndex.size()];
+        this.blockIndex = tokenIndex;
+        align(graph, witnesses, true);
+    }
 
+    private void align(VariantGraph graph, List<? extends Iterable<Token>> witnesses, boolean firstWitness) {
         for (Iterable<Token> tokens : witnesses) {
             final Witness witness = StreamUtil.stream(tokens)
                     .findFirst()
@@ -104,7 +124,7 @@ public class DekkerAlgorithm extends CollationAlgorithm.Base implements Inspecta
                 LOG.log(Level.FINE, "{0} + {1}: Gather matches between variant graph and witness from token index", new Object[]{graph, witness});
             }
 
-            allPossibleIslands = TokenIndexToMatches.createMatches(tokenIndex, vertex_array, graph, tokens);
+            allPossibleIslands = TokenIndexToMatches.createMatches(blockIndex, vertex_array, graph, tokens);
 
             if (LOG.isLoggable(Level.FINE)) {
                 LOG.log(Level.FINE, "{0} + {1}: Aligning witness and graph", new Object[]{graph, witness});
@@ -180,14 +200,11 @@ public class DekkerAlgorithm extends CollationAlgorithm.Base implements Inspecta
             // we filter out small transposed phrases over large distances
             List<List<Match>> falseTranspositions = new ArrayList<>();
 
-            // rank the variant graph
-            VariantGraphRanking ranking = VariantGraphRanking.of(graph);
-
             for (List<Match> transposedPhrase : transpositions) {
                 Match match = transposedPhrase.get(0);
                 VariantGraph.Vertex v1 = witnessTokenVertices.get(match.token);
                 VariantGraph.Vertex v2 = match.vertex;
-                int distance = Math.abs(ranking.apply(v1) - ranking.apply(v2)) - 1;
+                int distance = Math.abs(graph.rank(v1) - graph.rank(v2)) - 1;
                 if (distance > transposedPhrase.size() * 3) {
                     falseTranspositions.add(transposedPhrase);
                 }
@@ -211,7 +228,7 @@ public class DekkerAlgorithm extends CollationAlgorithm.Base implements Inspecta
     private void updateTokenToVertexArray(Iterable<Token> tokens, Witness witness) {
         // we need to update the token -> vertex map
         // that information is stored in protected map
-        int tokenPosition = tokenIndex.getStartTokenPositionForWitness(witness);
+        int tokenPosition = blockIndex.getStartTokenPositionForWitness(witness);
         for (Token token : tokens) {
             VariantGraph.Vertex vertex = witnessTokenVertices.get(token);
             vertex_array[tokenPosition] = vertex;
@@ -219,9 +236,66 @@ public class DekkerAlgorithm extends CollationAlgorithm.Base implements Inspecta
         }
     }
 
+    /**
+     * Aligns a witness with a graph progressively, via an {@link IncrementalTokenIndex} of the graph's witnesses,
+     * which is built once per graph and then extended by each collated witness.
+     *
+     * @throws IllegalStateException if a suffix array algorithm, a corpus index or a compact token index is set, as the
+     *                               incremental index has neither
+     */
     @Override
     public void collate(VariantGraph graph, Iterable<Token> tokens) {
-        throw new RuntimeException("Progressive alignment is not supported!");
+        if (suffixArrayAlgorithm != Algorithm.AUTO || corpusIndex != null || compactTokenIndex) {
+            throw new IllegalStateException("Progressive alignment does not support a suffix array algorithm, corpus index or compact token index");
+        }
+        if (!(blockIndex instanceof IncrementalTokenIndex) || indexedGraph != graph) {
+            indexGraph(graph);
+        }
+        final IncrementalTokenIndex index = (IncrementalTokenIndex) blockIndex;
+        final boolean firstWitness = (index.size() == 0);
+        index.add(tokens);
+        ensureVertexCapacity(index.size());
+        align(graph, Collections.singletonList(tokens), firstWitness);
+    }
+
+    private void indexGraph(VariantGraph graph) {
+        if (LOG.isLoggable(Level.FINE)) {
+            LOG.log(Level.FINE, "{0}: Building incremental token index from the tokens of the graph", graph);
+        }
+        final IncrementalTokenIndex index = new IncrementalTokenIndex(comparator);
+        index.setBlockPruning(blockPruning);
+        this.tokenIndex = null;
+        this.blockIndex = index;
+        this.indexedGraph = graph;
+        this.vertex_array = new VariantGraph.Vertex[1024];
+
+        final List<Witness> witnesses = new ArrayList<>(graph.witnesses());
+        witnesses.sort(Witness.SIGIL_COMPARATOR);
+        for (Witness witness : witnesses) {
+            final List<Token> tokens = new ArrayList<>();
+            final List<VariantGraph.Vertex> vertices = new ArrayList<>();
+            for (VariantGraph.Vertex vertex : VariantGraphTraversal.of(graph, Collections.singleton(witness))) {
+                for (Token token : vertex.tokens()) {
+                    if (witness.equals(token.getWitness())) {
+                        tokens.add(token);
+                        vertices.add(vertex);
+                    }
+                }
+            }
+            if (!tokens.isEmpty()) {
+                final int start = index.add(tokens);
+                ensureVertexCapacity(index.size());
+                for (int tc = 0; tc < vertices.size(); tc++) {
+                    vertex_array[start + tc] = vertices.get(tc);
+                }
+            }
+        }
+    }
+
+    private void ensureVertexCapacity(int size) {
+        if (vertex_array.length < size) {
+            vertex_array = Arrays.copyOf(vertex_array, Math.max(size, vertex_array.length * 2));
+        }
     }
 
     @Override
@@ -255,4 +329,40 @@ public class DekkerAlgorithm extends CollationAlgorithm.Base implements Inspecta
     public void setMergeTranspositions(boolean b) {
         this.mergeTranspositions = b;
     }
+
+    /**
+     * Selects the algorithm building the suffix array of the token index; defaults to {@link Algorithm#AUTO}. Progressive
+     * alignment via {@link #collate(VariantGraph, Iterable)} builds no suffix array and fails with an
+     * {@link IllegalStateException} if another one is set.
+     */
+    public void setSuffixArrayAlgorithm(Algorithm suffixArrayAlgorithm) {
+        this.suffixArrayAlgorithm = suffixArrayAlgorithm;
+    }
+
+    /**
+     * Limits the candidate matches derived from the token index; defaults to {@link BlockPruning#NONE}.
+     */
+    public void setBlockPruning(BlockPruning blockPruning) {
+        this.blockPruning = blockPruning;
+    }
+
+    /**
+     * Derives the token index from an index of a corpus containing all collated witnesses, instead of building it.
+     * Progressive alignment via {@link #collate(VariantGraph, Iterable)} fails with an {@link IllegalStateException}
+     * if set.
+     */
+    public void setCorpusIndex(CorpusTokenIndex corpusIndex) {
+        this.corpusIndex = corpusIndex;
+    }
+
+    /**
+     * Keeps the token index in its compact representation, trading lookup speed for memory; defaults to
+     * <code>false</code>. Progressive alignment via {@link #collate(VariantGraph, Iterable)} fails with an
+     * {@link IllegalStateException} if set.
+     *
+     * @see TokenIndex#setCompact(boolean)
+     */
+    public void setCompactTokenIndex(boolean compactTokenIndex) {
+        this.compactTokenIndex = compactTokenIndex;
+    }
 }
@@ -43,11 +43,11 @@ public class TranspositionDetector {
      * for two phrase matches, the witness order is used
      * to differentiate.
      */
-        final VariantGraphRanking ranking = rankTheGraph(phraseMatches, base);
+        final int[] ranks = rankTheGraph(phraseMatches, base);
 
         Comparator<List<Match>> comp = (pm1, pm2) -> {
-            int rank1 = ranking.apply(pm1.get(0).vertex);
-            int rank2 = ranking.apply(pm2.get(0).vertex);
+            int rank1 = ranks[pm1.get(0).vertex.id()];
+            int rank2 = ranks[pm2.get(0).vertex.id()];
             int difference = rank1 - rank2;
             if (difference != 0) {
                 return difference;
@@ -152,14 +152,13 @@ public class TranspositionDetector {
         phraseWitnessRanks.remove(indexToRemove);
     }
 
-    private VariantGraphRanking rankTheGraph(List<List<Match>> phraseMatches, VariantGraph base) {
+    private int[] rankTheGraph(List<List<Match>> phraseMatches, VariantGraph base) {
         // rank the variant graph
         Set<VariantGraph.Vertex> matchedVertices = new HashSet<>();
         for (List<Match> phraseMatch : phraseMatches) {
             matchedVertices.add(phraseMatch.get(0).vertex);
         }
-        final VariantGraphRanking ranking = VariantGraphRanking.ofOnlyCertainVertices(base, matchedVertices);
-        return ranking;
+        return VariantGraphRanking.ranksOfOnlyCertainVertices(base, matchedVertices);
     }
 
     /*
@@ -5,20 +5,18 @@ import eu.interedition.collatex.Token;
 import eu.interedition.collatex.VariantGraph;
 import eu.interedition.collatex.Witness;
 import eu.interedition.collatex.dekker.Match;
+import eu.interedition.collatex.dekker.token_index.BlockPruning;
+import eu.interedition.collatex.dekker.token_index.CorpusTokenIndex;
 import eu.interedition.collatex.dekker.token_index.TokenIndex;
 import eu.interedition.collatex.matching.EqualityTokenComparator;
+import eu.interedition.collatex.suffixarray.Algorithm;
 import eu.interedition.collatex.util.StreamUtil;
-import eu.interedition.collatex.util.VariantGraphRanking;
 
 import java.util.*;
 import java.util.logging.Level;
-import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
-import static java.util.Arrays.asList;
 import static java.util.Collections.emptyMap;
-import static java.util.Collections.max;
-import static java.util.Comparator.comparingInt;
 
 /**
  * Created by Ronald Haentjens Dekker on 06/01/17.
@@ -53,7 +51,29 @@ public class EditGraphAligner extends CollationAlgorithm.Base {
     // tokens are mapped to vertices by their position in the token array
     public VariantGraph.Vertex[] vertex_array;
     private final Comparator<Token> comparator;
-    Score[][] cells;
+    private Algorithm suffixArrayAlgorithm = Algorithm.AUTO;
+    private BlockPruning blockPruning = BlockPruning.NONE;
+    private CorpusTokenIndex corpusIndex;
+    private boolean compactTokenIndex = false;
+    private boolean banded = false;
+    private long maxTableCells = DEFAULT_MAX_TABLE_CELLS;
+    private long parallelTableCells = DEFAULT_PARALLEL_TABLE_CELLS;
+    // the size of tiles filled in parallel, a multiple of the cells per word of the direction matrix
+    int tileSize = 256;
+    DirectionMatrix directions;
+
+    // moves into a cell of the edit graph table
+    static final int ORIGIN = 0;
+    static final int DIAGONAL = 1;
+    static final int LEFT = 2;
+    static final int UPPER = 3;
+
+    public static final long DEFAULT_MAX_TABLE_CELLS = 1L << 28;
+    public static final long DEFAULT_PARALLEL_TABLE_CELLS = 1L << 22;
+
+    private static final int INITIAL_BAND_MARGIN = 8;
+    // a score no path reaches, which can be incremented without overflow
+    private static final int OUTSIDE_BAND = Integer.MIN_VALUE / 2;
 
     public EditGraphAligner() {
         this(new EqualityTokenComparator());
@@ -78,11 +98,15 @@ public class EditGraphAligner extends CollationAlgorithm.Base {
         }
 
         this.tokenIndex = new TokenIndex(comparator, witnesses);
+        tokenIndex.setSuffixArrayAlgorithm(suffixArrayAlgorithm);
+        tokenIndex.setBlockPruning(blockPruning);
+        tokenIndex.setCorpusIndex(corpusIndex);
+        tokenIndex.setCompact(compactTokenIndex);
         tokenIndex.prepare();
     }
 
     private void align(VariantGraph graph, List<? extends Iterable<Token>> witnesses) {
-        this.vertex_array = new VariantGraph.Vertex[tokenIndex.token_array.length];
+        this.vertex_array = new VariantGraph.Vertex[tokenIndex.size()];
         boolean firstWitness = true;
 
         for (Iterable<Token> tokens : witnesses) {
@@ -111,166 +135,305 @@ public class EditGraphAligner extends CollationAlgorithm.Base {
 
             // now we can create the space for the edit graph.. using arrays and stuff
             // the horizontal size is the number of ranks in the graph starting from 0
-            VariantGraphRanking variantGraphRanking = VariantGraphRanking.of(graph);
-            Map<VariantGraph.Vertex, Integer> byVertex = variantGraphRanking.getByVertex();
-            List<Integer> variantGraphRanks = StreamUtil.stream(graph.vertices())//
-                .map(byVertex::get)//
-                .distinct()//
-                .collect(Collectors.toList());
-
             // we leave in the rank of the start vertex, but remove the rank of the end vertex
-            variantGraphRanks.remove(variantGraphRanks.size() - 1);
-
-            // System.out.println("horizontal (graph, rank): " + variantGraphRanks);
-
-//            Map<Integer, Set<VariantGraph.Vertex>> vertexSetByRank = variantGraphRanking.getByRank();
-
-            // now the vertical stuff
-            List<Token> witnessTokens = StreamUtil.stream(tokens).collect(Collectors.toList());
-            List<Integer> tokensAsIndexList = asIndexList(tokens);
-            // System.out.println("vertical (next witness, token index): " + tokensAsIndexList);
-
-            MatchCube cube = new MatchCube(tokenIndex, tokens, vertex_array, variantGraphRanking);
-            fillNeedlemanWunschTable(variantGraphRanks, witnessTokens, tokensAsIndexList, cube);
-
-            // debug only
-            // printScoringTable(variantGraphRanks, tokensAsIndexList);
+            final int columns = graph.rank(graph.getEnd());
+
+            // now the vertical stuff: the witness' tokens, preceded by the start
+            int witnessLength = (int) StreamUtil.stream(tokens).count();
+
+            MatchCube cube = new MatchCube(tokenIndex, tokens, vertex_array, graph);
+            final int rows = witnessLength + 1;
+            final EditGraphPath path;
+            if ((long) rows * columns > maxTableCells) {
+                this.directions = null;
+                path = LinearSpaceAlignment.align(cube, rows, columns, maxTableCells);
+            } else {
+                fillNeedlemanWunschTable(rows, columns, cube);
+                path = new EditGraphPath();
+                directions.traceback(path, 0, 0);
+            }
 
-            Map<Token, VariantGraph.Vertex> aligned = alignMatchingTokens(cube);
+            Map<Token, VariantGraph.Vertex> aligned = alignMatchingTokens(cube, path);
             merge(graph, tokens, aligned);
             updateTokenToVertexArray(tokens, witness);
         }
     }
 
-    private List<Integer> asIndexList(Iterable<Token> tokens) {
-        List<Integer> tokensAsIndexList = new ArrayList<>();
-        tokensAsIndexList.add(0);
-        int counter = 1;
-        for (Token t : tokens) {
-            tokensAsIndexList.add(counter++);
+    private void fillNeedlemanWunschTable(int rows, int columns, MatchCube cube) {
+        if (!banded) {
+            if ((long) rows * columns >= parallelTableCells) {
+                fillNeedlemanWunschTableInTiles(rows, columns, cube);
+            } else {
+                fillNeedlemanWunschTable(rows, columns, cube, -(rows - 1), columns - 1);
+            }
+            return;
+        }
+
+        // Scoring a path by its moves into cells, only moves into a matching cell score +1, and each of them enters
+        // another row with a match. Any other move scores -1, as does every move to the left. A path through a cell on
+        // diagonal d = x - y makes at least max(0, d) + max(0, offset - d) moves to the left, so its score is at most
+        // the following bound, lessened by the distance of d to the diagonals between 0 and the offset.
+        final int offset = (columns - 1) - (rows - 1);
+        final int upperBound = 2 * matchedRows(cube) - (rows - 1) - Math.max(0, offset);
+        final int firstDiagonal = Math.min(0, offset);
+        final int lastDiagonal = Math.max(0, offset);
+
+        // a band containing every path scoring at least as the best chain of matches contains the optimal paths
+        final int maxMargin = Math.max(1, upperBound - bestChainScore(rows, columns, cube));
+        int margin = Math.min(maxMargin, INITIAL_BAND_MARGIN);
+        while (true) {
+            final int score = fillNeedlemanWunschTable(rows, columns, cube, firstDiagonal - margin, lastDiagonal + margin);
+            // paths leaving the band score less than the optimum found within it, which therefore is optimal
+            if (upperBound - score <= margin || margin >= maxMargin) {
+                break;
+            }
+            margin = Math.min(2 * margin, maxMargin);
         }
-        return tokensAsIndexList;
     }
 
-    private void fillNeedlemanWunschTable(List<Integer> variantGraphRanks, List<Token> witnessTokens, List<Integer> tokensAsIndexList, MatchCube cube) {
+    /**
+     * Fills the cells of the edit graph table on the diagonals between the given ones, i.e. with <code>x - y</code>
+     * in this range; cells outside of it are never moved from.
+     *
+     * @return the score of the last cell
+     */
+    private int fillNeedlemanWunschTable(int rows, int columns, MatchCube cube, int firstDiagonal, int lastDiagonal) {
         // code below is partly taken from the CSA branch.
-        // init cells and scorer
-        this.cells = new Score[tokensAsIndexList.size()][variantGraphRanks.size()];
-        Scorer scorer = new Scorer(cube);
-
-        // init 0,0
-        this.cells[0][0] = new Score(Score.Type.empty, 0, 0, null, 0);
-
-        // fill the first row with gaps
-        IntStream.range(1, variantGraphRanks.size()).forEach(x -> {
-            int previousX = x - 1;
-            this.cells[0][x] = scorer.gap(x, 0, this.cells[0][previousX]);
-        });
-
-        // fill the first column with gaps
-        IntStream.range(1, tokensAsIndexList.size()).forEach(y -> {
-            int previousY = y - 1;
-            this.cells[y][0] = scorer.gap(0, y, this.cells[previousY][0]);
-        });
-
-        // fill the remaining cells
-        // fill the rest of the cells in a y by x fashion
-        IntStream.range(1, tokensAsIndexList.size()).forEach(//
-            y -> IntStream.range(1, variantGraphRanks.size()).forEach(
-                x -> {
-                    int previousY = y - 1;
-                    int previousX = x - 1;
-                    Score fromUpperLeft = scorer.score(x, y, this.cells[previousY][previousX]);
-                    Score fromLeft = scorer.gap(x, y, this.cells[y][previousX]);
-                    Score fromUpper = calculateFromUpper(scorer, y, x, previousY, cube);
-                    Score max = max(asList(fromUpperLeft, fromLeft, fromUpper), comparingInt(score -> score.globalScore));
-                    this.cells[y][x] = max;
-                }));
+        // only two rows of scores are kept, the moves leading to each cell are kept for the traceback
+        this.directions = new DirectionMatrix(rows, columns, firstDiagonal, lastDiagonal);
+        int[] previousScores = new int[columns];
+        int[] scores = new int[columns];
+        // whether the witness token of the previous row matches at a rank
+        boolean[] previousMatches = new boolean[columns];
+        boolean[] matches = new boolean[columns];
+
+        // fill the first row with gaps; the cells bordering a row's band are scored as never to be moved from
+        final int firstRowEnd = directions.end(0);
+        for (int x = 1; x < firstRowEnd; x++) {
+            scores[x] = scores[x - 1] - 1;
+            directions.set(0, x, LEFT);
+        }
+        if (firstRowEnd < columns) {
+            scores[firstRowEnd] = OUTSIDE_BAND;
+        }
+
+        // fill the rest of the cells in a y by x fashion, the first column with gaps
+        for (int y = 1; y < rows; y++) {
+            final int[] swappedScores = previousScores;
+            previousScores = scores;
+            scores = swappedScores;
+            final boolean[] swappedMatches = previousMatches;
+            previousMatches = matches;
+            matches = swappedMatches;
+
+            final int start = directions.start(y);
+            final int end = directions.end(y);
+            if (start == 0) {
+                scores[0] = previousScores[0] - 1;
+                directions.set(y, 0, UPPER);
+            } else {
+                scores[start - 1] = OUTSIDE_BAND;
+            }
+            for (int x = Math.max(1, start); x < end; x++) {
+                final boolean match = cube.hasMatch(y - 1, x - 1);
+                matches[x] = match;
+                final int matchScore = (match ? 1 : -1);
+                // candidates are compared in this order, the first maximum wins
+                int max = previousScores[x - 1] + matchScore;
+                int direction = DIAGONAL;
+                final int fromLeft = scores[x - 1] - 1;
+                if (fromLeft > max) {
+                    max = fromLeft;
+                    direction = LEFT;
+                }
+                // coming from a match above, the cell is scored as if coming from the upper left
+                final int fromUpper = previousScores[x] + (previousMatches[x] ? matchScore : -1);
+                if (fromUpper > max) {
+                    max = fromUpper;
+                    direction = UPPER;
+                }
+                scores[x] = max;
+                directions.set(y, x, direction);
+            }
+            if (end < columns) {
+                scores[end] = OUTSIDE_BAND;
+            }
+        }
+        return scores[columns - 1];
     }
 
-    private Map<Token, VariantGraph.Vertex> alignMatchingTokens(MatchCube cube) {
-        // using the score iterator..
-        // find all the matches
-        // later for the transposition detection, we also want to keep track of all the additions, omissions, and replacements
-        Map<Token, VariantGraph.Vertex> aligned = new HashMap<>();
-        ScoreIterator scores = new ScoreIterator(this.cells);
-        Set<VariantGraph.Vertex> matchedVertices = new HashSet<>();
-        while (scores.hasNext()) {
-            Score score = scores.next();
-            if (score.type == Score.Type.match) {
-                int rank = score.x - 1;
-                Match match = cube.getMatch(score.y - 1, rank);
-                if (!matchedVertices.contains(match.vertex)) {
-                    aligned.put(match.token, match.vertex);
-                    matchedVertices.add(match.vertex);
+    /**
+     * Fills the edit graph table in square tiles, in parallel along anti-diagonals of tiles, as a tile depends on the
+     * tiles to its left, above and to its upper left only. Tiles pass their last row and column on to those depending
+     * on them; all moves are the same as when filling the table row by row.
+     */
+    private void fillNeedlemanWunschTableInTiles(int rows, int columns, MatchCube cube) {
+        this.directions = new DirectionMatrix(rows, columns, -(rows - 1), columns - 1);
+        final int tileRows = (rows + tileSize - 1) / tileSize;
+        final int tileColumns = (columns + tileSize - 1) / tileSize;
+        // the scores of the last row of the tiles in a column, preceded by the one to their left,
+        // and of the last column of the tiles in a row
+        final int[][] lastRows = new int[tileColumns][];
+        final int[][] lastColumns = new int[tileRows][];
+        for (int wave = 0; wave < tileRows + tileColumns - 1; wave++) {
+            final int tileDiagonal = wave;
+            IntStream.rangeClosed(Math.max(0, wave - tileColumns + 1), Math.min(wave, tileRows - 1)).parallel().forEach(
+                tileRow -> fillTile(rows, columns, cube, tileRow, tileDiagonal - tileRow, lastRows, lastColumns));
+        }
+    }
+
+    private void fillTile(int rows, int columns, MatchCube cube, int tileRow, int tileColumn, int[][] lastRows, int[][] lastColumns) {
+        final int startY = tileRow * tileSize;
+        final int endY = Math.min(rows, startY + tileSize);
+        final int startX = tileColumn * tileSize;
+        final int endX = Math.min(columns, startX + tileSize);
+        final int width = endX - startX;
+
+        // scores and matches are indexed by column relative to the tile, plus one for the column to its left
+        int[] previousScores = (tileRow == 0 ? new int[width + 1] : lastRows[tileColumn]);
+        int[] scores = new int[width + 1];
+        boolean[] previousMatches = new boolean[width + 1];
+        boolean[] matches = new boolean[width + 1];
+        for (int x = Math.max(1, startX); x < endX; x++) {
+            previousMatches[x - startX + 1] = cube.hasMatch(startY - 2, x - 1);
+        }
+        final int[] leftScores = (tileColumn == 0 ? null : lastColumns[tileRow]);
+        final int[] lastColumn = new int[endY - startY];
+
+        for (int y = startY; y < endY; y++) {
+            if (leftScores != null) {
+                scores[0] = leftScores[y - startY];
+            }
+            for (int x = startX; x < endX; x++) {
+                final int j = x - startX + 1;
+                if (y == 0) {
+                    // fill the first row with gaps
+                    if (x > 0) {
+                        scores[j] = scores[j - 1] - 1;
+                        directions.set(0, x, LEFT);
+                    }
+                    continue;
+                }
+                if (x == 0) {
+                    // fill the first column with gaps
+                    scores[j] = previousScores[j] - 1;
+                    directions.set(y, 0, UPPER);
+                    continue;
+                }
+                final boolean match = cube.hasMatch(y - 1, x - 1);
+                matches[j] = match;
+                final int matchScore = (match ? 1 : -1);
+                // candidates are compared in this order, the first maximum wins
+                int max = previousScores[j - 1] + matchScore;
+                int direction = DIAGONAL;
+                final int fromLeft = scores[j - 1] - 1;
+                if (fromLeft > max) {
+                    max = fromLeft;
+                    direction = LEFT;
                 }
+                // coming from a match above, the cell is scored as if coming from the upper left
+                final int fromUpper = previousScores[j] + (previousMatches[j] ? matchScore : -1);
+                if (fromUpper > max) {
+                    max = fromUpper;
+                    direction = UPPER;
+                }
+                scores[j] = max;
+                directions.set(y, x, direction);
             }
+            lastColumn[y - startY] = scores[width];
+
+            final int[] swappedScores = previousScores;
+            previousScores = scores;
+            scores = swappedScores;
+            final boolean[] swappedMatches = previousMatches;
+            previousMatches = matches;
+            matches = swappedMatches;
         }
-        return aligned;
+        lastRows[tileColumn] = previousScores;
+        lastColumns[tileRow] = lastColumn;
     }
 
-    private Score calculateFromUpper(Scorer scorer, int y, int x, int previousY, MatchCube matchCube) {
-        boolean upperIsMatch = matchCube.hasMatch(previousY - 1, x - 1);
-        return upperIsMatch //
-            ? scorer.score(x, y, this.cells[previousY][x]) //
-            : scorer.gap(x, y, this.cells[previousY][x]);
+    private static int matchedRows(MatchCube cube) {
+        int matchedRows = 0;
+        for (int y = 0; y < cube.rows(); y++) {
+            if (cube.endMatch(y) > cube.firstMatch(y)) {
+                matchedRows++;
+            }
+        }
+        return matchedRows;
     }
 
-    private void printScoringTable(List<Integer> verticesAsRankList, List<Integer> tokensAsIndexList) {
-        // print the scoring table for debugging reasons
-        for (int y = 0; y < tokensAsIndexList.size(); y++) {
-            System.out.print("|");
-            for (int x = 0; x < verticesAsRankList.size(); x++) {
-                Score cell = cells[y][x];
-                String value;
-                if (cell == null) {
-                    value = "unscored";
+    /**
+     * @return a lower bound of the score of a path through the longest chain of matches ascending in both dimensions
+     */
+    private static int bestChainScore(int rows, int columns, MatchCube cube) {
+        // longest strictly ascending subsequence of ranks, ordered by token and descending rank within a token
+        final int[] matchRows = new int[cube.size()];
+        final int[] matchRanks = new int[matchRows.length];
+        int count = 0;
+        for (int y = 0; y < cube.rows(); y++) {
+            for (int match = cube.endMatch(y) - 1; match >= cube.firstMatch(y); match--) {
+                matchRows[count] = y;
+                matchRanks[count] = cube.rank(match);
+                count++;
+            }
+        }
+        final int[] tails = new int[count];
+        final int[] predecessors = new int[count];
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (matchRanks[tails[middle]] < matchRanks[i]) {
+                    low = middle + 1;
                 } else {
-                    value = "" + cell.getGlobalScore();
-                    if (cell.type == Score.Type.match) {
-                        value += "M";
-                    } else {
-                        value += " ";
-                    }
-                    if (cell.getGlobalScore() > -1) {
-                        value = " " + value;
-                    }
+                    high = middle;
                 }
-                System.out.print(value + "|");
             }
-            System.out.println();
-            System.out.println("----------");
+            predecessors[i] = (low == 0 ? -1 : tails[low - 1]);
+            tails[low] = i;
+            length = Math.max(length, low + 1);
+        }
+
+        // between matches, every move scores at least -1; the move into a match scores +1
+        int score = 0;
+        int y = rows - 1;
+        int x = columns - 1;
+        for (int i = (length == 0 ? -1 : tails[length - 1]); i >= 0; i = predecessors[i]) {
+            final int matchY = matchRows[i] + 1;
+            final int matchX = matchRanks[i] + 1;
+            score -= Math.max(y - matchY, x - matchX);
+            score += 1;
+            y = matchY - 1;
+            x = matchX - 1;
         }
-        System.out.println();
+        return score - Math.max(y, x);
     }
 
-    //    private void printScoringTable(List<Integer> verticesAsRankList, List<Integer> tokensAsIndexList) {
-//        // print the scoring table for debugging reasons
-//        for (int y = 0; y < tokensAsIndexList.size(); y++) {
-//            System.out.print("|");
-//            for (int x = 0; x < verticesAsRankList.size(); x++) {
-//                Score cell = cells[y][x];
-//                String value;
-//                if (cell == null) {
-//                    value = "unscored";
-//                } else {
-//                    value = "" + cell.getGlobalScore();
-//                    if (cell.type == Score.Type.match) {
-//                        value += "M";
-//                    } else {
-//                        value += " ";
-//                    }
-//                    if (cell.getGlobalScore() > -1) {
-//                        value = " " + value;
-//                    }
-//                }
-//                System.out.print(value + "|");
-//            }
-//            System.out.println();
-//            System.out.println("-");
-//        }
-//        System.out.println();
-//    }
+    private Map<Token, VariantGraph.Vertex> alignMatchingTokens(MatchCube cube, EditGraphPath path) {
+        // follow the moves back from the last cell and find all the matches
+        // later for the transposition detection, we also want to keep track of all the additions, omissions, and replacements
+        Map<Token, VariantGraph.Vertex> aligned = new HashMap<>();
+        Set<VariantGraph.Vertex> matchedVertices = new HashSet<>();
+        for (int move = 0; move < path.size(); move++) {
+            final int y = path.y(move);
+            final int x = path.x(move);
+            final int direction = path.direction(move);
+            // a cell is a match if scored as one, i.e. coming from the upper left or from a match above
+            final boolean scored = (direction == DIAGONAL) || (direction == UPPER && x > 0 && cube.hasMatch(y - 2, x - 1));
+            if (scored && cube.hasMatch(y - 1, x - 1)) {
+                int rank = x - 1;
+                Match match = cube.getMatch(y - 1, rank);
+                if (!matchedVertices.contains(match.vertex)) {
+                    aligned.put(match.token, match.vertex);
+                    matchedVertices.add(match.vertex);
+                }
+            }
+        }
+        return aligned;
+    }
 
     private void updateTokenToVertexArray(Iterable<Token> tokens, Witness witness) {
         // we need to update the token -> vertex map
@@ -288,108 +451,132 @@ public class EditGraphAligner extends CollationAlgorithm.Base {
         collate(against, Arrays.asList(witness));
     }
 
-    public static class Score {
-
-        public Type type;
-        public Score parent;
-        public int globalScore = 0;
-        int x;
-        int y;
-        int previousX;
-        int previousY;
-
-        public Score(Type type, int x, int y, Score parent, int i) {
-            this.type = type;
-            this.x = x;
-            this.y = y;
-            this.parent = parent;
-            this.previousX = parent == null ? 0 : parent.x;
-            this.previousY = parent == null ? 0 : parent.y;
-            this.globalScore = i;
-        }
-
-        public Score(Type type, int x, int y, Score parent) {
-            this.type = type;
-            this.x = x;
-            this.y = y;
-            this.parent = parent;
-            this.previousX = parent.x;
-            this.previousY = parent.y;
-            this.globalScore = parent.globalScore;
-        }
-
-        public int getGlobalScore() {
-            return this.globalScore;
-        }
+    /**
+     * Selects the algorithm building the suffix array of the token index; defaults to {@link Algorithm#AUTO}.
+     */
+    public void setSuffixArrayAlgorithm(Algorithm suffixArrayAlgorithm) {
+        this.suffixArrayAlgorithm = suffixArrayAlgorithm;
+    }
 
-        public void setGlobalScore(int globalScore) {
-            this.globalScore = globalScore;
-        }
+    /**
+     * Limits the candidate matches derived from the token index; defaults to {@link BlockPruning#NONE}.
+     */
+    public void setBlockPruning(BlockPruning blockPruning) {
+        this.blockPruning = blockPruning;
+    }
 
-        @Override
-        public String toString() {
-            return "[" + this.y + "," + this.x + "]:" + this.globalScore;
-        }
+    /**
+     * Derives the token index from an index of a corpus containing all collated witnesses, instead of building it.
+     */
+    public void setCorpusIndex(CorpusTokenIndex corpusIndex) {
+        this.corpusIndex = corpusIndex;
+    }
 
-        public enum Type {
-            match, mismatch, addition, deletion, empty
-        }
+    /**
+     * Keeps the token index in its compact representation, trading lookup speed for memory; defaults to
+     * <code>false</code>.
+     *
+     * @see TokenIndex#setCompact(boolean)
+     */
+    public void setCompactTokenIndex(boolean compactTokenIndex) {
+        this.compactTokenIndex = compactTokenIndex;
     }
 
-    class Scorer {
-        private final MatchCube matchCube;
+    /**
+     * Fills only a band of diagonals of the edit graph table, widened until it contains an optimal path; defaults to
+     * <code>false</code>.
+     * <p>
+     * The band is derived from the longest chain of matches between the variant graph and a witness, so that it
+     * stays narrow for similar witnesses, for which the work is nearly linear in their length. Alignments are the same
+     * as with the full table.
+     */
+    public void setBanded(boolean banded) {
+        this.banded = banded;
+    }
 
-        public Scorer(MatchCube matchCube) {
-            this.matchCube = matchCube;
-        }
+    /**
+     * Limits the number of cells of the edit graph table, above which the alignment is computed in space linear in its
+     * dimensions, at about twice the work; defaults to {@link #DEFAULT_MAX_TABLE_CELLS}. Alignments are the same as
+     * with the full table. This takes precedence over the {@link #setBanded(boolean) banded mode}.
+     */
+    public void setMaxTableCells(long maxTableCells) {
+        this.maxTableCells = maxTableCells;
+    }
 
-        public Score gap(int x, int y, Score parent) {
-            Score.Type type = determineType(x, y, parent);
-            return new Score(type, x, y, parent, parent.globalScore - 1);
-        }
+    /**
+     * Sets the number of cells of the edit graph table from which on it is filled in parallel; defaults to
+     * {@link #DEFAULT_PARALLEL_TABLE_CELLS}. Not applicable in banded or linear-space mode.
+     */
+    public void setParallelTableCells(long parallelTableCells) {
+        this.parallelTableCells = parallelTableCells;
+    }
 
-        public Score score(int x, int y, Score parent) {
-            int rank = (x - 1);
-            if (this.matchCube.hasMatch(y - 1, rank)) {
-                Match match = this.matchCube.getMatch(y - 1, rank);
-                return new Score(Score.Type.match, x, y, parent, parent.globalScore + 1);
+    /**
+     * The moves leading to the cells of the edit graph table, two bits per cell, for the cells of a band of diagonals.
+     */
+    static class DirectionMatrix {
+        final int rows;
+        final int columns;
+        private final int firstDiagonal;
+        private final int lastDiagonal;
+        // offsets of the rows' cells
+        private final long[] offsets;
+        private final long[] cells;
+
+        DirectionMatrix(int rows, int columns, int firstDiagonal, int lastDiagonal) {
+            this.rows = rows;
+            this.columns = columns;
+            this.firstDiagonal = firstDiagonal;
+            this.lastDiagonal = lastDiagonal;
+            // rows start at word boundaries, so that tiles of whole words can be set concurrently
+            this.offsets = new long[rows + 1];
+            for (int y = 0; y < rows; y++) {
+                offsets[y + 1] = offsets[y] + ((end(y) - start(y) + 31) & ~31);
             }
-            return new Score(Score.Type.mismatch, x, y, parent, parent.globalScore - 1);
+            this.cells = new long[(int) ((offsets[rows] * 2 + 63) / 64)];
         }
 
-        private Score.Type determineType(int x, int y, Score parent) {
-            if (x == parent.x) {
-                return Score.Type.addition;
-            }
-            if (y == parent.y) {
-                return Score.Type.deletion;
-            }
-            return Score.Type.empty;
+        /**
+         * @return the first column of the band in the given row
+         */
+        int start(int y) {
+            return Math.max(0, y + firstDiagonal);
         }
-    }
 
-    private static class ScoreIterator implements Iterator<Score> {
-        Integer y;
-        Integer x;
-        private Score[][] matrix;
+        /**
+         * @return the column following the band in the given row
+         */
+        int end(int y) {
+            return (int) Math.min(columns, (long) y + lastDiagonal + 1);
+        }
 
-        ScoreIterator(Score[][] matrix) {
-            this.matrix = matrix;
-            this.x = matrix[0].length - 1;
-            this.y = matrix.length - 1;
+        int get(int y, int x) {
+            final long bit = (offsets[y] + x - start(y)) * 2;
+            return (int) (cells[(int) (bit >>> 6)] >>> (bit & 63)) & 3;
         }
 
-        @Override
-        public boolean hasNext() {
-            return !(this.x == 0 && this.y == 0);
+        void set(int y, int x, int direction) {
+            final long bit = (offsets[y] + x - start(y)) * 2;
+            final int word = (int) (bit >>> 6);
+            cells[word] = (cells[word] & ~(3L << (bit & 63))) | ((long) direction << (bit & 63));
         }
 
-        @Override
-        public Score next() {
-            Score currentScore = this.matrix[this.y][this.x];
-            this.x = currentScore.previousX;
-            this.y = currentScore.previousY;
-            return currentScore;
+        /**
+         * Traces the moves back from the last cell to the first one, adding them to a path at the given offset.
+         */
+        void traceback(EditGraphPath path, int yOffset, int xOffset) {
+            int y = rows - 1;
+            int x = columns - 1;
+            while (!(x == 0 && y == 0)) {
+                final int direction = get(y, x);
+                path.add(y + yOffset, x + xOffset, direction);
+                if (direction != LEFT) {
+                    y--;
+                }
+                if (direction != UPPER) {
+                    x--;
+                }
+            }
         }
     }
 }
@@ -0,0 +1,38 @@
+package eu.interedition.collatex.dekker.editgraphaligner;
+
+import java.util.Arrays;
+
+/**
+ * The moves of a path through the edit graph table, from its last cell back to its first, each given by the cell
+ * moved into and the direction of the move.
+ */
+class EditGraphPath {
+    private int[] moves = new int[3 * 64];
+    private int size = 0;
+
+    void add(int y, int x, int direction) {
+        if (3 * size == moves.length) {
+            moves = Arrays.copyOf(moves, moves.length * 2);
+        }
+        moves[3 * size] = y;
+        moves[3 * size + 1] = x;
+        moves[3 * size + 2] = direction;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int y(int move) {
+        return moves[3 * move];
+    }
+
+    int x(int move) {
+        return moves[3 * move + 1];
+    }
+
+    int direction(int move) {
+        return moves[3 * move + 2];
+    }
+}
@@ -0,0 +1,139 @@
+package eu.interedition.collatex.dekker.editgraphaligner;
+
+import static eu.interedition.collatex.dekker.editgraphaligner.EditGraphAligner.DIAGONAL;
+import static eu.interedition.collatex.dekker.editgraphaligner.EditGraphAligner.LEFT;
+import static eu.interedition.collatex.dekker.editgraphaligner.EditGraphAligner.UPPER;
+
+/**
+ * Finds the path through the edit graph table, which {@link EditGraphAligner} traces back from a table of moves, in
+ * space linear in the table's dimensions (Hirschberg).
+ * <p>
+ * A forward pass over the table labels each cell with the cell in which the path traced back from it leaves the
+ * middle row, and thereby yields the middle cell of the path from the last cell. The parts of the table before and
+ * after that cell are solved recursively, until they fit into a table of moves of the given maximal size. As the parts
+ * halve in area, about twice the work of filling the whole table is done. The path is the same as traced back from the
+ * whole table: among the moves into a cell of the path, the first optimal one in the order diagonal, left, upper is
+ * chosen, and the moves of a path between two of its cells are optimal between them.
+ */
+class LinearSpaceAlignment {
+
+    private final MatchCube cube;
+    private final long maxTableCells;
+    private final EditGraphPath path = new EditGraphPath();
+
+    private LinearSpaceAlignment(MatchCube cube, long maxTableCells) {
+        this.cube = cube;
+        this.maxTableCells = maxTableCells;
+    }
+
+    static EditGraphPath align(MatchCube cube, int rows, int columns, long maxTableCells) {
+        final LinearSpaceAlignment alignment = new LinearSpaceAlignment(cube, maxTableCells);
+        alignment.align(0, 0, rows - 1, columns - 1);
+        return alignment.path;
+    }
+
+    /**
+     * Adds the moves of the path from the last to the first of the given cells, excluding the first one.
+     */
+    private void align(int startY, int startX, int endY, int endX) {
+        final int width = endX - startX + 1;
+        if (endY - startY <= 1 || (long) (endY - startY + 1) * width <= maxTableCells) {
+            final EditGraphAligner.DirectionMatrix directions = new EditGraphAligner.DirectionMatrix(endY - startY + 1, width, -(endY - startY), width - 1);
+            forward(startY, startX, endY, endX, -1, directions);
+            directions.traceback(path, startY, startX);
+            return;
+        }
+
+        final int middle = (startY + endY - 1) >>> 1;
+        final int label = forward(startY, startX, endY, endX, middle, null);
+        final int middleX = startX + (label >>> 1);
+        final boolean diagonal = (label & 1) != 0;
+        final int nextX = (diagonal ? middleX + 1 : middleX);
+
+        align(middle + 1, nextX, endY, endX);
+        path.add(middle + 1, nextX, diagonal ? DIAGONAL : UPPER);
+        align(startY, startX, middle, middleX);
+    }
+
+    /**
+     * Scores the cells between the given ones, recording the moves into them if a table is given.
+     *
+     * @return if a middle row is given, the label of the last cell, i.e. the column of the path's last cell in the
+     * middle row, relative to the first column, times two, plus one if the path moves diagonally out of it
+     */
+    private int forward(int startY, int startX, int endY, int endX, int middle, EditGraphAligner.DirectionMatrix directions) {
+        final int width = endX - startX + 1;
+        int[] previousScores = new int[width];
+        int[] scores = new int[width];
+        boolean[] previousMatches = new boolean[width];
+        boolean[] matches = new boolean[width];
+        int[] previousLabels = (middle < 0 ? null : new int[width]);
+        int[] labels = (middle < 0 ? null : new int[width]);
+
+        // the first row can only be moved through from the left
+        for (int j = 0; j < width; j++) {
+            final int x = startX + j;
+            matches[j] = x > 0 && cube.hasMatch(startY - 1, x - 1);
+            if (j > 0) {
+                scores[j] = scores[j - 1] - 1;
+                if (directions != null) {
+                    directions.set(0, j, LEFT);
+                }
+            }
+        }
+
+        for (int y = startY + 1; y <= endY; y++) {
+            final int[] swappedScores = previousScores;
+            previousScores = scores;
+            scores = swappedScores;
+            final boolean[] swappedMatches = previousMatches;
+            previousMatches = matches;
+            matches = swappedMatches;
+            if (labels != null) {
+                final int[] swappedLabels = previousLabels;
+                previousLabels = labels;
+                labels = swappedLabels;
+            }
+
+            for (int j = 0; j < width; j++) {
+                final int x = startX + j;
+                final boolean match = x > 0 && cube.hasMatch(y - 1, x - 1);
+                matches[j] = match;
+                final int matchScore = (match ? 1 : -1);
+                // candidates are compared in this order, the first maximum wins; the first column is moved through from above
+                int max = Integer.MIN_VALUE;
+                int direction = UPPER;
+                if (j > 0) {
+                    max = previousScores[j - 1] + matchScore;
+                    direction = DIAGONAL;
+                    final int fromLeft = scores[j - 1] - 1;
+                    if (fromLeft > max) {
+                        max = fromLeft;
+                        direction = LEFT;
+                    }
+                }
+                // coming from a match above, the cell is scored as if coming from the upper left
+                final int fromUpper = previousScores[j] + (previousMatches[j] ? matchScore : -1);
+                if (fromUpper > max) {
+                    max = fromUpper;
+                    direction = UPPER;
+                }
+                scores[j] = max;
+                if (directions != null) {
+                    directions.set(y - startY, j, direction);
+                }
+
+                if (labels != null && y > middle) {
+                    if (direction == LEFT) {
+                        labels[j] = labels[j - 1];
+                    } else if (y == middle + 1) {
+                        labels[j] = (direction == DIAGONAL ? 2 * (j - 1) + 1 : 2 * j);
+                    } else {
+                        labels[j] = (direction == DIAGONAL ? previousLabels[j - 1] : previousLabels[j]);
+                    }
+                }
+            }
+        }
+        return (labels == null ? -1 : labels[width - 1]);
+    }
+}
@@ -5,60 +5,108 @@ import eu.interedition.collatex.VariantGraph;
 import eu.interedition.collatex.VariantGraph.Vertex;
 import eu.interedition.collatex.Witness;
 import eu.interedition.collatex.dekker.Match;
-import eu.interedition.collatex.dekker.token_index.Block;
-import eu.interedition.collatex.dekker.token_index.TokenIndex;
-import eu.interedition.collatex.util.VariantGraphRanking;
+import eu.interedition.collatex.dekker.token_index.BlockIndex;
+import eu.interedition.collatex.util.StreamUtil;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Arrays;
 
 /**
  * Created by Ronald Haentjens Dekker on 08/01/17.
  * <p>
- * This class builds a cube of matches, given a VariantGraphRanking, a TokenComparator and the next witness.
+ * This class builds a cube of matches, given the ranks of a VariantGraph, a TokenComparator and the next witness.
  */
 public class MatchCube {
-    private final Map<MatchCoordinate, Match> matches = new HashMap<>();
+    // the ranks matched by each token of the witness, in ascending order, with the matching vertices:
+    // the matches of the token at position y are those from rowStarts[y] to rowStarts[y + 1]
+    private final int[] rowStarts;
+    private final int[] ranks;
+    private final VariantGraph.Vertex[] vertices;
+    private final Token[] tokens;
 
-    public MatchCube(TokenIndex tokenIndex, //
+    public MatchCube(BlockIndex tokenIndex, //
                      Iterable<Token> witnessTokens,//
                      VariantGraph.Vertex[] vertex_array, //
-                     VariantGraphRanking variantGraphRanking) {
+                     VariantGraph graph) {
 
         Witness witness = witnessTokens.iterator().next().getWitness();
         int startTokenPositionForWitness = tokenIndex.getStartTokenPositionForWitness(witness);
-        List<Block.Instance> instances = tokenIndex.getBlockInstancesForWitness(witness);
-        for (Block.Instance witnessInstance : instances) {
-            // System.out.println("Debug creating matches for witness block instance: "+witnessInstance);
-            // for every instance of a block in the witness we need to fetch the corresponding graph instances of the block
-            // calculate graph block instances
-            // fetch block
-            Block block = witnessInstance.block;
-            List<Block.Instance> allInstances = block.getAllInstances();
-            List<Block.Instance> graphInstances = allInstances.stream()//
-                .filter(instance -> instance.start_token < startTokenPositionForWitness)//
-                .collect(Collectors.toList());
-            // now for every graph block instance we have to create matches
-            for (Block.Instance graphInstance : graphInstances) {
-                int graph_start_token = graphInstance.start_token;
-                for (int i = 0; i < block.length; i++) {
+        // the witness' tokens by their position relative to the witness' start in the token array
+        this.tokens = StreamUtil.stream(witnessTokens).toArray(Token[]::new);
+
+        // collect the matches in the order found, as (row, rank, vertex)
+        int count = 0;
+        int[] matchRows = new int[16];
+        int[] matchRanks = new int[16];
+        VariantGraph.Vertex[] matchVertices = new VariantGraph.Vertex[16];
+        for (int ic = tokenIndex.getFirstBlockInstanceForWitness(witness), end = tokenIndex.getEndBlockInstanceForWitness(witness); ic < end; ic++) {
+            // for every instance of a block in the witness we need to fetch the corresponding graph instances of the block,
+            // i.e. the block's occurrences in preceding witnesses
+            int block = tokenIndex.getBlockInstanceBlock(ic);
+            int witness_start_token = tokenIndex.getBlockInstanceToken(ic);
+            int length = tokenIndex.getBlockLength(block);
+            for (int graph_start_token : tokenIndex.getPrecedingOccurrences(ic)) {
+                // now for every graph block instance we have to create matches
+                for (int i = 0; i < length; i++) {
                     VariantGraph.Vertex v = vertex_array[graph_start_token + i];
                     if (v == null) {
                         throw new RuntimeException("Vertex is null for token \"" + graph_start_token + i + "\" that is supposed to be mapped to a vertex in the graph!");
                     }
-                    int rank = variantGraphRanking.apply(v) - 1;
-                    int witnessStartToken = witnessInstance.start_token + i;
+                    int rank = graph.rank(v) - 1;
+                    int witnessStartToken = witness_start_token + i;
                     int row = witnessStartToken - startTokenPositionForWitness;
-                    Token token = tokenIndex.token_array[witnessStartToken];
-                    Match match = new Match(v, token);
-                    MatchCoordinate coordinate = new MatchCoordinate(row, rank);
-//                    System.out.println("match:[" + row + "," + rank + "]:" + token);
-                    matches.put(coordinate, match);
+                    if (count == matchRows.length) {
+                        matchRows = Arrays.copyOf(matchRows, count * 2);
+                        matchRanks = Arrays.copyOf(matchRanks, count * 2);
+                        matchVertices = Arrays.copyOf(matchVertices, count * 2);
+                    }
+                    matchRows[count] = row;
+                    matchRanks[count] = rank;
+                    matchVertices[count] = v;
+                    count++;
+                }
+            }
+        }
+
+        // bucket the matches by row, in the order found
+        this.rowStarts = new int[tokens.length + 1];
+        for (int m = 0; m < count; m++) {
+            rowStarts[matchRows[m] + 1]++;
+        }
+        for (int y = 0; y < tokens.length; y++) {
+            rowStarts[y + 1] += rowStarts[y];
+        }
+        final int[] byRow = new int[count];
+        final int[] next = Arrays.copyOf(rowStarts, tokens.length);
+        for (int m = 0; m < count; m++) {
+            byRow[next[matchRows[m]]++] = m;
+        }
+
+        // sort each row by rank; of several matches of a token at the same rank, the last one found is kept
+        int[] ranks = new int[count];
+        VariantGraph.Vertex[] vertices = new VariantGraph.Vertex[count];
+        int size = 0;
+        final long[] keys = new long[count];
+        for (int y = 0; y < tokens.length; y++) {
+            final int start = rowStarts[y];
+            final int end = rowStarts[y + 1];
+            for (int k = start; k < end; k++) {
+                keys[k] = ((long) matchRanks[byRow[k]] << 32) | byRow[k];
+            }
+            Arrays.sort(keys, start, end);
+            rowStarts[y] = size;
+            for (int k = start; k < end; k++) {
+                final int m = (int) keys[k];
+                if (k + 1 < end && matchRanks[(int) keys[k + 1]] == matchRanks[m]) {
+                    continue;
                 }
+                ranks[size] = matchRanks[m];
+                vertices[size] = matchVertices[m];
+                size++;
             }
         }
+        rowStarts[tokens.length] = size;
+        this.ranks = Arrays.copyOf(ranks, size);
+        this.vertices = Arrays.copyOf(vertices, size);
     }
 
     private boolean hasTokens(Vertex vertex) {
@@ -66,36 +114,52 @@ public class MatchCube {
     }
 
     public boolean hasMatch(int y, int x) {
-        MatchCoordinate c = new MatchCoordinate(y, x);
-        return matches.containsKey(c);
+        return indexOf(y, x) >= 0;
     }
 
     public Match getMatch(int y, int x) {
-        MatchCoordinate c = new MatchCoordinate(y, x);
-        return matches.get(c);
+        final int match = indexOf(y, x);
+        return (match < 0 ? null : new Match(vertices[match], tokens[y]));
     }
 
-    class MatchCoordinate {
-        final int tokenIndex; // position in witness, starting from zero
-        final int rankInVG; // rank in the variant graph
-
-        public MatchCoordinate(int tokenIndex, int rankInVG) {
-            this.tokenIndex = tokenIndex;
-            this.rankInVG = rankInVG;
+    private int indexOf(int y, int x) {
+        if (y < 0 || y >= tokens.length) {
+            return -1;
         }
+        final int start = rowStarts[y];
+        final int end = rowStarts[y + 1];
+        return (start == end ? -1 : Arrays.binarySearch(ranks, start, end, x));
+    }
 
-        @Override
-        public int hashCode() {
-            return tokenIndex * 72 + rankInVG;
-        }
+    /**
+     * @return the number of tokens of the witness, i.e. of rows of the cube
+     */
+    int rows() {
+        return tokens.length;
+    }
 
-        @Override
-        public boolean equals(Object obj) {
-            if (!(obj instanceof MatchCoordinate)) {
-                return false;
-            }
-            MatchCoordinate other = (MatchCoordinate) obj;
-            return this.tokenIndex == other.tokenIndex && this.rankInVG == other.rankInVG;
-        }
+    /**
+     * @return the index of the first match of the token at the given position; matches are indexed by token and rank
+     */
+    int firstMatch(int y) {
+        return rowStarts[y];
+    }
+
+    /**
+     * @return the index following the last match of the token at the given position
+     */
+    int endMatch(int y) {
+        return rowStarts[y + 1];
+    }
+
+    /**
+     * @return the number of matches
+     */
+    int size() {
+        return ranks.length;
+    }
+
+    int rank(int match) {
+        return ranks[match];
     }
 }
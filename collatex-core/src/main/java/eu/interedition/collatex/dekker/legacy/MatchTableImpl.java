@@ -122,7 +122,7 @@ public class MatchTableImpl implements MatchTable {
         // -2 === ignore the start and the end vertex
         return new MatchTableImpl(
                 StreamUtil.stream(witness).toArray(Token[]::new),
-                IntStream.range(0, Math.max(0, ranking.apply(graph.getEnd()) - 1)).toArray()
+                IntStream.range(0, Math.max(0, ranking.rank(graph.getEnd()) - 1)).toArray()
         );
     }
 
@@ -136,7 +136,7 @@ public class MatchTableImpl implements MatchTable {
             if (unique.contains(t) || ambiguous.contains(t)) {
                 List<VariantGraph.Vertex> matchingVertices = matches.allMatches.getOrDefault(t, Collections.emptyList());
                 for (VariantGraph.Vertex vgv : matchingVertices) {
-                    set(rowIndex, ranking.apply(vgv) - 1, t, vgv);
+                    set(rowIndex, ranking.rank(vgv) - 1, t, vgv);
                 }
             }
             rowIndex++;
@@ -9,46 +9,31 @@ import java.util.stream.IntStream;
 
 public class Block {
     // every Block has a token index as a parent
-    private final TokenIndex tokenIndex;
+    private final BlockIndex tokenIndex;
+    // position in the token index' block arrays
+    private final int id;
     // length = number of tokens in this block of text
     public final int length;
     // start = start position in suffix array
     public final int start;
     // end = end position in suffix array
     public final int end;
-    // depth = number of witnesses this block of text occurs in
-    // Note: depth is lazy initialized
-    private Integer depth;
 
-    // For building blocks only
-    public Block(TokenIndex tokenIndex, int suffix_start_position, int length) {
+    public Block(BlockIndex tokenIndex, int id) {
         this.tokenIndex = tokenIndex;
-        this.start = suffix_start_position;
-        this.length = length;
-        this.end = 0;
-        this.depth = 0;
-    }
-
-    public Block(TokenIndex tokenIndex, int start, int end, int length) {
-        this.tokenIndex = tokenIndex;
-        this.start = start;
-        this.end = end;
-        this.length = length;
-        this.depth = null;
+        this.id = id;
+        this.start = tokenIndex.getBlockStart(id);
+        this.end = tokenIndex.getBlockEnd(id);
+        this.length = tokenIndex.getBlockLength(id);
     }
 
+    // depth = number of witnesses this block of text occurs in
     public int getDepth() {
-        if (depth == null) {
-            depth = calculateDepth();
-        }
-        return depth;
+        return tokenIndex.getBlockDepth(id);
     }
 
     // frequency = number of times this block of text occurs in complete witness set
     public int getFrequency() {
-        if (end == 0) {
-            throw new IllegalStateException("LCP interval is unclosed!");
-        }
         return this.end - this.start + 1;
     }
 
@@ -56,7 +41,7 @@ public class Block {
         List<Block.Instance> instances = new ArrayList<>();
         for (int i = start; i <= end; i++) {
             // every i is one occurrence
-            int token_position = tokenIndex.suffix_array[i];
+            int token_position = tokenIndex.getSuffix(i);
             Block.Instance instance = new Instance(token_position, this);
             instances.add(instance);
         }
@@ -69,7 +54,7 @@ public class Block {
         // with/or without end
         for (int i = start; i < end; i++) {
             // every i is one occurrence
-            int token_position = tokenIndex.suffix_array[i];
+            int token_position = tokenIndex.getSuffix(i);
             IntStream range = IntStream.range(token_position, token_position + length);
             result = IntStream.concat(result, range);
         }
@@ -77,20 +62,22 @@ public class Block {
     }
 
     @Override
-    public String toString() {
-        if (end == 0) {
-            return "Unclosed LCP interval start at: " + start + ",  length: " + length;
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Block)) {
+            return false;
         }
-        return ("LCP interval start at: " + start + ", depth: " + this.getDepth() + ", length: " + this.length + " getFrequency:" + getFrequency());
+        final Block other = (Block) obj;
+        return tokenIndex == other.tokenIndex && id == other.id;
     }
 
-    private int calculateDepth() {
-        // the same block can occur multiple times in one witness
-        Set<Witness> witnesses = new HashSet<>();
-        for (Block.Instance instance : getAllInstances()) {
-            witnesses.add(instance.getWitness());
-        }
-        return witnesses.size();
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return ("LCP interval start at: " + start + ", depth: " + this.getDepth() + ", length: " + this.length + " getFrequency:" + getFrequency());
     }
 
     public static class Instance {
@@ -127,13 +114,14 @@ public class Block {
 
         public List<Token> getTokens() {
             List<Token> tokens = new ArrayList<>();
-            tokens.addAll(Arrays.asList(block.tokenIndex.token_array)//
-                    .subList(start_token, start_token + this.length() ));
+            for (int tc = start_token; tc < start_token + this.length(); tc++) {
+                tokens.add(block.tokenIndex.getToken(tc));
+            }
             return tokens;
         }
 
         public Witness getWitness() {
-            Token startToken = block.tokenIndex.token_array[start_token];
+            Token startToken = block.tokenIndex.getToken(start_token);
             return startToken.getWitness();
         }
     }
@@ -0,0 +1,79 @@
+package eu.interedition.collatex.dekker.token_index;
+
+import eu.interedition.collatex.Token;
+import eu.interedition.collatex.Witness;
+
+/**
+ * The blocks of an index of witnesses' tokens and their instances per witness, from which matches between a witness and
+ * the preceding ones are derived.
+ * <p>
+ * Tokens are addressed by their position in the index, where each witness is followed by an end marker. Blocks are
+ * intervals of the index' suffix array; their instances are grouped by witness.
+ *
+ * @see TokenIndex
+ * @see IncrementalTokenIndex
+ */
+public interface BlockIndex {
+
+    /**
+     * @return the number of positions, including end markers
+     */
+    int size();
+
+    int getStartTokenPositionForWitness(Witness witness);
+
+    /**
+     * @return the token at the given position, which must not be an end marker
+     */
+    Token getToken(int position);
+
+    /**
+     * @return the position of the suffix at the given position of the suffix array
+     */
+    int getSuffix(int index);
+
+    /**
+     * @return the position of the block's first suffix in the suffix array
+     */
+    int getBlockStart(int block);
+
+    /**
+     * @return the position of the block's last suffix in the suffix array
+     */
+    int getBlockEnd(int block);
+
+    /**
+     * @return the number of tokens in the block
+     */
+    int getBlockLength(int block);
+
+    /**
+     * @return the number of witnesses the block occurs in
+     */
+    int getBlockDepth(int block);
+
+    /**
+     * @return the first of the witness' block instances
+     */
+    int getFirstBlockInstanceForWitness(Witness witness);
+
+    /**
+     * @return the position after the last of the witness' block instances
+     */
+    int getEndBlockInstanceForWitness(Witness witness);
+
+    /**
+     * @return the block of the given block instance
+     */
+    int getBlockInstanceBlock(int instance);
+
+    /**
+     * @return the position of the given block instance's first token
+     */
+    int getBlockInstanceToken(int instance);
+
+    /**
+     * @return the token positions of the occurrences of a block instance's block in preceding witnesses
+     */
+    int[] getPrecedingOccurrences(int instance);
+}
@@ -0,0 +1,127 @@
+package eu.interedition.collatex.dekker.token_index;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The instances of an index' blocks, grouped by witness and limited by {@link BlockPruning}, as stored by
+ * {@link TokenIndex} and {@link IncrementalTokenIndex}.
+ */
+class BlockInstances {
+    private final BlockPruning blockPruning;
+    // first block instance of each witness, followed by the number of block instances
+    private final int[] witnessToBlockInstances;
+    // block and token position of each block instance
+    final int[] block;
+    final int[] token;
+    int suppressedBlocks;
+    long suppressedMatches;
+
+    /**
+     * @param suffixes  the suffix array, or the occurrences of the blocks
+     * @param documents the witness number of each suffix
+     */
+    BlockInstances(BlockPruning blockPruning, int witnessCount, int blockCount, int[] blockStart, int[] blockEnd,
+                   int[] blockLength, int[] blockDepth, int[] suffixes, int[] documents) {
+        this.blockPruning = blockPruning;
+        final boolean[] pruned = new boolean[blockCount];
+        final long[] witnessFrequencies = new long[witnessCount];
+        for (int b = 0; b < blockCount; b++) {
+            final int frequency = blockEnd[b] - blockStart[b] + 1;
+            if (blockPruning.prunes(blockLength[b], frequency, blockDepth[b])) {
+                pruned[b] = true;
+                suppressedBlocks++;
+                // every instance would have been paired with the instances in all other witnesses
+                Arrays.fill(witnessFrequencies, 0);
+                for (int i = blockStart[b]; i <= blockEnd[b]; i++) {
+                    witnessFrequencies[documents[i]]++;
+                }
+                long pairs = (long) frequency * frequency;
+                for (long witnessFrequency : witnessFrequencies) {
+                    pairs -= witnessFrequency * witnessFrequency;
+                }
+                suppressedMatches += pairs / 2 * blockLength[b];
+            }
+        }
+
+        witnessToBlockInstances = new int[witnessCount + 1];
+        for (int b = 0; b < blockCount; b++) {
+            for (int i = blockStart[b]; !pruned[b] && i <= blockEnd[b]; i++) {
+                witnessToBlockInstances[documents[i] + 1]++;
+            }
+        }
+        for (int w = 0; w < witnessCount; w++) {
+            witnessToBlockInstances[w + 1] += witnessToBlockInstances[w];
+        }
+        block = new int[witnessToBlockInstances[witnessCount]];
+        token = new int[block.length];
+        final int[] next = Arrays.copyOf(witnessToBlockInstances, witnessCount);
+        for (int b = 0; b < blockCount; b++) {
+            for (int i = blockStart[b]; !pruned[b] && i <= blockEnd[b]; i++) {
+                final int instance = next[documents[i]]++;
+                block[instance] = b;
+                token[instance] = suffixes[i];
+            }
+        }
+    }
+
+    int first(int witness) {
+        return witnessToBlockInstances[witness];
+    }
+
+    int end(int witness) {
+        return witnessToBlockInstances[witness + 1];
+    }
+
+    /**
+     * Pairs a block instance with the occurrences of its block in preceding witnesses. If there are more than
+     * {@link BlockPruning#getNearestOccurrences()}, those nearest to the instance's position relative to the start of
+     * its witness are kept.
+     *
+     * @param suffixes         the suffixes of the instance's block
+     * @param witnessStart     the position of the first token of the instance's witness
+     * @param relativePosition the position of a suffix relative to the start of its witness, by its index in the
+     *                         block's suffixes
+     * @return the token positions of the occurrences in preceding witnesses, in the order of the block's suffixes
+     */
+    int[] precedingOccurrences(int instance, int length, int[] suffixes, int witnessStart, IntUnaryOperator relativePosition) {
+        int count = 0;
+        for (int suffix : suffixes) {
+            if (suffix < witnessStart) {
+                count++;
+            }
+        }
+        final int nearest = blockPruning.getNearestOccurrences();
+        final int[] occurrences = new int[Math.min(count, nearest)];
+        if (count <= nearest) {
+            int oc = 0;
+            for (int suffix : suffixes) {
+                if (suffix < witnessStart) {
+                    occurrences[oc++] = suffix;
+                }
+            }
+            return occurrences;
+        }
+
+        // order by distance of relative positions, then by position in the suffix array
+        final int position = token[instance] - witnessStart;
+        final long[] candidates = new long[count];
+        for (int sc = 0, cc = 0; sc < suffixes.length; sc++) {
+            if (suffixes[sc] < witnessStart) {
+                final int distance = Math.abs(relativePosition.applyAsInt(sc) - position);
+                candidates[cc++] = ((long) distance << 32) | sc;
+            }
+        }
+        Arrays.sort(candidates);
+        final int[] positions = new int[nearest];
+        for (int oc = 0; oc < nearest; oc++) {
+            positions[oc] = (int) candidates[oc];
+        }
+        Arrays.sort(positions);
+        for (int oc = 0; oc < nearest; oc++) {
+            occurrences[oc] = suffixes[positions[oc]];
+        }
+        suppressedMatches += (long) (count - nearest) * length;
+        return occurrences;
+    }
+}
@@ -0,0 +1,66 @@
+package eu.interedition.collatex.dekker.token_index;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Limits the candidate matches a {@link TokenIndex} derives from its blocks.
+ * <p>
+ * Every instance of a block in a witness is paired with all instances of the block in preceding witnesses, so
+ * frequent short blocks like articles or punctuation yield a number of candidate matches quadratic in their
+ * frequency. Blocks can be dropped by a maximum frequency depending on their length, and blocks repeated within a
+ * witness by a minimum length. Instances of the remaining blocks can be restricted to the occurrences in preceding
+ * witnesses nearest to their own relative position.
+ */
+public class BlockPruning {
+
+    public static final BlockPruning NONE = new BlockPruning(length -> Integer.MAX_VALUE, 0, Integer.MAX_VALUE);
+
+    private final IntUnaryOperator maximumFrequency;
+    private final int minimumRepeatedLength;
+    private final int nearestOccurrences;
+
+    /**
+     * @param maximumFrequency      the maximum number of occurrences of a block, given its length
+     * @param minimumRepeatedLength the minimum length of blocks occurring more than once in a witness
+     * @param nearestOccurrences    the maximum number of occurrences in preceding witnesses paired with each instance
+     */
+    public BlockPruning(IntUnaryOperator maximumFrequency, int minimumRepeatedLength, int nearestOccurrences) {
+        if (nearestOccurrences < 1) {
+            throw new IllegalArgumentException(Integer.toString(nearestOccurrences));
+        }
+        this.maximumFrequency = maximumFrequency;
+        this.minimumRepeatedLength = minimumRepeatedLength;
+        this.nearestOccurrences = nearestOccurrences;
+    }
+
+    public BlockPruning withMaximumFrequency(IntUnaryOperator maximumFrequency) {
+        return new BlockPruning(maximumFrequency, minimumRepeatedLength, nearestOccurrences);
+    }
+
+    public BlockPruning withMinimumRepeatedLength(int minimumRepeatedLength) {
+        return new BlockPruning(maximumFrequency, minimumRepeatedLength, nearestOccurrences);
+    }
+
+    public BlockPruning withNearestOccurrences(int nearestOccurrences) {
+        return new BlockPruning(maximumFrequency, minimumRepeatedLength, nearestOccurrences);
+    }
+
+    public int getMaximumFrequency(int length) {
+        return maximumFrequency.applyAsInt(length);
+    }
+
+    public int getMinimumRepeatedLength() {
+        return minimumRepeatedLength;
+    }
+
+    public int getNearestOccurrences() {
+        return nearestOccurrences;
+    }
+
+    /**
+     * @return whether a block with the given statistics is dropped
+     */
+    public boolean prunes(int length, int frequency, int depth) {
+        return frequency > getMaximumFrequency(length) || (frequency > depth && length < minimumRepeatedLength);
+    }
+}
@@ -0,0 +1,297 @@
+package eu.interedition.collatex.dekker.token_index;
+
+import eu.interedition.collatex.Token;
+import eu.interedition.collatex.Witness;
+import eu.interedition.collatex.simple.SimpleToken;
+import eu.interedition.collatex.suffixarray.Algorithm;
+import eu.interedition.collatex.suffixarray.KeyedComparator;
+import eu.interedition.collatex.suffixarray.LCPAlgorithm;
+import eu.interedition.collatex.suffixarray.SuffixArrays;
+import eu.interedition.collatex.suffixarray.SuffixData;
+import eu.interedition.collatex.util.StreamUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Suffix and LCP array over all witnesses of a corpus, built once and shared by the {@link TokenIndex token indexes}
+ * of collations of any subset of them.
+ * <p>
+ * A subset's suffix array is the corpus' suffix array filtered by witness, its LCP array the minimum of the corpus'
+ * LCP values between the suffixes kept. Witnesses are identified by their sigil; as their tokens are not stored, the
+ * witnesses of a subset must consist of the same tokens, compared as by the comparator the corpus index was built with.
+ * This is checked via a fingerprint of each witness' token keys: the keys of a {@link KeyedComparator}, otherwise the
+ * normalized content of {@link SimpleToken simple tokens} or the string representation of other tokens. Fingerprints
+ * of indexes read from files only match if the keys' hash codes are stable across processes, as those of strings are.
+ * Tokens are ordered as in the corpus, so the arrays may differ from those built for the subset, but yield the same
+ * blocks.
+ * <p>
+ * An index can be written to a file and memory-mapped from it, so that a long-running process loads it without
+ * reading it into the heap.
+ *
+ * @see TokenIndex#setCorpusIndex(CorpusTokenIndex)
+ */
+public class CorpusTokenIndex {
+
+    private static final int MAGIC = 0x43585449; // "CXTI"
+    private static final int VERSION = 2;
+
+    private final String[] sigla;
+    private final Map<String, Integer> witnessNumbers;
+    // positions of the end markers
+    private final int[] witnessEnds;
+    // fingerprints of the witnesses' token keys
+    private final long[] fingerprints;
+    private final IntBuffer suffix_array;
+    private final IntBuffer LCP_array;
+
+    public CorpusTokenIndex(Comparator<Token> comparator, List<? extends Iterable<Token>> witnesses) {
+        this(comparator, witnesses, Algorithm.AUTO);
+    }
+
+    public CorpusTokenIndex(Comparator<Token> comparator, List<? extends Iterable<Token>> witnesses, Algorithm suffixArrayAlgorithm) {
+        final Comparator<Token> markerComparator = TokenIndex.markerComparator(comparator);
+        final List<Token> tokens = new ArrayList<>();
+        this.sigla = new String[witnesses.size()];
+        this.witnessEnds = new int[witnesses.size()];
+        this.fingerprints = new long[witnesses.size()];
+        for (int wc = 0; wc < sigla.length; wc++) {
+            final Iterable<Token> witnessTokens = witnesses.get(wc);
+            final Witness witness = StreamUtil.stream(witnessTokens)
+                    .findFirst()
+                    .map(Token::getWitness)
+                    .orElseThrow(() -> new IllegalArgumentException("Empty witness"));
+            sigla[wc] = witness.getSigil();
+            witnessTokens.forEach(tokens::add);
+            witnessEnds[wc] = tokens.size();
+            fingerprints[wc] = fingerprint(markerComparator, tokens, witnessStart(witnessEnds, wc), witnessEnds[wc]);
+            tokens.add(new TokenIndex.MarkerToken(wc + 1));
+        }
+        this.witnessNumbers = witnessNumbers(sigla);
+
+        final SuffixData suffixData = SuffixArrays.createWithLCP(tokens.toArray(new Token[tokens.size()]),
+                suffixArrayAlgorithm.getDecoratedInstance(), markerComparator, LCPAlgorithm.PHI);
+        this.suffix_array = IntBuffer.wrap(suffixData.getSuffixArray());
+        this.LCP_array = IntBuffer.wrap(suffixData.getLCP());
+    }
+
+    private CorpusTokenIndex(String[] sigla, int[] witnessEnds, long[] fingerprints, IntBuffer suffix_array, IntBuffer LCP_array) {
+        this.sigla = sigla;
+        this.witnessNumbers = witnessNumbers(sigla);
+        this.witnessEnds = witnessEnds;
+        this.fingerprints = fingerprints;
+        this.suffix_array = suffix_array;
+        this.LCP_array = LCP_array;
+    }
+
+    private static Map<String, Integer> witnessNumbers(String[] sigla) {
+        final Map<String, Integer> witnessNumbers = new HashMap<>();
+        for (int wc = 0; wc < sigla.length; wc++) {
+            if (witnessNumbers.put(sigla[wc], wc) != null) {
+                throw new IllegalArgumentException("Duplicate sigil: " + sigla[wc]);
+            }
+        }
+        return witnessNumbers;
+    }
+
+    /**
+     * @param comparator a comparator aware of {@link TokenIndex.MarkerToken marker tokens}
+     */
+    private static long fingerprint(Comparator<Token> comparator, List<Token> tokens, int from, int to) {
+        // FNV-1a over the keys' hash codes
+        long fingerprint = 0xcbf29ce484222325L;
+        for (int t = from; t < to; t++) {
+            final Token token = tokens.get(t);
+            final Object key = (comparator instanceof KeyedComparator
+                    ? ((KeyedComparator<Token>) comparator).keyOf(token)
+                    : (token instanceof SimpleToken ? ((SimpleToken) token).getNormalized() : token.toString()));
+            fingerprint = (fingerprint ^ Objects.hashCode(key)) * 0x100000001b3L;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @return the sigla of the corpus' witnesses, in the order they were indexed
+     */
+    public List<String> getSigla() {
+        return Collections.unmodifiableList(Arrays.asList(sigla));
+    }
+
+    public int size() {
+        return suffix_array.limit();
+    }
+
+    /**
+     * Derives the suffix and LCP array of a token index from the corpus, for the witnesses of its token array.
+     */
+    void select(TokenIndex index) {
+        // selected corpus witnesses, and the offset of their tokens and end markers in the token index
+        final boolean[] selected = new boolean[witnessEnds.length];
+        final int[] offset = new int[witnessEnds.length];
+        for (Map.Entry<Witness, Integer> start : index.witnessToStartToken.entrySet()) {
+            final Witness witness = start.getKey();
+            final Integer corpusWitness = witnessNumbers.get(witness.getSigil());
+            if (corpusWitness == null) {
+                throw new IllegalArgumentException("Witness not in corpus: " + witness);
+            }
+            final int end = index.witnessToEndToken.get(witness);
+            final long fingerprint = fingerprint(index.comparator, Arrays.asList(index.token_array), start.getValue(), end);
+            if (end - start.getValue() != witnessEnds[corpusWitness] - witnessStart(witnessEnds, corpusWitness)
+                    || fingerprint != fingerprints[corpusWitness]) {
+                throw new IllegalArgumentException("Witness differs from corpus: " + witness);
+            }
+            selected[corpusWitness] = true;
+            offset[corpusWitness] = start.getValue() - witnessStart(witnessEnds, corpusWitness);
+        }
+
+        final int n = index.token_array.length;
+        final int[] sa = new int[n];
+        final int[] lcp = new int[n];
+        int idx = 0;
+        int minLCP = Integer.MAX_VALUE;
+        for (int i = 0; i < suffix_array.limit(); i++) {
+            final int suffix = suffix_array.get(i);
+            minLCP = Math.min(minLCP, LCP_array.get(i));
+            final int witness = Arrays.binarySearch(witnessEnds, suffix);
+            // end markers are kept with the tokens of their witness
+            final int corpusWitness = (witness < 0 ? -witness - 1 : witness);
+            if (selected[corpusWitness]) {
+                sa[idx] = suffix + offset[corpusWitness];
+                lcp[idx] = minLCP;
+                idx++;
+                minLCP = Integer.MAX_VALUE;
+            }
+        }
+
+        index.suffix_array = sa;
+        index.LCP_array = lcp;
+    }
+
+    private static int witnessStart(int[] witnessEnds, int witness) {
+        return (witness == 0 ? 0 : witnessEnds[witness - 1] + 1);
+    }
+
+    /**
+     * Writes the index to a file, which can be {@link #open(Path) mapped} subsequently.
+     */
+    public void write(Path path) throws IOException {
+        final byte[][] encodedSigla = new byte[sigla.length][];
+        int siglaLength = 0;
+        for (int wc = 0; wc < sigla.length; wc++) {
+            encodedSigla[wc] = sigla[wc].getBytes(StandardCharsets.UTF_8);
+            siglaLength += 4 + (encodedSigla[wc].length + 3) / 4 * 4;
+        }
+        final ByteBuffer header = ByteBuffer.allocate(16 + 12 * witnessEnds.length + siglaLength);
+        header.putInt(MAGIC).putInt(VERSION).putInt(witnessEnds.length).putInt(size());
+        for (int end : witnessEnds) {
+            header.putInt(end);
+        }
+        for (long fingerprint : fingerprints) {
+            header.putLong(fingerprint);
+        }
+        for (byte[] sigil : encodedSigla) {
+            header.putInt(sigil.length).put(sigil);
+            // pad to int boundaries
+            header.position(header.position() + (4 - sigil.length % 4) % 4);
+        }
+        header.flip();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            for (IntBuffer array : new IntBuffer[] { suffix_array, LCP_array }) {
+                for (int i = 0; i < array.limit(); i++) {
+                    if (!buffer.hasRemaining()) {
+                        write(channel, buffer);
+                    }
+                    buffer.putInt(array.get(i));
+                }
+            }
+            write(channel, buffer);
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Maps an index {@link #write(Path) written} to a file into memory. The mapping stays valid after the file is
+     * closed; the file must not be modified while it is in use.
+     *
+     * @throws IOException if the file cannot be read or does not contain a valid index
+     */
+    public static CorpusTokenIndex open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a corpus token index: " + path);
+            }
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 16 || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a corpus token index: " + path);
+            }
+            final int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported corpus token index version " + version + ": " + path);
+            }
+            final int witnessCount = buffer.getInt();
+            final int length = buffer.getInt();
+            if (witnessCount < 0 || length < 0 || 12L * witnessCount > buffer.remaining()) {
+                throw new IOException("Corrupt corpus token index: " + path);
+            }
+
+            final int[] witnessEnds = new int[witnessCount];
+            buffer.asIntBuffer().get(witnessEnds);
+            buffer.position(buffer.position() + 4 * witnessCount);
+            for (int wc = 0; wc < witnessCount; wc++) {
+                // end markers are ascending, the last one ends the index
+                if (witnessEnds[wc] < witnessStart(witnessEnds, wc) || witnessEnds[wc] >= length
+                        || (wc == witnessCount - 1 && witnessEnds[wc] != length - 1)) {
+                    throw new IOException("Corrupt corpus token index: " + path);
+                }
+            }
+            if (witnessCount == 0 && length != 0) {
+                throw new IOException("Corrupt corpus token index: " + path);
+            }
+            final long[] fingerprints = new long[witnessCount];
+            buffer.asLongBuffer().get(fingerprints);
+            buffer.position(buffer.position() + 8 * witnessCount);
+            final String[] sigla = new String[witnessCount];
+            for (int wc = 0; wc < witnessCount; wc++) {
+                final int sigilLength = (buffer.remaining() < 4 ? -1 : buffer.getInt());
+                if (sigilLength < 0 || sigilLength > buffer.remaining()) {
+                    throw new IOException("Corrupt corpus token index: " + path);
+                }
+                final byte[] sigil = new byte[sigilLength];
+                buffer.get(sigil);
+                buffer.position(Math.min(buffer.limit(), buffer.position() + (4 - sigil.length % 4) % 4));
+                sigla[wc] = new String(sigil, StandardCharsets.UTF_8);
+            }
+            if (buffer.remaining() != 8L * length) {
+                throw new IOException("Truncated corpus token index: " + path);
+            }
+            final IntBuffer arrays = buffer.slice().asIntBuffer();
+            arrays.limit(length);
+            final IntBuffer suffix_array = arrays.slice();
+            arrays.limit(2 * length).position(length);
+            final IntBuffer LCP_array = arrays.slice();
+            try {
+                return new CorpusTokenIndex(sigla, witnessEnds, fingerprints, suffix_array, LCP_array);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt corpus token index: " + path, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,490 @@
+package eu.interedition.collatex.dekker.token_index;
+
+import eu.interedition.collatex.Token;
+import eu.interedition.collatex.Witness;
+import eu.interedition.collatex.suffixarray.KeyedComparator;
+import eu.interedition.collatex.util.StreamUtil;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A token index to which witnesses are added one at a time, for progressive alignment.
+ * <p>
+ * Tokens are mapped to non-negative symbols, each witness being terminated by a unique negative one. The symbols of
+ * all witnesses are indexed by a generalized suffix tree, which is extended online (Ukkonen) as witnesses are added.
+ * The tree's inner nodes correspond to the LCP intervals a {@link TokenIndex} extracts as blocks: the leaves below a
+ * node are the suffixes sharing the node's path as their prefix. Adding a witness takes time linear in its length;
+ * its blocks are the nodes on the paths from its leaves to the root that also have leaves of preceding witnesses.
+ * These are found by walking up from the witness' leaves and enumerating the leaves below, i.e. in time proportional
+ * to the resulting block instances.
+ * <p>
+ * After each {@link #add(Iterable)}, the blocks and block instances describe the blocks of the added witness. The
+ * occurrences of each block occupy a contiguous range of the positions read via {@link #getSuffix(int)}, in tree order
+ * instead of lexicographic order; there is no LCP array. Phrases are therefore searched via
+ * {@link TokenIndex#search(Iterable)} only.
+ */
+public class IncrementalTokenIndex implements BlockIndex {
+
+    private static final int ROOT = 0;
+    private static final int OPEN = Integer.MAX_VALUE;
+
+    private final Map<Object, Integer> keySymbols;
+    private final KeyedComparator<Token> keys;
+    private BlockPruning blockPruning = BlockPruning.NONE;
+
+    private final Map<Witness, Integer> witnessToStartToken = new HashMap<>();
+    // positions of the end markers
+    private int witnessCount;
+    private int[] witnessEnds = new int[16];
+
+    private int length;
+    private int[] text = new int[1024];
+    private Token[] tokens = new Token[1024];
+    // leaf of the suffix starting at each position
+    private int[] leaves = new int[1024];
+
+    // suffix tree nodes: incoming edge, parent, string depth (of inner nodes), children and suffix (of leaves)
+    private int nodeCount;
+    private int[] edgeStart = new int[2048];
+    private int[] edgeEnd = new int[2048];
+    private int[] link = new int[2048];
+    private int[] parent = new int[2048];
+    private int[] depth = new int[2048];
+    private int[] firstChild = new int[2048];
+    private int[] nextSibling = new int[2048];
+    private int[] previousSibling = new int[2048];
+    private int[] suffix = new int[2048];
+    private final ChildMap children = new ChildMap();
+
+    // active point
+    private int activeNode = ROOT;
+    private int activeEdge;
+    private int activeLength;
+    private int remainder;
+
+    // blocks of the last added witness: intervals of the occurrences, with their length and number of witnesses
+    private int blockCount;
+    private int[] blockStart = new int[16];
+    private int[] blockEnd = new int[16];
+    private int[] blockLength = new int[16];
+    private int[] blockDepth = new int[16];
+    // token position and witness number of each occurrence
+    private int[] occurrences = new int[16];
+    private int[] documents = new int[16];
+    private BlockInstances blockInstances;
+
+    // marks of visited nodes and witnesses while collecting blocks
+    private int[] visited = new int[0];
+    private int[] witnessSeen = new int[0];
+    private int generation;
+    private int witnessGeneration;
+
+    @SuppressWarnings("unchecked")
+    public IncrementalTokenIndex(Comparator<Token> comparator) {
+        if (comparator instanceof KeyedComparator) {
+            this.keys = (KeyedComparator<Token>) comparator;
+            this.keySymbols = new HashMap<>();
+        } else {
+            this.keys = null;
+            this.keySymbols = new TreeMap<>((a, b) -> comparator.compare((Token) a, (Token) b));
+        }
+        node(0, 0, -1, -1);
+    }
+
+    /**
+     * Limits the block instances and their pairings of subsequently added witnesses; defaults to
+     * {@link BlockPruning#NONE}.
+     */
+    public void setBlockPruning(BlockPruning blockPruning) {
+        this.blockPruning = blockPruning;
+    }
+
+    /**
+     * Adds a witness, extending the index, and determines its blocks shared with preceding witnesses.
+     *
+     * @return the position of the witness' first token in the token array
+     */
+    public int add(Iterable<Token> witnessTokens) {
+        final Witness witness = StreamUtil.stream(witnessTokens)
+                .findFirst()
+                .map(Token::getWitness)
+                .orElseThrow(() -> new IllegalArgumentException("Empty witness"));
+
+        final int start = length;
+        witnessToStartToken.put(witness, start);
+        for (Token token : witnessTokens) {
+            append(symbol(token), token);
+        }
+        if (witnessCount == witnessEnds.length) {
+            witnessEnds = Arrays.copyOf(witnessEnds, witnessCount * 2);
+        }
+        witnessEnds[witnessCount++] = length;
+        append(-witnessCount, new TokenIndex.MarkerToken(witnessCount));
+
+        collectBlocks(start, length - 1);
+        return start;
+    }
+
+    @Override
+    public int size() {
+        return length;
+    }
+
+    @Override
+    public int getStartTokenPositionForWitness(Witness witness) {
+        return witnessToStartToken.get(witness);
+    }
+
+    @Override
+    public Token getToken(int position) {
+        return tokens[position];
+    }
+
+    /**
+     * @return the token position of the occurrence at the given index
+     */
+    @Override
+    public int getSuffix(int index) {
+        return occurrences[index];
+    }
+
+    @Override
+    public int getBlockStart(int block) {
+        return blockStart[block];
+    }
+
+    @Override
+    public int getBlockEnd(int block) {
+        return blockEnd[block];
+    }
+
+    @Override
+    public int getBlockLength(int block) {
+        return blockLength[block];
+    }
+
+    @Override
+    public int getBlockDepth(int block) {
+        return blockDepth[block];
+    }
+
+    @Override
+    public int getFirstBlockInstanceForWitness(Witness witness) {
+        return blockInstances.first(witnessNumber(witness));
+    }
+
+    @Override
+    public int getEndBlockInstanceForWitness(Witness witness) {
+        return blockInstances.end(witnessNumber(witness));
+    }
+
+    @Override
+    public int getBlockInstanceBlock(int instance) {
+        return blockInstances.block[instance];
+    }
+
+    @Override
+    public int getBlockInstanceToken(int instance) {
+        return blockInstances.token[instance];
+    }
+
+    @Override
+    public int[] getPrecedingOccurrences(int instance) {
+        final int block = blockInstances.block[instance];
+        final int witnessStart = witnessStart(witnessOf(blockInstances.token[instance]));
+        final int[] suffixes = Arrays.copyOfRange(occurrences, blockStart[block], blockEnd[block] + 1);
+        return blockInstances.precedingOccurrences(instance, blockLength[block], suffixes, witnessStart,
+                sc -> suffixes[sc] - witnessStart(documents[blockStart[block] + sc]));
+    }
+
+    /**
+     * @return the number of blocks of the last added witness dropped by {@link BlockPruning}
+     */
+    public int getSuppressedBlocks() {
+        return blockInstances.suppressedBlocks;
+    }
+
+    /**
+     * @return the number of token matches of the last added witness not generated due to {@link BlockPruning}
+     */
+    public long getSuppressedMatches() {
+        return blockInstances.suppressedMatches;
+    }
+
+    private int witnessNumber(Witness witness) {
+        return witnessOf(witnessToStartToken.get(witness));
+    }
+
+    private int witnessOf(int position) {
+        return -Arrays.binarySearch(witnessEnds, 0, witnessCount, position) - 1;
+    }
+
+    private int witnessStart(int witness) {
+        return (witness == 0 ? 0 : witnessEnds[witness - 1] + 1);
+    }
+
+    private int symbol(Token token) {
+        final Object key = (keys == null ? token : keys.keyOf(token));
+        return keySymbols.computeIfAbsent(key, k -> keySymbols.size());
+    }
+
+    private void append(int symbol, Token token) {
+        if (length == text.length) {
+            text = Arrays.copyOf(text, length * 2);
+            tokens = Arrays.copyOf(tokens, length * 2);
+            leaves = Arrays.copyOf(leaves, length * 2);
+        }
+        text[length] = symbol;
+        tokens[length] = token;
+        extend(length++);
+    }
+
+    private void extend(int position) {
+        int needsLink = ROOT;
+        remainder++;
+        while (remainder > 0) {
+            if (activeLength == 0) {
+                activeEdge = position;
+            }
+            final int next = children.get(activeNode, text[activeEdge]);
+            if (next < 0) {
+                leaf(position, activeNode);
+                needsLink = link(needsLink, activeNode);
+            } else {
+                final int edgeLength = Math.min(edgeEnd[next], position + 1) - edgeStart[next];
+                if (activeLength >= edgeLength) {
+                    // walk down
+                    activeEdge += edgeLength;
+                    activeLength -= edgeLength;
+                    activeNode = next;
+                    continue;
+                }
+                if (text[edgeStart[next] + activeLength] == text[position]) {
+                    activeLength++;
+                    link(needsLink, activeNode);
+                    break;
+                }
+                final int split = node(edgeStart[next], edgeStart[next] + activeLength, activeNode, -1);
+                depth[split] = depth[activeNode] + activeLength;
+                replaceChild(activeNode, next, split);
+                edgeStart[next] += activeLength;
+                addChild(split, next);
+                leaf(position, split);
+                needsLink = link(needsLink, split);
+            }
+            remainder--;
+            if (activeNode == ROOT && activeLength > 0) {
+                activeLength--;
+                activeEdge = position - remainder + 1;
+            } else {
+                activeNode = link[activeNode];
+            }
+        }
+    }
+
+    private int link(int needsLink, int node) {
+        if (needsLink != ROOT) {
+            link[needsLink] = node;
+        }
+        return node;
+    }
+
+    private void leaf(int position, int parentNode) {
+        final int start = position - remainder + 1;
+        leaves[start] = node(position, OPEN, parentNode, start);
+        addChild(parentNode, leaves[start]);
+    }
+
+    private int node(int start, int end, int parentNode, int suffixStart) {
+        if (nodeCount == edgeStart.length) {
+            final int capacity = nodeCount * 2;
+            edgeStart = Arrays.copyOf(edgeStart, capacity);
+            edgeEnd = Arrays.copyOf(edgeEnd, capacity);
+            link = Arrays.copyOf(link, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            depth = Arrays.copyOf(depth, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            previousSibling = Arrays.copyOf(previousSibling, capacity);
+            suffix = Arrays.copyOf(suffix, capacity);
+        }
+        final int node = nodeCount++;
+        edgeStart[node] = start;
+        edgeEnd[node] = end;
+        link[node] = ROOT;
+        parent[node] = parentNode;
+        depth[node] = 0;
+        firstChild[node] = -1;
+        nextSibling[node] = -1;
+        previousSibling[node] = -1;
+        suffix[node] = suffixStart;
+        return node;
+    }
+
+    private void addChild(int parentNode, int child) {
+        parent[child] = parentNode;
+        previousSibling[child] = -1;
+        nextSibling[child] = firstChild[parentNode];
+        if (firstChild[parentNode] >= 0) {
+            previousSibling[firstChild[parentNode]] = child;
+        }
+        firstChild[parentNode] = child;
+        children.put(parentNode, text[edgeStart[child]], child);
+    }
+
+    private void replaceChild(int parentNode, int child, int replacement) {
+        previousSibling[replacement] = previousSibling[child];
+        nextSibling[replacement] = nextSibling[child];
+        if (previousSibling[child] >= 0) {
+            nextSibling[previousSibling[child]] = replacement;
+        } else {
+            firstChild[parentNode] = replacement;
+        }
+        if (nextSibling[child] >= 0) {
+            previousSibling[nextSibling[child]] = replacement;
+        }
+        children.put(parentNode, text[edgeStart[replacement]], replacement);
+    }
+
+    /**
+     * Fills the block arrays with the inner nodes above the leaves of the given positions that have leaves of
+     * preceding witnesses.
+     */
+    private void collectBlocks(int from, int to) {
+        if (visited.length < nodeCount) {
+            visited = Arrays.copyOf(visited, nodeCount * 2);
+        }
+        if (witnessSeen.length < witnessCount) {
+            witnessSeen = Arrays.copyOf(witnessSeen, witnessCount * 2);
+        }
+        blockCount = 0;
+
+        int count = 0;
+        generation++;
+        for (int position = from; position < to; position++) {
+            for (int node = parent[leaves[position]]; node != ROOT && visited[node] != generation; node = parent[node]) {
+                visited[node] = generation;
+
+                // enumerate the leaves below
+                final int first = count;
+                boolean preceding = false;
+                int witnesses = 0;
+                final int witnessMark = ++witnessGeneration;
+                int current = node;
+                while (true) {
+                    while (firstChild[current] >= 0) {
+                        current = firstChild[current];
+                    }
+                    if (count == occurrences.length) {
+                        occurrences = Arrays.copyOf(occurrences, count * 2);
+                        documents = Arrays.copyOf(documents, count * 2);
+                    }
+                    final int leafSuffix = suffix[current];
+                    final int witness = witnessOf(leafSuffix);
+                    occurrences[count] = leafSuffix;
+                    documents[count++] = witness;
+                    preceding |= (leafSuffix < from);
+                    if (witnessSeen[witness] != witnessMark) {
+                        witnessSeen[witness] = witnessMark;
+                        witnesses++;
+                    }
+                    while (current != node && nextSibling[current] < 0) {
+                        current = parent[current];
+                    }
+                    if (current == node) {
+                        break;
+                    }
+                    current = nextSibling[current];
+                }
+                if (preceding) {
+                    addBlock(first, count - 1, depth[node], witnesses);
+                } else {
+                    count = first;
+                }
+            }
+        }
+        blockInstances = new BlockInstances(blockPruning, witnessCount, blockCount, blockStart, blockEnd, blockLength, blockDepth, occurrences, documents);
+    }
+
+    private void addBlock(int start, int end, int length, int depth) {
+        if (blockCount == blockStart.length) {
+            blockStart = Arrays.copyOf(blockStart, blockCount * 2);
+            blockEnd = Arrays.copyOf(blockEnd, blockCount * 2);
+            blockLength = Arrays.copyOf(blockLength, blockCount * 2);
+            blockDepth = Arrays.copyOf(blockDepth, blockCount * 2);
+        }
+        blockStart[blockCount] = start;
+        blockEnd[blockCount] = end;
+        blockLength[blockCount] = length;
+        blockDepth[blockCount] = depth;
+        blockCount++;
+    }
+
+    /**
+     * Maps pairs of a node and a symbol to the child node whose edge starts with the symbol.
+     */
+    private static class ChildMap {
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        private long[] keys = new long[4096];
+        private int[] values = new int[4096];
+        private int size;
+
+        ChildMap() {
+            Arrays.fill(keys, EMPTY);
+        }
+
+        int get(int node, int symbol) {
+            final long key = key(node, symbol);
+            for (int slot = slot(key, keys.length); ; slot = (slot + 1) & (keys.length - 1)) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                } else if (keys[slot] == EMPTY) {
+                    return -1;
+                }
+            }
+        }
+
+        void put(int node, int symbol, int child) {
+            if (2 * (size + 1) > keys.length) {
+                final long[] oldKeys = keys;
+                final int[] oldValues = values;
+                keys = new long[oldKeys.length * 2];
+                values = new int[oldKeys.length * 2];
+                Arrays.fill(keys, EMPTY);
+                size = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != EMPTY) {
+                        put(oldKeys[i], oldValues[i]);
+                    }
+                }
+            }
+            put(key(node, symbol), child);
+        }
+
+        private void put(long key, int value) {
+            int slot = slot(key, keys.length);
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & (keys.length - 1);
+            }
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                size++;
+            }
+            values[slot] = value;
+        }
+
+        private static long key(int node, int symbol) {
+            return ((long) node << 32) | (symbol & 0xffffffffL);
+        }
+
+        private static int slot(long key, int capacity) {
+            final long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash >>> 32) & (capacity - 1);
+        }
+    }
+}
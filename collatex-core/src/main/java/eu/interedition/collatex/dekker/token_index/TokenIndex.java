@@ -2,7 +2,13 @@ package eu.interedition.collatex.dekker.token_index;
 
 import eu.interedition.collatex.Token;
 import eu.interedition.collatex.Witness;
-import eu.interedition.collatex.suffixarray.SAIS;
+import eu.interedition.collatex.simple.SimpleWitness;
+import eu.interedition.collatex.suffixarray.Algorithm;
+import eu.interedition.collatex.suffixarray.CompressedSuffixArray;
+import eu.interedition.collatex.suffixarray.KeyedComparator;
+import eu.interedition.collatex.suffixarray.LCPAlgorithm;
+import eu.interedition.collatex.suffixarray.PackedIntArray;
+import eu.interedition.collatex.suffixarray.PackedLCPArray;
 import eu.interedition.collatex.suffixarray.SuffixArrays;
 import eu.interedition.collatex.suffixarray.SuffixData;
 import eu.interedition.collatex.util.StreamUtil;
@@ -12,18 +18,46 @@ import java.util.*;
 /**
  * Created by ronald on 4/20/15.
  */
-public class TokenIndex {
+public class TokenIndex implements BlockIndex {
     private final List<? extends Iterable<Token>> witnesses;
-    private final Comparator<Token> comparator;
+    final Comparator<Token> comparator;
     //TODO: not sure this functionality should be in this class or in a separate class
-    private Map<Witness, Integer> witnessToStartToken;
-    private Map<Witness, Integer> witnessToEndToken;
+    Map<Witness, Integer> witnessToStartToken;
+    Map<Witness, Integer> witnessToEndToken;
+    // positions of the end markers
+    int[] witnessEnds;
     public Token[] token_array;
     //END witness data
     public int[] suffix_array;
     public int[] LCP_array;
+    // witness number of each suffix in the suffix array; -1 for end markers
+    public int[] document_array;
     public List<Block> blocks;
-    private Map<Witness, List<Block.Instance>> witnessToBlockInstances;
+    // blocks: intervals in the suffix array, with the length of the shared prefix and the number of witnesses
+    public int block_count;
+    public int[] block_start;
+    public int[] block_end;
+    public int[] block_length;
+    public int[] block_depth;
+    // block instances: block and token position of each, grouped by witness
+    private BlockInstances blockInstances;
+    public int[] block_instance_block;
+    public int[] block_instance_token;
+    private Algorithm suffixArrayAlgorithm = Algorithm.AUTO;
+    private LCPAlgorithm lcpAlgorithm = LCPAlgorithm.PHI;
+    BlockPruning blockPruning = BlockPruning.NONE;
+    private CorpusTokenIndex corpusIndex;
+    // compact representation of the token, suffix, LCP and document arrays
+    private boolean compact;
+    private CompressedSuffixArray compressedSuffixArray;
+    private PackedLCPArray packedLCPArray;
+    private PackedIntArray packedDocumentArray;
+    // random-access lists of the witnesses' tokens, replacing the token array
+    private List<List<Token>> witnessTokens;
+    // for phrase searches: rank of the token at each position in the order of the suffix array, and ranks by token
+    private PackedIntArray tokenRanks;
+    private Map<Object, Integer> ranksByToken;
+    private Witness[] witnessesByNumber;
 
 
     public TokenIndex(Comparator<Token> comparator, Iterable<Token>... witness) {
@@ -32,9 +66,58 @@ public class TokenIndex {
 
     public TokenIndex(Comparator<Token> comparator, List<? extends Iterable<Token>> witnesses) {
         this.witnesses = witnesses;
-        this.comparator = new MarkerTokenComparator(comparator);
+        this.comparator = markerComparator(comparator);
     }
 
+    static Comparator<Token> markerComparator(Comparator<Token> comparator) {
+        return (comparator instanceof KeyedComparator
+                ? new KeyedMarkerTokenComparator((KeyedComparator<Token>) comparator)
+                : new MarkerTokenComparator(comparator));
+    }
+
+    /**
+     * Selects the algorithm building the suffix array in {@link #prepare()}; defaults to {@link Algorithm#AUTO}.
+     */
+    public void setSuffixArrayAlgorithm(Algorithm suffixArrayAlgorithm) {
+        this.suffixArrayAlgorithm = suffixArrayAlgorithm;
+    }
+
+    /**
+     * Selects the algorithm computing the LCP array in {@link #prepare()}; defaults to {@link LCPAlgorithm#PHI}.
+     */
+    public void setLCPAlgorithm(LCPAlgorithm lcpAlgorithm) {
+        this.lcpAlgorithm = lcpAlgorithm;
+    }
+
+    /**
+     * Limits the block instances and their pairings; defaults to {@link BlockPruning#NONE}.
+     */
+    public void setBlockPruning(BlockPruning blockPruning) {
+        this.blockPruning = blockPruning;
+    }
+
+    /**
+     * Derives the suffix and LCP array in {@link #prepare()} from an index of a corpus containing all witnesses,
+     * instead of building them.
+     */
+    public void setCorpusIndex(CorpusTokenIndex corpusIndex) {
+        this.corpusIndex = corpusIndex;
+    }
+
+    /**
+     * Keeps the index in a compact representation after {@link #prepare()}: the suffix array is compressed, the LCP and
+     * document arrays are bit-packed, and tokens are looked up in the witnesses instead of a token array. The arrays
+     * are then <code>null</code> and read via {@link #getSuffix(int)}, {@link #getLCP(int)} and
+     * {@link #getToken(int)}, which are slower: a suffix is decoded in up to
+     * {@link CompressedSuffixArray#DEFAULT_SAMPLING_RATE} steps, a token is located by a binary search over the
+     * witnesses. Witnesses that are neither lists nor {@link SimpleWitness simple witnesses} are copied into a list
+     * for constant-time access to their tokens.
+     */
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+    }
+
+    @Override
     public int getStartTokenPositionForWitness(Witness witness) {
         return witnessToStartToken.get(witness);
     }
@@ -46,11 +129,85 @@ public class TokenIndex {
     // TODO: we do not have to store witnesses!
     public void prepare() {
         this.token_array = this.prepareTokenArray();
-        SuffixData suffixData = SuffixArrays.createWithLCP(token_array, new SAIS(), comparator);
-        this.suffix_array = suffixData.getSuffixArray();
-        this.LCP_array = suffixData.getLCP();
+        if (corpusIndex != null) {
+            corpusIndex.select(this);
+        } else {
+            SuffixData suffixData = SuffixArrays.createWithLCP(token_array, suffixArrayAlgorithm.getDecoratedInstance(), comparator, lcpAlgorithm);
+            this.suffix_array = suffixData.getSuffixArray();
+            this.LCP_array = suffixData.getLCP();
+        }
         this.blocks = splitLCP_ArrayIntoIntervals();
         constructWitnessToBlockInstancesMap();
+        if (compact) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        this.compressedSuffixArray = new CompressedSuffixArray(suffix_array);
+        this.packedLCPArray = new PackedLCPArray(LCP_array);
+        // witness numbers are stored incremented by one, end markers as zero
+        this.packedDocumentArray = new PackedIntArray(document_array.length, PackedIntArray.bitsFor(witnessEnds.length));
+        for (int i = 0; i < document_array.length; i++) {
+            packedDocumentArray.set(i, document_array[i] + 1);
+        }
+        this.suffix_array = null;
+        this.LCP_array = null;
+        this.document_array = null;
+        this.token_array = null;
+        this.witnessTokens = new ArrayList<>(witnesses.size());
+        for (Iterable<Token> tokens : witnesses) {
+            witnessTokens.add(randomAccess(tokens));
+        }
+    }
+
+    private static List<Token> randomAccess(Iterable<Token> tokens) {
+        if (tokens instanceof List && tokens instanceof RandomAccess) {
+            return (List<Token>) tokens;
+        } else if (tokens instanceof SimpleWitness) {
+            return ((SimpleWitness) tokens).getTokens();
+        }
+        final List<Token> list = new ArrayList<>();
+        tokens.forEach(list::add);
+        return list;
+    }
+
+    /**
+     * @return the position in the token array of the suffix at the given position of the suffix array
+     */
+    @Override
+    public int getSuffix(int index) {
+        return (suffix_array != null ? suffix_array[index] : compressedSuffixArray.get(index));
+    }
+
+    /**
+     * @return the length of the prefix shared by the suffix at the given position of the suffix array and its
+     * predecessor
+     */
+    public int getLCP(int index) {
+        return (LCP_array != null ? LCP_array[index] : packedLCPArray.get(index));
+    }
+
+    /**
+     * @return the witness number of the suffix at the given position of the suffix array; -1 for end markers
+     */
+    int getWitnessNumber(int index) {
+        return (document_array != null ? document_array[index] : packedDocumentArray.get(index) - 1);
+    }
+
+    /**
+     * @return the token at the given position of the token array, which must not be an end marker
+     */
+    @Override
+    public Token getToken(int position) {
+        if (token_array != null) {
+            return token_array[position];
+        }
+        final int witness = Arrays.binarySearch(witnessEnds, position);
+        if (witness >= 0) {
+            throw new IllegalArgumentException("End marker at " + position);
+        }
+        return witnessTokens.get(-witness - 1).get(position - witnessStart(-witness - 1));
     }
 
     private Token[] prepareTokenArray() {
@@ -58,6 +215,7 @@ public class TokenIndex {
         int counter = 0;
         witnessToStartToken = new HashMap<>();
         witnessToEndToken = new HashMap<>();
+        witnessEnds = new int[witnesses.size()];
         for (Iterable<Token> tokens : witnesses) {
             final Witness witness = StreamUtil.stream(tokens)
                     .findFirst()
@@ -70,6 +228,7 @@ public class TokenIndex {
                 counter++;
             }
             witnessToEndToken.put(witness, counter);
+            witnessEnds[witnessToStartToken.size() - 1] = counter;
             tempTokenList.add(new MarkerToken(witnessToStartToken.size()));
             counter++;
         }
@@ -127,55 +286,413 @@ public class TokenIndex {
         }
     }
 
+    static class KeyedMarkerTokenComparator extends MarkerTokenComparator implements KeyedComparator<Token> {
+        private final KeyedComparator<Token> delegate;
+
+        public KeyedMarkerTokenComparator(KeyedComparator<Token> delegate) {
+            super(delegate);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Object keyOf(Token token) {
+            // marker tokens are only equal to themselves
+            return (token instanceof MarkerToken ? token : delegate.keyOf(token));
+        }
+    }
+
+    /**
+     * Scans the LCP array for intervals of suffixes sharing a prefix, i.e. blocks, in a single pass. Next to their
+     * frequency, the depth of the blocks is derived during the scan: every suffix is counted as a duplicate in the
+     * innermost open block also containing the previous suffix of the same witness, and a block's depth is its
+     * frequency minus the duplicates counted in it and its nested blocks.
+     * <p>
+     * Blocks are stored as parallel arrays ordered as they are closed; the returned list is a view of them.
+     */
     protected List<Block> splitLCP_ArrayIntoIntervals() {
-        List<Block> closedIntervals = new ArrayList<>();
+        final int n = LCP_array.length;
+        document_array = new int[n];
+        for (int i = 0; i < n; i++) {
+            final int witness = Arrays.binarySearch(witnessEnds, suffix_array[i]);
+            document_array[i] = (witness < 0 ? -witness - 1 : -1);
+        }
+
+        block_count = 0;
+        block_start = new int[16];
+        block_end = new int[16];
+        block_length = new int[16];
+        block_depth = new int[16];
+
+        // open intervals
+        int top = -1;
+        int[] stackStart = new int[16];
+        int[] stackLength = new int[16];
+        int[] stackDuplicates = new int[16];
+        final int[] previousSuffix = new int[witnessEnds.length];
+        Arrays.fill(previousSuffix, -1);
+
         int previousLCP_value = 0;
-        Stack<Block> openIntervals = new Stack<>();
-        for (int idx = 0; idx < LCP_array.length; idx++) {
+        for (int idx = 0; idx < n; idx++) {
             int lcp_value = LCP_array[idx];
             if (lcp_value > previousLCP_value) {
-                openIntervals.push(new Block(this, idx - 1, lcp_value));
+                if (++top == stackStart.length) {
+                    stackStart = Arrays.copyOf(stackStart, top * 2);
+                    stackLength = Arrays.copyOf(stackLength, top * 2);
+                    stackDuplicates = Arrays.copyOf(stackDuplicates, top * 2);
+                }
+                stackStart[top] = idx - 1;
+                stackLength[top] = lcp_value;
+                stackDuplicates[top] = 0;
                 previousLCP_value = lcp_value;
             } else if (lcp_value < previousLCP_value) {
                 // close open intervals that are larger than current LCP value
-                while (!openIntervals.isEmpty() && openIntervals.peek().length > lcp_value) {
-                    Block a = openIntervals.pop();
-                    closedIntervals.add(new Block(this, a.start, idx - 1, a.length));
+                int closedStart = -1;
+                int duplicates = 0;
+                while (top >= 0 && stackLength[top] > lcp_value) {
+                    closedStart = stackStart[top];
+                    duplicates += stackDuplicates[top];
+                    addBlock(closedStart, idx - 1, stackLength[top], idx - closedStart - duplicates);
+                    top--;
                 }
                 // then: open a new interval starting with filtered intervals
                 if (lcp_value > 0) {
-                    int start = closedIntervals.get(closedIntervals.size() - 1).start;
-                    openIntervals.push(new Block(this, start, lcp_value));
+                    if (++top == stackStart.length) {
+                        stackStart = Arrays.copyOf(stackStart, top * 2);
+                        stackLength = Arrays.copyOf(stackLength, top * 2);
+                        stackDuplicates = Arrays.copyOf(stackDuplicates, top * 2);
+                    }
+                    stackStart[top] = closedStart;
+                    stackLength[top] = lcp_value;
+                    stackDuplicates[top] = duplicates;
+                } else if (top >= 0) {
+                    stackDuplicates[top] += duplicates;
                 }
                 previousLCP_value = lcp_value;
             }
+
+            final int witness = document_array[idx];
+            if (witness >= 0) {
+                final int previous = previousSuffix[witness];
+                if (previous >= 0) {
+                    // innermost open interval containing the previous suffix; starts increase towards the top
+                    int lo = 0, hi = top;
+                    while (lo <= hi) {
+                        final int mid = (lo + hi) >>> 1;
+                        if (stackStart[mid] <= previous) {
+                            lo = mid + 1;
+                        } else {
+                            hi = mid - 1;
+                        }
+                    }
+                    if (hi >= 0) {
+                        stackDuplicates[hi]++;
+                    }
+                }
+                previousSuffix[witness] = idx;
+            }
         }
-        // add all the open intervals to the result
-        for (Block interval : openIntervals) {
-            if (interval.length > 0) {
-                closedIntervals.add(new Block(this, interval.start, LCP_array.length - 1, interval.length));
+        // add all the open intervals to the result, outermost first
+        final int[] depths = new int[top + 1];
+        for (int duplicates = 0, sc = top; sc >= 0; sc--) {
+            duplicates += stackDuplicates[sc];
+            depths[sc] = n - stackStart[sc] - duplicates;
+        }
+        for (int sc = 0; sc <= top; sc++) {
+            if (stackLength[sc] > 0) {
+                addBlock(stackStart[sc], n - 1, stackLength[sc], depths[sc]);
             }
         }
-        return closedIntervals;
+        return blockList();
     }
 
-    private void constructWitnessToBlockInstancesMap() {
-        witnessToBlockInstances = new HashMap<>();
-        for (Block interval : blocks) {
-            for (Block.Instance instance : interval.getAllInstances()) {
-                Witness w = instance.getWitness();
-                List<Block.Instance> instances = witnessToBlockInstances.computeIfAbsent(w, v -> new ArrayList<>());
-                instances.add(instance);
+    private List<Block> blockList() {
+        return new AbstractList<Block>() {
+            @Override
+            public Block get(int index) {
+                if (index < 0 || index >= block_count) {
+                    throw new IndexOutOfBoundsException(Integer.toString(index));
+                }
+                return new Block(TokenIndex.this, index);
+            }
+
+            @Override
+            public int size() {
+                return block_count;
             }
+        };
+    }
+
+    private void addBlock(int start, int end, int length, int depth) {
+        if (block_count == block_start.length) {
+            block_start = Arrays.copyOf(block_start, block_count * 2);
+            block_end = Arrays.copyOf(block_end, block_count * 2);
+            block_length = Arrays.copyOf(block_length, block_count * 2);
+            block_depth = Arrays.copyOf(block_depth, block_count * 2);
         }
+        block_start[block_count] = start;
+        block_end[block_count] = end;
+        block_length[block_count] = length;
+        block_depth[block_count] = depth;
+        block_count++;
+    }
+
+    private void constructWitnessToBlockInstancesMap() {
+        blockInstances = new BlockInstances(blockPruning, witnessEnds.length, block_count, block_start, block_end, block_length, block_depth, suffix_array, document_array);
+        block_instance_block = blockInstances.block;
+        block_instance_token = blockInstances.token;
+    }
+
+    @Override
+    public int getBlockStart(int block) {
+        return block_start[block];
+    }
+
+    @Override
+    public int getBlockEnd(int block) {
+        return block_end[block];
+    }
+
+    @Override
+    public int getBlockLength(int block) {
+        return block_length[block];
+    }
+
+    @Override
+    public int getBlockDepth(int block) {
+        return block_depth[block];
+    }
+
+    @Override
+    public int getBlockInstanceBlock(int instance) {
+        return block_instance_block[instance];
+    }
+
+    @Override
+    public int getBlockInstanceToken(int instance) {
+        return block_instance_token[instance];
+    }
+
+    /**
+     * Pairs a block instance with the occurrences of its block in preceding witnesses. If there are more than
+     * {@link BlockPruning#getNearestOccurrences()}, those nearest to the instance's position relative to the start of
+     * its witness are kept.
+     *
+     * @param instance a block instance, indexing {@link #block_instance_block} and {@link #block_instance_token}
+     * @return the token positions of the occurrences in preceding witnesses, in suffix array order
+     */
+    @Override
+    public int[] getPrecedingOccurrences(int instance) {
+        final int block = block_instance_block[instance];
+        final int witnessStart = witnessStart(-Arrays.binarySearch(witnessEnds, block_instance_token[instance]) - 1);
+        final int[] suffixes = (suffix_array != null
+                ? Arrays.copyOfRange(suffix_array, block_start[block], block_end[block] + 1)
+                : compressedSuffixArray.get(block_start[block], block_end[block] + 1));
+        return blockInstances.precedingOccurrences(instance, block_length[block], suffixes, witnessStart,
+                sc -> suffixes[sc] - witnessStart(getWitnessNumber(block_start[block] + sc)));
+    }
+
+    private int witnessStart(int witness) {
+        return (witness == 0 ? 0 : witnessEnds[witness - 1] + 1);
+    }
+
+    /**
+     * @return the number of blocks dropped by {@link BlockPruning}
+     */
+    public int getSuppressedBlocks() {
+        return blockInstances.suppressedBlocks;
+    }
+
+    /**
+     * @return the number of token matches between witnesses not generated due to {@link BlockPruning}; for dropped
+     * blocks, all matches between the witnesses are counted upon {@link #prepare()}, for occurrences beyond the nearest
+     * ones as they are skipped
+     */
+    public long getSuppressedMatches() {
+        return blockInstances.suppressedMatches;
+    }
+
+    private int witnessNumber(Witness w) {
+        // witnesses start right after the end marker of their predecessor
+        return -Arrays.binarySearch(witnessEnds, witnessToStartToken.get(w)) - 1;
+    }
+
+    /**
+     * @return the first of the witness' block instances in {@link #block_instance_block} and
+     * {@link #block_instance_token}
+     */
+    @Override
+    public int getFirstBlockInstanceForWitness(Witness w) {
+        return blockInstances.first(witnessNumber(w));
+    }
+
+    /**
+     * @return the position after the last of the witness' block instances
+     */
+    @Override
+    public int getEndBlockInstanceForWitness(Witness w) {
+        return blockInstances.end(witnessNumber(w));
     }
 
     //NOTE: An empty list is returned when there are no instances for the specified witness
     public List<Block.Instance> getBlockInstancesForWitness(Witness w) {
-        return witnessToBlockInstances.computeIfAbsent(w, v -> Collections.emptyList());
+        final List<Block.Instance> instances = new ArrayList<>();
+        for (int i = getFirstBlockInstanceForWitness(w), end = getEndBlockInstanceForWitness(w); i < end; i++) {
+            instances.add(new Block.Instance(block_instance_token[i], new Block(this, block_instance_block[i])));
+        }
+        return instances;
     }
 
+    @Override
     public int size() {
-        return token_array.length;
+        return (token_array != null ? token_array.length : witnessEnds.length == 0 ? 0 : witnessEnds[witnessEnds.length - 1] + 1);
+    }
+
+    /**
+     * Finds all occurrences of a phrase by binary search in the suffix array, in O(m log n + occ) for a phrase of m
+     * tokens; comparisons skip the prefix the phrase shares with both bounds of the search interval. Tokens are
+     * compared as by the index' comparator.
+     *
+     * @return the occurrences in the order of the witnesses and of their positions
+     */
+    public List<Occurrence> search(Iterable<Token> phrase) {
+        if (tokenRanks == null) {
+            prepareSearch();
+        }
+        final int[] query = StreamUtil.stream(phrase).mapToInt(token -> ranksByToken.getOrDefault(key(token), -1)).toArray();
+        if (query.length == 0) {
+            throw new IllegalArgumentException("Empty phrase");
+        }
+        for (int rank : query) {
+            if (rank < 0) {
+                return Collections.emptyList();
+            }
+        }
+
+        // first suffix not smaller than the phrase, then first suffix larger than it
+        final int n = size();
+        int lo = 0, hi = n, loMatch = 0, hiMatch = 0;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int suffix = getSuffix(mid);
+            final int match = match(suffix, query, Math.min(loMatch, hiMatch));
+            if (match < query.length && tokenRanks.get(suffix + match) < query[match]) {
+                lo = mid + 1;
+                loMatch = match;
+            } else {
+                hi = mid;
+                hiMatch = match;
+            }
+        }
+        final int first = lo;
+        if (first == n || match(getSuffix(first), query, 0) < query.length) {
+            return Collections.emptyList();
+        }
+        hi = n;
+        loMatch = query.length;
+        hiMatch = 0;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int suffix = getSuffix(mid);
+            final int match = match(suffix, query, Math.min(loMatch, hiMatch));
+            if (match == query.length) {
+                lo = mid + 1;
+                loMatch = match;
+            } else {
+                hi = mid;
+                hiMatch = match;
+            }
+        }
+
+        final int[] positions = (suffix_array != null
+                ? Arrays.copyOfRange(suffix_array, first, lo)
+                : compressedSuffixArray.get(first, lo));
+        Arrays.sort(positions);
+        final List<Occurrence> occurrences = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            final int witness = -Arrays.binarySearch(witnessEnds, position) - 1;
+            occurrences.add(new Occurrence(witnessesByNumber[witness], position - witnessStart(witness)));
+        }
+        return occurrences;
+    }
+
+    /**
+     * @return the length of the prefix a suffix shares with a phrase, known to be at least the given one
+     */
+    private int match(int suffix, int[] query, int from) {
+        // suffixes end with a marker, whose rank differs from any in the phrase
+        int length = from;
+        while (length < query.length && tokenRanks.get(suffix + length) == query[length]) {
+            length++;
+        }
+        return length;
+    }
+
+    private Object key(Token token) {
+        return (comparator instanceof KeyedComparator ? ((KeyedComparator<Token>) comparator).keyOf(token) : token);
+    }
+
+    /**
+     * Ranks tokens by their order in the suffix array, i.e. the order of the symbols it was built from.
+     */
+    private void prepareSearch() {
+        final int n = size();
+        final int[] ranks = new int[n];
+        int rank = -1;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || getLCP(i) < 1) {
+                rank++;
+            }
+            ranks[getSuffix(i)] = rank;
+        }
+
+        this.tokenRanks = new PackedIntArray(n, PackedIntArray.bitsFor(rank));
+        this.ranksByToken = (comparator instanceof KeyedComparator
+                ? new HashMap<>()
+                : new TreeMap<>((a, b) -> comparator.compare((Token) a, (Token) b)));
+        this.witnessesByNumber = new Witness[witnesses.size()];
+        int position = 0;
+        for (int wc = 0; wc < witnessesByNumber.length; wc++) {
+            for (Token token : witnesses.get(wc)) {
+                witnessesByNumber[wc] = token.getWitness();
+                ranksByToken.putIfAbsent(key(token), ranks[position]);
+                tokenRanks.set(position, ranks[position]);
+                position++;
+            }
+            // end marker
+            tokenRanks.set(position, ranks[position]);
+            position++;
+        }
+    }
+
+    /**
+     * An occurrence of a phrase: a witness and the position of the phrase's first token in it.
+     */
+    public static class Occurrence {
+        public final Witness witness;
+        public final int position;
+
+        public Occurrence(Witness witness, int position) {
+            this.witness = witness;
+            this.position = position;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Occurrence)) {
+                return false;
+            }
+            final Occurrence other = (Occurrence) obj;
+            return witness.equals(other.witness) && position == other.position;
+        }
+
+        @Override
+        public int hashCode() {
+            return witness.hashCode() * 31 + position;
+        }
+
+        @Override
+        public String toString() {
+            return witness + ":" + position;
+        }
     }
 }
@@ -21,10 +21,9 @@ package eu.interedition.collatex.matching;
 
 import eu.interedition.collatex.Token;
 import eu.interedition.collatex.simple.SimpleToken;
+import eu.interedition.collatex.suffixarray.KeyedComparator;
 
-import java.util.Comparator;
-
-public class StrictEqualityTokenComparator implements Comparator<Token> {
+public class StrictEqualityTokenComparator implements KeyedComparator<Token> {
 
     @Override
     public int compare(Token base, Token witness) {
@@ -33,4 +32,9 @@ public class StrictEqualityTokenComparator implements Comparator<Token> {
         return baseContent.compareTo(witnessContent);
     }
 
+    @Override
+    public Object keyOf(Token token) {
+        return ((SimpleToken) token).getContent();
+    }
+
 }
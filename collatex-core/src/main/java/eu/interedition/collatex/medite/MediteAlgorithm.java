@@ -48,7 +48,7 @@ public class MediteAlgorithm extends CollationAlgorithm.Base {
 
     @Override
     public void collate(VariantGraph graph, Iterable<Token> witness) {
-        final VariantGraph.Vertex[][] vertices = VariantGraphRanking.of(graph).asArray();
+        final VariantGraph.Vertex[][] vertices = VariantGraphRanking.verticesByRank(graph);
         final Token[] tokens = StreamUtil.stream(witness).toArray(Token[]::new);
 
         final SuffixTree<Token> suffixTree = SuffixTree.build(comparator, tokens);
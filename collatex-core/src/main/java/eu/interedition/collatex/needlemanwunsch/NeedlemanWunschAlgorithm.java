@@ -52,7 +52,7 @@ public class NeedlemanWunschAlgorithm extends CollationAlgorithm.Base {
 
     @Override
     public void collate(VariantGraph against, Iterable<Token> witness) {
-        final VariantGraph.Vertex[][] ranks = VariantGraphRanking.of(against).asArray();
+        final VariantGraph.Vertex[][] ranks = VariantGraphRanking.verticesByRank(against);
         final Token[] tokens = StreamUtil.stream(witness).toArray(Token[]::new);
 
         final Map<Token, VariantGraph.Vertex> alignments = new HashMap<>();
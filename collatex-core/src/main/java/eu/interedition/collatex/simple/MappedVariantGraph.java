@@ -0,0 +1,611 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.simple;
+
+import eu.interedition.collatex.FrozenVariantGraph;
+import eu.interedition.collatex.IndexedVariantGraph;
+import eu.interedition.collatex.Token;
+import eu.interedition.collatex.Witness;
+import eu.interedition.collatex.WitnessSet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A read-only variant graph stored in a binary file, which is memory-mapped when opened.
+ * <p>
+ * Files are written from a {@link FrozenVariantGraph frozen snapshot}, so vertex identifiers are in rank order and
+ * ranks are stored alongside the graph. The file consists of a header with magic number, version and section sizes,
+ * followed by big-endian sections in this order:
+ * <ol>
+ * <li>witness sigils (string ids) and the distinct edge labels as witness bitsets,</li>
+ * <li>vertex ranks,</li>
+ * <li>outgoing edges (offsets, targets, label ids) and incoming edges (offsets, sources) in CSR layout,</li>
+ * <li>tokens per vertex (offsets, witness ordinal, string ids of content and normalized content),</li>
+ * <li>transpositions (offsets, members) and transposition memberships per vertex (offsets, transposition ids),</li>
+ * <li>a string table (offsets, UTF-16 characters).</li>
+ * </ol>
+ * Adjacency and transpositions are read from the mapped file on demand; only witnesses and edge labels are
+ * materialized when opening. Tokens have to be {@link SimpleToken simple tokens}; they are stored per vertex in
+ * witness order, so the restored {@link SimpleWitness witnesses} list their tokens in their original order. Tokens
+ * and their strings are created once, on first access via a vertex or a witness.
+ */
+public final class MappedVariantGraph implements IndexedVariantGraph {
+
+    private static final int MAGIC = 0x43585647; // "CXVG"
+    private static final int VERSION = 1;
+    private static final int HEADER_FIELDS = 12;
+
+    private final WitnessSet.Index witnessIndex = new WitnessSet.Index();
+    private final List<SimpleWitness> witnessList;
+    private final WitnessSet[] labels;
+    private final WitnessSet witnesses;
+    private final int size;
+
+    private final IntBuffer ranks;
+    private final IntBuffer outOffsets;
+    private final IntBuffer outTargets;
+    private final IntBuffer outLabels;
+    private final IntBuffer inOffsets;
+    private final IntBuffer inSources;
+    private final IntBuffer tokenOffsets;
+    private final IntBuffer tokenWitnesses;
+    private final IntBuffer tokenContents;
+    private final IntBuffer tokenNormalized;
+    private final IntBuffer stringOffsets;
+    private final CharBuffer chars;
+    // tokens and decoded strings by id, created on first access
+    private final AtomicReferenceArray<Token> tokens;
+    private final String[] strings;
+    // token ids of each witness, in witness order
+    private final int[][] witnessTokens;
+    private final IntBuffer transpositionOffsets;
+    private final IntBuffer transpositionMembers;
+    private final IntBuffer membershipOffsets;
+    private final IntBuffer memberships;
+
+    private MappedVariantGraph(ByteBuffer buffer) {
+        final IntBuffer header = buffer.asIntBuffer();
+        final int witnessCount = header.get(2);
+        final int labelCount = header.get(3);
+        final int labelWords = header.get(4);
+        this.size = header.get(5);
+        final int edgeCount = header.get(6);
+        final int tokenCount = header.get(7);
+        final int transpositionCount = header.get(8);
+        final int membershipCount = header.get(9);
+        final int stringCount = header.get(10);
+        final int charCount = header.get(11);
+
+        final Sections sections = new Sections(buffer, HEADER_FIELDS * Integer.BYTES);
+        final IntBuffer sigils = sections.ints(witnessCount);
+        final LongBuffer labelBits = sections.longs(labelCount * labelWords);
+        this.ranks = sections.ints(size);
+        this.outOffsets = sections.ints(size + 1);
+        this.outTargets = sections.ints(edgeCount);
+        this.outLabels = sections.ints(edgeCount);
+        this.inOffsets = sections.ints(size + 1);
+        this.inSources = sections.ints(edgeCount);
+        this.tokenOffsets = sections.ints(size + 1);
+        this.tokenWitnesses = sections.ints(tokenCount);
+        this.tokenContents = sections.ints(tokenCount);
+        this.tokenNormalized = sections.ints(tokenCount);
+        this.transpositionOffsets = sections.ints(transpositionCount + 1);
+        this.transpositionMembers = sections.ints(membershipCount);
+        this.membershipOffsets = sections.ints(size + 1);
+        this.memberships = sections.ints(membershipCount);
+        this.stringOffsets = sections.ints(stringCount + 1);
+        this.chars = sections.chars(charCount);
+        this.tokens = new AtomicReferenceArray<>(tokenCount);
+        this.strings = new String[stringCount];
+
+        this.witnessList = new ArrayList<>(witnessCount);
+        for (int w = 0; w < witnessCount; w++) {
+            final SimpleWitness witness = new MappedWitness(string(sigils.get(w)), w);
+            witnessList.add(witness);
+            witnessIndex.ordinal(witness);
+        }
+
+        this.labels = new WitnessSet[labelCount];
+        final List<Witness> members = new ArrayList<>();
+        for (int l = 0; l < labelCount; l++) {
+            members.clear();
+            for (int w = 0; w < witnessCount; w++) {
+                if ((labelBits.get(l * labelWords + (w >>> 6)) & (1L << w)) != 0) {
+                    members.add(witnessList.get(w));
+                }
+            }
+            labels[l] = witnessIndex.of(members);
+        }
+
+        // vertices are in topological order, so the tokens of each witness are visited in witness order
+        final int[] witnessTokenCounts = new int[witnessCount];
+        for (int t = 0; t < tokenCount; t++) {
+            witnessTokenCounts[tokenWitnesses.get(t)]++;
+        }
+        this.witnessTokens = new int[witnessCount][];
+        for (int w = 0; w < witnessCount; w++) {
+            witnessTokens[w] = new int[witnessTokenCounts[w]];
+            witnessTokenCounts[w] = 0;
+        }
+        for (int t = 0; t < tokenCount; t++) {
+            final int witness = tokenWitnesses.get(t);
+            witnessTokens[witness][witnessTokenCounts[witness]++] = t;
+        }
+
+        final List<WitnessSet> outgoing = new ArrayList<>();
+        for (int e = outOffsets.get(0); e < outOffsets.get(1); e++) {
+            outgoing.add(labels[outLabels.get(e)]);
+        }
+        this.witnesses = witnessIndex.union(outgoing);
+    }
+
+    /**
+     * Memory-maps the given file; the mapping stays valid after this method returns.
+     *
+     * @throws IOException if the file cannot be read or is not a variant graph file of a supported version
+     */
+    public static MappedVariantGraph open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_FIELDS * Integer.BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a variant graph file: " + path);
+            }
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a variant graph file: " + path);
+            }
+            if (buffer.getInt(Integer.BYTES) != VERSION) {
+                throw new IOException("Unsupported variant graph file version " + buffer.getInt(Integer.BYTES) + ": " + path);
+            }
+            if (!sectionsFit(buffer)) {
+                throw new IOException("Corrupt variant graph file: " + path);
+            }
+            try {
+                return new MappedVariantGraph(buffer);
+            } catch (IndexOutOfBoundsException | NegativeArraySizeException e) {
+                throw new IOException("Corrupt variant graph file: " + path, e);
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the section sizes given in the header are valid and the sections fit into the
+     * buffer
+     */
+    private static boolean sectionsFit(ByteBuffer buffer) {
+        final IntBuffer header = buffer.asIntBuffer();
+        for (int f = 2; f < HEADER_FIELDS; f++) {
+            if (header.get(f) < 0) {
+                return false;
+            }
+        }
+        final long witnessCount = header.get(2);
+        final long labelCount = header.get(3);
+        final long labelWords = header.get(4);
+        final long size = header.get(5);
+        final long edgeCount = header.get(6);
+        final long tokenCount = header.get(7);
+        final long transpositionCount = header.get(8);
+        final long membershipCount = header.get(9);
+        final long stringCount = header.get(10);
+        final long charCount = header.get(11);
+        final long labelLongs = labelCount * labelWords;
+        if (labelWords * Long.SIZE < witnessCount || labelLongs > buffer.capacity()) {
+            return false;
+        }
+        // all terms are below 2^35, so the sum cannot overflow
+        final long ints = HEADER_FIELDS + witnessCount + size + 4 * (size + 1) + 3 * edgeCount + 3 * tokenCount
+                + (transpositionCount + 1) + 2 * membershipCount + (stringCount + 1);
+        final long bytes = ints * Integer.BYTES + labelLongs * Long.BYTES + charCount * Character.BYTES;
+        return bytes <= buffer.capacity();
+    }
+
+    /**
+     * Writes the part of the given graph reachable from its start vertex.
+     *
+     * @throws IllegalArgumentException if the graph contains tokens other than {@link SimpleToken simple tokens}
+     */
+    public static void write(IndexedVariantGraph graph, Path path) throws IOException {
+        final FrozenVariantGraph frozen = FrozenVariantGraph.of(graph);
+        final WitnessSet.Index index = frozen.witnessIndex();
+        final int size = frozen.size();
+
+        final Map<String, Integer> strings = new LinkedHashMap<>();
+        final int[] sigils = new int[index.size()];
+        for (int w = 0; w < sigils.length; w++) {
+            sigils[w] = stringId(strings, index.witness(w).getSigil());
+        }
+
+        final Map<Token, Integer> positions = new IdentityHashMap<>();
+        for (int w = 0; w < sigils.length; w++) {
+            final Witness witness = index.witness(w);
+            if (witness instanceof SimpleWitness) {
+                final List<Token> witnessTokens = ((SimpleWitness) witness).getTokens();
+                for (int t = 0; t < witnessTokens.size(); t++) {
+                    positions.put(witnessTokens.get(t), t);
+                }
+            }
+        }
+        final Comparator<Token> tokenOrder = Comparator
+                .<Token>comparingInt(t -> index.ordinalOf(t.getWitness()))
+                .thenComparingInt(t -> positions.getOrDefault(t, Integer.MAX_VALUE));
+
+        final Map<WitnessSet, Integer> labelIds = new IdentityHashMap<>();
+        final int labelWords = Math.max(1, (index.size() + Long.SIZE - 1) / Long.SIZE);
+        final int[] outOffsets = new int[size + 1];
+        final int[] inOffsets = new int[size + 1];
+        final int[] tokenOffsets = new int[size + 1];
+        final int[] membershipOffsets = new int[size + 1];
+        final IntList outTargets = new IntList();
+        final IntList outLabels = new IntList();
+        final IntList inSources = new IntList();
+        final IntList tokenWitnesses = new IntList();
+        final IntList tokenContents = new IntList();
+        final IntList tokenNormalized = new IntList();
+        final IntList memberships = new IntList();
+        int[] buf = new int[0];
+        for (int v = 0; v < size; v++) {
+            buf = frozen.outgoing(v, buf);
+            for (int oc = 0, outDegree = frozen.outDegree(v); oc < outDegree; oc++) {
+                outTargets.add(buf[oc]);
+                outLabels.add(labelIds.computeIfAbsent(frozen.witnesses(v, buf[oc]), l -> labelIds.size()));
+            }
+            outOffsets[v + 1] = outTargets.size;
+
+            buf = frozen.incoming(v, buf);
+            for (int ic = 0, inDegree = frozen.inDegree(v); ic < inDegree; ic++) {
+                inSources.add(buf[ic]);
+            }
+            inOffsets[v + 1] = inSources.size;
+
+            final List<Token> tokens = new ArrayList<>(frozen.tokens(v));
+            tokens.sort(tokenOrder);
+            for (Token token : tokens) {
+                if (!(token instanceof SimpleToken)) {
+                    throw new IllegalArgumentException(String.valueOf(token));
+                }
+                final SimpleToken simpleToken = (SimpleToken) token;
+                final int witness = index.ordinalOf(simpleToken.getWitness());
+                if (witness < 0) {
+                    throw new IllegalArgumentException(String.valueOf(simpleToken.getWitness()));
+                }
+                tokenWitnesses.add(witness);
+                tokenContents.add(stringId(strings, simpleToken.getContent()));
+                tokenNormalized.add(stringId(strings, simpleToken.getNormalized()));
+            }
+            tokenOffsets[v + 1] = tokenWitnesses.size;
+
+            for (int t : frozen.transpositions(v)) {
+                memberships.add(t);
+            }
+            membershipOffsets[v + 1] = memberships.size;
+        }
+
+        final int[] transpositionOffsets = new int[frozen.transpositionCount() + 1];
+        final IntList transpositionMembers = new IntList();
+        for (int t = 0; t < frozen.transpositionCount(); t++) {
+            for (int member : frozen.transposition(t)) {
+                transpositionMembers.add(member);
+            }
+            transpositionOffsets[t + 1] = transpositionMembers.size;
+        }
+
+        final long[] labelBits = new long[labelIds.size() * labelWords];
+        for (Map.Entry<WitnessSet, Integer> label : labelIds.entrySet()) {
+            for (Witness witness : label.getKey()) {
+                final int ordinal = index.ordinalOf(witness);
+                labelBits[label.getValue() * labelWords + (ordinal >>> 6)] |= (1L << ordinal);
+            }
+        }
+
+        final int[] stringOffsets = new int[strings.size() + 1];
+        int stringCount = 0;
+        for (String string : strings.keySet()) {
+            stringOffsets[stringCount + 1] = stringOffsets[stringCount] + string.length();
+            stringCount++;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            write(out, MAGIC, VERSION, sigils.length, labelIds.size(), labelWords, size, outTargets.size,
+                    tokenWitnesses.size, frozen.transpositionCount(), memberships.size, strings.size(), stringOffsets[stringCount]);
+            write(out, sigils);
+            for (long bits : labelBits) {
+                out.writeLong(bits);
+            }
+            write(out, frozen.ranks());
+            write(out, outOffsets);
+            write(out, outTargets.toArray());
+            write(out, outLabels.toArray());
+            write(out, inOffsets);
+            write(out, inSources.toArray());
+            write(out, tokenOffsets);
+            write(out, tokenWitnesses.toArray());
+            write(out, tokenContents.toArray());
+            write(out, tokenNormalized.toArray());
+            write(out, transpositionOffsets);
+            write(out, transpositionMembers.toArray());
+            write(out, membershipOffsets);
+            write(out, memberships.toArray());
+            write(out, stringOffsets);
+            for (String string : strings.keySet()) {
+                out.writeChars(string);
+            }
+        }
+    }
+
+    public List<SimpleWitness> witnessList() {
+        return Collections.unmodifiableList(witnessList);
+    }
+
+    public int rank(int vertex) {
+        return ranks.get(vertex);
+    }
+
+    @Override
+    public int start() {
+        return 0;
+    }
+
+    @Override
+    public int end() {
+        return size - 1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int outDegree(int vertex) {
+        return outOffsets.get(vertex + 1) - outOffsets.get(vertex);
+    }
+
+    @Override
+    public int inDegree(int vertex) {
+        return inOffsets.get(vertex + 1) - inOffsets.get(vertex);
+    }
+
+    @Override
+    public int[] outgoing(int vertex, int[] targets) {
+        return copy(outTargets, outOffsets.get(vertex), outOffsets.get(vertex + 1), targets);
+    }
+
+    @Override
+    public int[] incoming(int vertex, int[] sources) {
+        return copy(inSources, inOffsets.get(vertex), inOffsets.get(vertex + 1), sources);
+    }
+
+    @Override
+    public WitnessSet witnesses(int from, int to) {
+        int low = outOffsets.get(from);
+        int high = outOffsets.get(from + 1) - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int target = outTargets.get(mid);
+            if (target < to) {
+                low = mid + 1;
+            } else if (target > to) {
+                high = mid - 1;
+            } else {
+                return labels[outLabels.get(mid)];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public WitnessSet witnesses(int vertex) {
+        WitnessSet witnesses = witnessIndex.empty();
+        for (int e = inOffsets.get(vertex), end = inOffsets.get(vertex + 1); e < end; e++) {
+            witnesses = witnesses.union(witnesses(inSources.get(e), vertex));
+        }
+        return witnesses;
+    }
+
+    @Override
+    public WitnessSet witnesses() {
+        return witnesses;
+    }
+
+    @Override
+    public WitnessSet.Index witnessIndex() {
+        return witnessIndex;
+    }
+
+    @Override
+    public Collection<Token> tokens(int vertex) {
+        final int from = tokenOffsets.get(vertex);
+        final Token[] vertexTokens = new Token[tokenOffsets.get(vertex + 1) - from];
+        for (int t = 0; t < vertexTokens.length; t++) {
+            vertexTokens[t] = token(from + t);
+        }
+        return Collections.unmodifiableList(Arrays.asList(vertexTokens));
+    }
+
+    @Override
+    public int[] transpositions(int vertex) {
+        return copy(memberships, membershipOffsets.get(vertex), membershipOffsets.get(vertex + 1), new int[0]);
+    }
+
+    @Override
+    public int[] transposition(int transposition) {
+        return copy(transpositionMembers, transpositionOffsets.get(transposition), transpositionOffsets.get(transposition + 1), new int[0]);
+    }
+
+    @Override
+    public int transpositionCount() {
+        return transpositionOffsets.limit() - 1;
+    }
+
+    private static int[] copy(IntBuffer source, int from, int to, int[] buf) {
+        final int[] result = (buf.length >= to - from ? buf : new int[to - from]);
+        for (int i = from; i < to; i++) {
+            result[i - from] = source.get(i);
+        }
+        return result;
+    }
+
+    private Token token(int token) {
+        final Token existing = tokens.get(token);
+        if (existing != null) {
+            return existing;
+        }
+        final Token created = new SimpleToken(
+                witnessList.get(tokenWitnesses.get(token)),
+                string(tokenContents.get(token)),
+                string(tokenNormalized.get(token))
+        );
+        // concurrent readers agree on the token created first
+        return (tokens.compareAndSet(token, null, created) ? created : tokens.get(token));
+    }
+
+    private String string(int string) {
+        // strings are immutable, so decoding one twice upon concurrent reads is harmless
+        String value = strings[string];
+        if (value == null) {
+            final int start = stringOffsets.get(string);
+            final char[] decoded = new char[stringOffsets.get(string + 1) - start];
+            for (int c = 0; c < decoded.length; c++) {
+                decoded[c] = chars.get(start + c);
+            }
+            strings[string] = value = new String(decoded);
+        }
+        return value;
+    }
+
+    private static int stringId(Map<String, Integer> strings, String string) {
+        return strings.computeIfAbsent(string, s -> strings.size());
+    }
+
+    private static void write(DataOutputStream out, int... values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * A witness whose tokens are those of the mapped graph, created on first access, until they are
+     * {@link #setTokens(List) replaced}.
+     */
+    private class MappedWitness extends SimpleWitness {
+        private final int ordinal;
+        private volatile boolean tokensReplaced = false;
+
+        private MappedWitness(String sigil, int ordinal) {
+            super(sigil);
+            this.ordinal = ordinal;
+        }
+
+        @Override
+        public List<Token> getTokens() {
+            if (tokensReplaced) {
+                return super.getTokens();
+            }
+            return new AbstractList<Token>() {
+                @Override
+                public Token get(int index) {
+                    return token(witnessTokens[ordinal][index]);
+                }
+
+                @Override
+                public int size() {
+                    return witnessTokens[ordinal].length;
+                }
+            };
+        }
+
+        @Override
+        public void setTokens(List<Token> tokens) {
+            super.setTokens(tokens);
+            tokensReplaced = true;
+        }
+    }
+
+    /**
+     * Consecutive views on the sections of a mapped file. Views are only read via absolute indices, so they can be
+     * shared between threads.
+     */
+    private static class Sections {
+        private final ByteBuffer buffer;
+        private int offset;
+
+        private Sections(ByteBuffer buffer, int offset) {
+            this.buffer = buffer;
+            this.offset = offset;
+        }
+
+        private ByteBuffer next(int length) {
+            final ByteBuffer section = buffer.duplicate();
+            section.position(offset);
+            section.limit(offset + length);
+            offset += length;
+            return section.slice();
+        }
+
+        IntBuffer ints(int count) {
+            return next(count * Integer.BYTES).asIntBuffer();
+        }
+
+        LongBuffer longs(int count) {
+            return next(count * Long.BYTES).asLongBuffer();
+        }
+
+        CharBuffer chars(int count) {
+            return next(count * Character.BYTES).asCharBuffer();
+        }
+    }
+
+    private static class IntList {
+        private int[] values = new int[64];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
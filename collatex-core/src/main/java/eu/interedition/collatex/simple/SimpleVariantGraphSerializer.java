@@ -19,13 +19,14 @@
 
 package eu.interedition.collatex.simple;
 
+import eu.interedition.collatex.IndexedVariantGraph;
 import eu.interedition.collatex.Token;
-import eu.interedition.collatex.VariantGraph;
 import eu.interedition.collatex.Witness;
 import eu.interedition.collatex.dekker.Tuple;
 import eu.interedition.collatex.util.ParallelSegmentationApparatus;
 import eu.interedition.collatex.util.StreamUtil;
 import eu.interedition.collatex.util.VariantGraphRanking;
+import eu.interedition.collatex.util.VariantGraphTraversal;
 
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
@@ -34,6 +35,7 @@ import java.io.PrintWriter;
 import java.io.Writer;
 import java.util.*;
 import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -51,23 +53,25 @@ public class SimpleVariantGraphSerializer {
      */
     protected static final String TEI_NS = "http://www.tei-c.org/ns/1.0";
 
-    private final VariantGraph graph;
+    private final IndexedVariantGraph graph;
     private final Function<Iterable<Token>, String> tokensToString;
-    private final Map<VariantGraph.Vertex, Integer> vertexIds = new HashMap<>();
-    private VariantGraphRanking ranking;
+    private int[] vertexIds;
+    private int vertexIdCount = 0;
+    private int[] order;
+    private int[] ranks;
 
-    public SimpleVariantGraphSerializer(VariantGraph graph) {
+    public SimpleVariantGraphSerializer(IndexedVariantGraph graph) {
         this(graph, SIMPLE_TOKEN_TO_STRING);
     }
 
-    public SimpleVariantGraphSerializer(VariantGraph graph, Function<Iterable<Token>, String> tokensToString) {
+    public SimpleVariantGraphSerializer(IndexedVariantGraph graph, Function<Iterable<Token>, String> tokensToString) {
         this.graph = graph;
         this.tokensToString = tokensToString;
     }
 
     public void toTEI(final XMLStreamWriter xml) throws XMLStreamException {
         try {
-            ParallelSegmentationApparatus.generate(ranking(), new ParallelSegmentationApparatus.GeneratorCallback() {
+            ParallelSegmentationApparatus.generate(graph, ranks(), new ParallelSegmentationApparatus.GeneratorCallback() {
                 @Override
                 public void start() {
                     try {
@@ -138,7 +142,7 @@ public class SimpleVariantGraphSerializer {
 
     public void toCsv(final Writer out) throws IOException {
         try {
-            ParallelSegmentationApparatus.generate(ranking(), new ParallelSegmentationApparatus.GeneratorCallback() {
+            ParallelSegmentationApparatus.generate(graph, ranks(), new ParallelSegmentationApparatus.GeneratorCallback() {
                 @Override
                 public void start() {
                     try {
@@ -199,21 +203,24 @@ public class SimpleVariantGraphSerializer {
 
         out.println("digraph G {");
 
-        for (VariantGraph.Vertex v : graph.vertices()) {
+        for (int v : order()) {
             out.print(indent + id(v));
             out.print(" [label = \"" + toDotLabel(v) + "\"]");
             out.println(";");
         }
 
-        for (VariantGraph.Vertex v : graph.vertices()) {
-            for (Map.Entry<VariantGraph.Vertex, Set<Witness>> e : v.outgoing().entrySet()) {
-                out.print(indent + id(v) + connector + id(e.getKey()));
-                out.print(" [label = \"" + toDotLabel(e.getValue()) + "\"]");
+        int[] targets = new int[0];
+        for (int v : order()) {
+            final int outDegree = graph.outDegree(v);
+            targets = graph.outgoing(v, targets);
+            for (int oc = 0; oc < outDegree; oc++) {
+                out.print(indent + id(v) + connector + id(targets[oc]));
+                out.print(" [label = \"" + toDotLabel(graph.witnesses(v, targets[oc])) + "\"]");
                 out.println(";");
             }
         }
 
-        for (Tuple<VariantGraph.Vertex> transposedTuple : transposedTuples()) {
+        for (Tuple<Integer> transposedTuple : transposedTuples()) {
             final String leftId = id(transposedTuple.left);
             final String rightId = id(transposedTuple.right);
             out.print(indent + leftId + connector + rightId);
@@ -221,7 +228,7 @@ public class SimpleVariantGraphSerializer {
             out.println(";");
         }
 
-        out.print(indent + id(graph.getStart()) + connector + id(graph.getEnd()));
+        out.print(indent + id(graph.start()) + connector + id(graph.end()));
         out.print(" [color =  \"white\"]");
         out.println(";");
 
@@ -230,20 +237,26 @@ public class SimpleVariantGraphSerializer {
         out.flush();
     }
 
-    private String id(VariantGraph.Vertex vertex) {
+    private String id(int vertex) {
         return ("v" + numericId(vertex));
     }
 
-    private int numericId(VariantGraph.Vertex vertex) {
-        Integer id = vertexIds.computeIfAbsent(vertex, k -> vertexIds.size());
-        return id;
+    private int numericId(int vertex) {
+        if (vertexIds == null) {
+            vertexIds = new int[graph.size()];
+            Arrays.fill(vertexIds, -1);
+        }
+        if (vertexIds[vertex] < 0) {
+            vertexIds[vertex] = vertexIdCount++;
+        }
+        return vertexIds[vertex];
     }
 
     String toDotLabel(Set<Witness> e) {
         return escapeDotLabel(e.stream().map(Witness::getSigil).distinct().sorted().collect(Collectors.joining(", ")));
     }
 
-    String toDotLabel(VariantGraph.Vertex v) {
+    String toDotLabel(int v) {
         return escapeDotLabel(vertexToString.apply(v));
     }
 
@@ -251,21 +264,33 @@ public class SimpleVariantGraphSerializer {
         return string.replaceAll("\"", "\\\\\"").replaceAll("[\n\r]+", "\u00B6");
     }
 
-    VariantGraphRanking ranking() {
-        if (ranking == null) {
-            ranking = VariantGraphRanking.of(graph);
+    int[] order() {
+        if (order == null) {
+            order = VariantGraphTraversal.order(graph);
+        }
+        return order;
+    }
+
+    int[] ranks() {
+        if (ranks == null) {
+            ranks = VariantGraphRanking.ranks(graph);
         }
-        return ranking;
+        return ranks;
     }
 
-    Set<Tuple<VariantGraph.Vertex>> transposedTuples() {
-        final Set<Tuple<VariantGraph.Vertex>> tuples = new HashSet<>();
-        final Comparator<VariantGraph.Vertex> vertexOrdering = ranking().comparator();
+    Set<Tuple<Integer>> transposedTuples() {
+        final Set<Tuple<Integer>> tuples = new LinkedHashSet<>();
+        final int[] ranks = ranks();
+        final Comparator<Integer> vertexOrdering = Comparator.comparingInt(v -> ranks[v]);
 
-        for (Set<VariantGraph.Vertex> transposition : graph.transpositions()) {
-            final SortedMap<Witness, SortedSet<VariantGraph.Vertex>> verticesByWitness = new TreeMap<>(Witness.SIGIL_COMPARATOR);
-            for (VariantGraph.Vertex vertex : transposition) {
-                for (Witness witness : vertex.witnesses()) {
+        for (int t = 0, transpositionCount = graph.transpositionCount(); t < transpositionCount; t++) {
+            final int[] transposition = graph.transposition(t);
+            if (transposition == null) {
+                continue;
+            }
+            final SortedMap<Witness, SortedSet<Integer>> verticesByWitness = new TreeMap<>(Witness.SIGIL_COMPARATOR);
+            for (int vertex : transposition) {
+                for (Witness witness : graph.witnesses(vertex)) {
                     verticesByWitness.computeIfAbsent(witness, w -> new TreeSet<>(vertexOrdering)).add(vertex);
                 }
             }
@@ -273,11 +298,11 @@ public class SimpleVariantGraphSerializer {
             Witness prev = null;
             for (Witness witness : verticesByWitness.keySet()) {
                 if (prev != null) {
-                    final Iterator<VariantGraph.Vertex> prevIt = verticesByWitness.get(prev).iterator();
-                    final Iterator<VariantGraph.Vertex> nextIt = verticesByWitness.get(witness).iterator();
+                    final Iterator<Integer> prevIt = verticesByWitness.get(prev).iterator();
+                    final Iterator<Integer> nextIt = verticesByWitness.get(witness).iterator();
                     while (prevIt.hasNext() && nextIt.hasNext()) {
-                        final VariantGraph.Vertex prevVertex = prevIt.next();
-                        final VariantGraph.Vertex nextVertex = nextIt.next();
+                        final Integer prevVertex = prevIt.next();
+                        final Integer nextVertex = nextIt.next();
                         if (!prevVertex.equals(nextVertex)) {
                             tuples.add(new Tuple<>(prevVertex, nextVertex));
                         }
@@ -307,32 +332,35 @@ public class SimpleVariantGraphSerializer {
         xml.writeAttribute(PARSEEDGEIDS_ATT, PARSEEDGEIDS_DEFAULT_VALUE);
         xml.writeAttribute(PARSEORDER_ATT, PARSEORDER_DEFAULT_VALUE);
 
-        final VariantGraphRanking ranking = ranking();
-        for (VariantGraph.Vertex vertex : graph.vertices()) {
+        final int[] ranks = ranks();
+        for (int vertex : order()) {
             final int id = numericId(vertex);
             xml.writeStartElement(GRAPHML_NS, NODE_TAG);
             xml.writeAttribute(ID_ATT, "n" + id);
             GraphMLProperty.NODE_NUMBER.write(Integer.toString(id), xml);
-            GraphMLProperty.NODE_RANK.write(Integer.toString(ranking.apply(vertex)), xml);
+            GraphMLProperty.NODE_RANK.write(Integer.toString(ranks[vertex]), xml);
             GraphMLProperty.NODE_TOKEN.write(vertexToString.apply(vertex), xml);
             xml.writeEndElement();
         }
 
         int edgeNumber = 0;
-        for (VariantGraph.Vertex v : graph.vertices()) {
-            for (Map.Entry<VariantGraph.Vertex, Set<Witness>> edge : v.outgoing().entrySet()) {
+        int[] targets = new int[0];
+        for (int v : order()) {
+            final int outDegree = graph.outDegree(v);
+            targets = graph.outgoing(v, targets);
+            for (int oc = 0; oc < outDegree; oc++) {
                 xml.writeStartElement(GRAPHML_NS, EDGE_TAG);
                 xml.writeAttribute(ID_ATT, "e" + edgeNumber);
                 xml.writeAttribute(SOURCE_ATT, "n" + numericId(v));
-                xml.writeAttribute(TARGET_ATT, "n" + numericId(edge.getKey()));
+                xml.writeAttribute(TARGET_ATT, "n" + numericId(targets[oc]));
                 GraphMLProperty.EDGE_NUMBER.write(Integer.toString(edgeNumber++), xml);
                 GraphMLProperty.EDGE_TYPE.write(EDGE_TYPE_PATH, xml);
-                GraphMLProperty.EDGE_WITNESSES.write(edge.getValue().stream().map(Witness::getSigil).distinct().sorted().collect(Collectors.joining(", ")), xml);
+                GraphMLProperty.EDGE_WITNESSES.write(graph.witnesses(v, targets[oc]).stream().map(Witness::getSigil).distinct().sorted().collect(Collectors.joining(", ")), xml);
                 xml.writeEndElement();
             }
         }
 
-        for (Tuple<VariantGraph.Vertex> transposedTuple : transposedTuples()) {
+        for (Tuple<Integer> transposedTuple : transposedTuples()) {
             xml.writeStartElement(GRAPHML_NS, EDGE_TAG);
             xml.writeAttribute(ID_ATT, "e" + edgeNumber);
             xml.writeAttribute(SOURCE_ATT, "n" + numericId(transposedTuple.left));
@@ -411,11 +439,11 @@ public class SimpleVariantGraphSerializer {
         }
     }
 
-    final Function<VariantGraph.Vertex, String> vertexToString = new Function<VariantGraph.Vertex, String>() {
+    final IntFunction<String> vertexToString = new IntFunction<String>() {
         @Override
-        public String apply(VariantGraph.Vertex input) {
-            return input.witnesses().stream().findFirst()
-                    .map(witness -> tokensToString.apply(Arrays.asList(input.tokens().stream().filter(t -> witness.equals(t.getWitness())).toArray(Token[]::new))))
+        public String apply(int input) {
+            return graph.witnesses(input).stream().findFirst()
+                    .map(witness -> tokensToString.apply(Arrays.asList(graph.tokens(input).stream().filter(t -> witness.equals(t.getWitness())).toArray(Token[]::new))))
                     .orElse("");
         }
     };
@@ -73,7 +73,7 @@ public class SimpleWitness implements Iterable<Token>, Witness, Comparator<Simpl
 
     @Override
     public Iterator<Token> iterator() {
-        return Collections.unmodifiableList(tokens).iterator();
+        return Collections.unmodifiableList(getTokens()).iterator();
     }
 
     @Override
@@ -83,8 +83,8 @@ public class SimpleWitness implements Iterable<Token>, Witness, Comparator<Simpl
 
     @Override
     public int compare(SimpleToken o1, SimpleToken o2) {
-        final int o1Index = tokens.indexOf(o1);
-        final int o2Index = tokens.indexOf(o2);
+        final int o1Index = getTokens().indexOf(o1);
+        final int o2Index = getTokens().indexOf(o2);
         if (o1Index < 0) {
             throw new IllegalArgumentException(o1.toString());
         }
@@ -41,7 +41,17 @@ public enum Algorithm {
     /**
      * "Larrson-Sadakane qsufsort algorithm
      */
-    QSUFSORT("Larrson-Sadakane qsufsort algorithm");
+    QSUFSORT("Larrson-Sadakane qsufsort algorithm"),
+
+    /**
+     * Prefix doubling, parallelized for large inputs.
+     */
+    PARALLEL("Parallel prefix doubling"),
+
+    /**
+     * One of the above, chosen per input by {@link AutoSuffixArrayBuilder}.
+     */
+    AUTO("Chosen by input length and alphabet size");
 
     /**
      * Full name of the algorithm.
@@ -63,8 +73,9 @@ public enum Algorithm {
     public ISuffixArrayBuilder getDecoratedInstance() {
         switch (this) {
             case SKEW:
+            case SKEW_D:
                 return new DensePositiveDecorator(new ExtraTrailingCellsDecorator(
-                    getInstance(), SuffixArrays.MAX_EXTRA_TRAILING_SPACE));
+                    new Skew(), SuffixArrays.MAX_EXTRA_TRAILING_SPACE));
 
             default:
                 return getInstance();
@@ -79,6 +90,9 @@ public enum Algorithm {
             case SKEW:
                 return new Skew();
 
+            case SKEW_D:
+                return getDecoratedInstance();
+
             case DIVSUFSORT:
                 return new DivSufSort();
 
@@ -94,6 +108,11 @@ public enum Algorithm {
             case DEEP_SHALLOW:
                 return new DeepShallow();
 
+            case PARALLEL:
+                return new ParallelPrefixDoubling();
+
+            case AUTO:
+                return new AutoSuffixArrayBuilder();
         }
 
         throw new RuntimeException("No algorithm for constant: " + this);
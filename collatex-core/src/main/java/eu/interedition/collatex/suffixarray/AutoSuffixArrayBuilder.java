@@ -0,0 +1,56 @@
+package eu.interedition.collatex.suffixarray;
+
+import java.util.Arrays;
+
+/**
+ * Picks a suffix array construction algorithm per input, based on its length and alphabet size.
+ * <p>
+ * Thresholds are calibrated on token arrays of collations (see <code>SuffixArrayBenchmark</code> in the test
+ * sources). In token space, the alphabet grows with the input, so the algorithms restricted to byte-sized alphabets
+ * ({@link DivSufSort}, {@link BPR}, {@link DeepShallow}) only apply to tiny inputs, where they lose to the others due
+ * to their fixed setup costs. {@link QSufSort} is fastest on short inputs, {@link SAIS} from a few thousand tokens
+ * on, taking about half the time of {@link QSufSort} and {@link Skew} for a million tokens.
+ * <p>
+ * Input symbols must not be negative.
+ *
+ * @see Algorithm#AUTO
+ */
+public final class AutoSuffixArrayBuilder implements ISuffixArrayBuilder {
+
+    /**
+     * Inputs shorter than this are sorted by {@link QSufSort}.
+     */
+    static final int SHORT_INPUT = 8192;
+
+    @Override
+    public int[] buildSuffixArray(int[] input, int start, int length) {
+        final MinMax minmax = Tools.minmax(input, start, length);
+        Tools.assertAlways(minmax.min >= 0, "input must not be negative");
+        final Algorithm algorithm = select(input, start, length, minmax.max + 1);
+        final int[] sa = (algorithm == Algorithm.SAIS && start != 0
+                // SA-IS reads the input from its beginning
+                ? algorithm.getInstance().buildSuffixArray(Arrays.copyOfRange(input, start, start + length), 0, length)
+                : algorithm.getInstance().buildSuffixArray(input, start, length));
+        // qsufsort returns an extra cell for its sentinel suffix
+        return (sa.length == length ? sa : Arrays.copyOf(sa, length));
+    }
+
+    /**
+     * Selects an algorithm; if it is {@link Algorithm#SAIS} and the input starts at an offset, the input has to be
+     * copied, as SA-IS does not support offsets.
+     */
+    static Algorithm select(int[] input, int start, int length, int alphabetSize) {
+        if (input.length < start + length + 1) {
+            // no trailing space for QSufSort
+            return Algorithm.SAIS;
+        }
+        if (length < SHORT_INPUT) {
+            return Algorithm.QSUFSORT;
+        }
+        if (alphabetSize > length) {
+            // sparse symbols; SA-IS allocates buckets for the whole range whereas qsufsort compacts the alphabet
+            return Algorithm.QSUFSORT;
+        }
+        return Algorithm.SAIS;
+    }
+}
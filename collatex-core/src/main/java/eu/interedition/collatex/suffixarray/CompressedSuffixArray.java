@@ -0,0 +1,210 @@
+package eu.interedition.collatex.suffixarray;
+
+import java.util.Arrays;
+
+/**
+ * Suffix array represented by its successor function <code>&Psi;</code> and a sample of its values (Sadakane).
+ * <p>
+ * <code>&Psi;(i)</code> is the position in the suffix array of the suffix following <code>SA[i]</code> in the input,
+ * so that <code>SA[&Psi;(i)] = SA[i] + 1</code>. It increases within runs of suffixes starting with the same symbol,
+ * and by one within passages repeated in the input, such as the shared text of witnesses. It is stored as
+ * differences, variable-length encoded and run-length encoded where consecutive, in blocks with absolute values
+ * at their start.
+ * <p>
+ * The values of suffixes starting at every <code>k</code>-th position of the input are sampled. A value is looked
+ * up by following <code>&Psi;</code> from its position to a sampled suffix, in less than <code>k</code> steps.
+ */
+public final class CompressedSuffixArray {
+
+    public static final int DEFAULT_SAMPLING_RATE = 16;
+
+    private static final int BLOCK_SIZE = 64;
+
+    private final int length;
+    private final int samplingRate;
+    // psi: absolute value and offset of the encoded differences at the start of every block
+    private final int[] blockValues;
+    private final int[] blockOffsets;
+    private final byte[] differences;
+    // positions in the suffix array of sampled suffixes, with ranks of each 64 positions, and their values
+    private final long[] sampled;
+    private final int[] sampledRanks;
+    private final int[] samples;
+
+    public CompressedSuffixArray(int[] sa) {
+        this(sa, DEFAULT_SAMPLING_RATE);
+    }
+
+    /**
+     * @param sa           a suffix array, i.e. a permutation of the positions of its input
+     * @param samplingRate the distance of sampled positions in the input
+     */
+    public CompressedSuffixArray(int[] sa, int samplingRate) {
+        Tools.assertAlways(samplingRate > 0, "sampling rate must be positive");
+        this.length = sa.length;
+        this.samplingRate = samplingRate;
+
+        final int[] isa = new int[length];
+        for (int i = 0; i < length; i++) {
+            isa[sa[i]] = i;
+        }
+
+        // the last suffix is always sampled, as psi is not defined for it
+        this.sampled = new long[(length + 63) / 64];
+        this.sampledRanks = new int[sampled.length + 1];
+        int sampleCount = 0;
+        for (int i = 0; i < length; i++) {
+            if (isSampledPosition(sa[i])) {
+                sampled[i >>> 6] |= 1L << i;
+                sampleCount++;
+            }
+        }
+        for (int w = 0; w < sampled.length; w++) {
+            sampledRanks[w + 1] = sampledRanks[w] + Long.bitCount(sampled[w]);
+        }
+        this.samples = new int[sampleCount];
+        for (int i = 0, s = 0; i < length; i++) {
+            if (isSampledPosition(sa[i])) {
+                samples[s++] = sa[i];
+            }
+        }
+
+        final int blocks = (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        this.blockValues = new int[blocks];
+        this.blockOffsets = new int[blocks + 1];
+        final ByteArray encoded = new ByteArray(length);
+        for (int b = 0; b < blocks; b++) {
+            final int start = b * BLOCK_SIZE;
+            final int end = Math.min(length, start + BLOCK_SIZE);
+            blockValues[b] = psi(sa, isa, start);
+            blockOffsets[b] = encoded.size;
+            for (int i = start + 1; i < end; ) {
+                final int difference = psi(sa, isa, i) - psi(sa, isa, i - 1);
+                if (difference == 1) {
+                    // a run of consecutive values, encoded as zero followed by its length
+                    int run = 1;
+                    while (i + run < end && psi(sa, isa, i + run) - psi(sa, isa, i + run - 1) == 1) {
+                        run++;
+                    }
+                    encoded.writeVarInt(0);
+                    encoded.writeVarInt(run);
+                    i += run;
+                } else {
+                    // zig-zag encoded, shifted by one to leave zero for runs
+                    encoded.writeVarInt(((difference << 1) ^ (difference >> 31)) + 1);
+                    i++;
+                }
+            }
+        }
+        blockOffsets[blocks] = encoded.size;
+        this.differences = Arrays.copyOf(encoded.bytes, encoded.size);
+    }
+
+    private boolean isSampledPosition(int position) {
+        return position % samplingRate == 0 || position == length - 1;
+    }
+
+    private int psi(int[] sa, int[] isa, int i) {
+        return (sa[i] + 1 < length ? isa[sa[i] + 1] : -1);
+    }
+
+    /**
+     * @return the value of the suffix array at the given position
+     */
+    public int get(int index) {
+        if (index < 0 || index >= length) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        int steps = 0;
+        while ((sampled[index >>> 6] & (1L << index)) == 0) {
+            index = psi(index);
+            steps++;
+        }
+        return samples[rank(index)] - steps;
+    }
+
+    /**
+     * Copies consecutive values of the suffix array.
+     */
+    public int[] get(int from, int to) {
+        final int[] values = new int[to - from];
+        for (int i = from; i < to; i++) {
+            values[i - from] = get(i);
+        }
+        return values;
+    }
+
+    /**
+     * @return the position in the suffix array of the suffix following the one at the given position
+     */
+    public int psi(int index) {
+        final int block = index / BLOCK_SIZE;
+        int remaining = index - block * BLOCK_SIZE;
+        int value = blockValues[block];
+        int offset = blockOffsets[block];
+        while (remaining > 0) {
+            int code = 0;
+            for (int shift = 0; ; shift += 7) {
+                final byte b = differences[offset++];
+                code |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            if (code == 0) {
+                int run = 0;
+                for (int shift = 0; ; shift += 7) {
+                    final byte b = differences[offset++];
+                    run |= (b & 0x7f) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                final int steps = Math.min(run, remaining);
+                value += steps;
+                remaining -= steps;
+            } else {
+                code--;
+                value += (code >>> 1) ^ -(code & 1);
+                remaining--;
+            }
+        }
+        return value;
+    }
+
+    private int rank(int index) {
+        return sampledRanks[index >>> 6] + Long.bitCount(sampled[index >>> 6] & ((1L << index) - 1));
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return the number of bytes occupied by the encoded successor function and the samples
+     */
+    public long sizeInBytes() {
+        return 4L * (blockValues.length + blockOffsets.length + sampledRanks.length + samples.length)
+                + 8L * sampled.length + differences.length;
+    }
+
+    private static class ByteArray {
+        private byte[] bytes;
+        private int size;
+
+        ByteArray(int capacity) {
+            this.bytes = new byte[Math.max(16, capacity)];
+        }
+
+        void writeVarInt(int value) {
+            if (size + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((value & ~0x7f) != 0) {
+                bytes[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+    }
+}
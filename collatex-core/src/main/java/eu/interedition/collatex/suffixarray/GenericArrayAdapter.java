@@ -1,6 +1,8 @@
 package eu.interedition.collatex.suffixarray;
 
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.TreeMap;
 
 /**
@@ -12,7 +14,7 @@ class GenericArrayAdapter<T> {
 
     private final ISuffixArrayBuilder delegate;
     int[] input;
-    TreeMap<T, Integer> tokIDs;
+    int symbols;
     private final Comparator<? super T> comparator;
 
     public GenericArrayAdapter(ISuffixArrayBuilder builder) {
@@ -42,17 +44,36 @@ class GenericArrayAdapter<T> {
 
         /*
          * We associate every token to an id, all `equal´ tokens to the same id.
-         * The suffix array is built using only the the ids.
+         * The suffix array is built using only the the ids. Ids are dense and
+         * assigned in the order of first occurrence.
          */
-        tokIDs = new TreeMap<>(comparator);
-
-        for (int i = 0; i < length; i++) {
-            tokIDs.putIfAbsent(tokens[i], i);
-            input[i] = tokIDs.get(tokens[i]);
-        }
+        symbols = (comparator instanceof KeyedComparator ? mapByKey(tokens) : mapByComparator(tokens));
 
         //System.out.println("Token ids assigned.");
 
         return delegate.buildSuffixArray(input, 0, length);
     }
+
+    /**
+     * One pass over the tokens with a hash dictionary of their keys.
+     */
+    @SuppressWarnings("unchecked")
+    private int mapByKey(T[] tokens) {
+        final KeyedComparator<? super T> keyedComparator = (KeyedComparator<? super T>) comparator;
+        final Map<Object, Integer> tokIDs = new HashMap<>();
+        for (int i = 0; i < tokens.length; i++) {
+            final Integer id = tokIDs.putIfAbsent(keyedComparator.keyOf(tokens[i]), tokIDs.size());
+            input[i] = (id == null ? tokIDs.size() - 1 : id);
+        }
+        return tokIDs.size();
+    }
+
+    private int mapByComparator(T[] tokens) {
+        final Map<T, Integer> tokIDs = new TreeMap<>(comparator);
+        for (int i = 0; i < tokens.length; i++) {
+            final Integer id = tokIDs.putIfAbsent(tokens[i], tokIDs.size());
+            input[i] = (id == null ? tokIDs.size() - 1 : id);
+        }
+        return tokIDs.size();
+    }
 }
@@ -0,0 +1,17 @@
+package eu.interedition.collatex.suffixarray;
+
+import java.util.Comparator;
+
+/**
+ * A comparator whose notion of equality is that of a key extracted from each element: two elements compare as
+ * <code>0</code> if and only if their keys are {@link Object#equals(Object) equal}.
+ * <p>
+ * Suffix arrays over generic arrays only need to tell equal symbols apart, so elements compared by such a
+ * comparator can be mapped to integer symbols via a hash dictionary in one pass, instead of via a sorted map.
+ *
+ * @see SuffixArrays#createWithLCP(Object[], ISuffixArrayBuilder, Comparator)
+ */
+public interface KeyedComparator<T> extends Comparator<T> {
+
+    Object keyOf(T element);
+}
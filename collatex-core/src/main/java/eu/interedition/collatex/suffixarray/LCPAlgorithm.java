@@ -0,0 +1,44 @@
+package eu.interedition.collatex.suffixarray;
+
+/**
+ * Algorithms computing the longest common prefix (LCP) array for a suffix array.
+ *
+ * @see SuffixArrays#createWithLCP(Object[], ISuffixArrayBuilder, java.util.Comparator, LCPAlgorithm)
+ */
+public enum LCPAlgorithm {
+    /**
+     * Kasai et al., leaving the input intact.
+     *
+     * @see SuffixArrays#computeLCP(int[], int, int, int[])
+     */
+    KASAI,
+
+    /**
+     * Via the permuted LCP array, with less memory; <b>overwrites the input.</b>
+     *
+     * @see SuffixArrays#computeLCPByPhi(int[], int, int, int[], boolean)
+     */
+    PHI,
+
+    /**
+     * Via the permuted LCP array, computed in parallel; <b>overwrites the input.</b>
+     *
+     * @see SuffixArrays#computeLCPByPhi(int[], int, int, int[], boolean)
+     */
+    PHI_PARALLEL;
+
+    /**
+     * @return the LCP array of the given suffix array, as specified by
+     * {@link SuffixArrays#computeLCP(int[], int, int, int[])}
+     */
+    public int[] computeLCP(int[] input, int start, int length, int[] sa) {
+        switch (this) {
+            case PHI:
+                return SuffixArrays.computeLCPByPhi(input, start, length, sa, false);
+            case PHI_PARALLEL:
+                return SuffixArrays.computeLCPByPhi(input, start, length, sa, true);
+            default:
+                return SuffixArrays.computeLCP(input, start, length, sa);
+        }
+    }
+}
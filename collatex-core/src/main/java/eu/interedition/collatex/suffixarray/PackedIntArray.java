@@ -0,0 +1,76 @@
+package eu.interedition.collatex.suffixarray;
+
+/**
+ * Fixed-length array of non-negative integers, each stored in the same number of bits.
+ */
+public final class PackedIntArray {
+
+    private final long[] words;
+    private final int bits;
+    private final int length;
+    private final long mask;
+
+    /**
+     * @param length the number of values
+     * @param bits   the number of bits per value, between <code>0</code> and <code>31</code>
+     */
+    public PackedIntArray(int length, int bits) {
+        Tools.assertAlways(length >= 0, "length must not be negative");
+        Tools.assertAlways(bits >= 0 && bits < 32, "bits must be between 0 and 31");
+        this.words = new long[(int) (((long) length * bits + 63) / 64)];
+        this.bits = bits;
+        this.length = length;
+        this.mask = (1L << bits) - 1;
+    }
+
+    /**
+     * @return the number of bits needed to store values up to the given maximum
+     */
+    public static int bitsFor(int maximum) {
+        return 32 - Integer.numberOfLeadingZeros(maximum);
+    }
+
+    public int get(int index) {
+        if (bits == 0) {
+            return 0;
+        }
+        final long bit = (long) index * bits;
+        final int word = (int) (bit >>> 6);
+        final int offset = (int) (bit & 63);
+        long value = words[word] >>> offset;
+        if (offset + bits > 64) {
+            value |= words[word + 1] << (64 - offset);
+        }
+        return (int) (value & mask);
+    }
+
+    public void set(int index, int value) {
+        if (bits == 0) {
+            return;
+        }
+        final long bit = (long) index * bits;
+        final int word = (int) (bit >>> 6);
+        final int offset = (int) (bit & 63);
+        final long v = value & mask;
+        words[word] = (words[word] & ~(mask << offset)) | (v << offset);
+        if (offset + bits > 64) {
+            final int shift = 64 - offset;
+            words[word + 1] = (words[word + 1] & ~(mask >>> shift)) | (v >>> shift);
+        }
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * @return the number of bytes occupied by the values
+     */
+    public long sizeInBytes() {
+        return 8L * words.length;
+    }
+}
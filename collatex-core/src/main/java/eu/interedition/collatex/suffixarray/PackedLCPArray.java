@@ -0,0 +1,83 @@
+package eu.interedition.collatex.suffixarray;
+
+import java.util.Arrays;
+
+/**
+ * LCP array with values packed into as few bits as most of them need; larger values are kept in a table of
+ * overflows, looked up by binary search.
+ * <p>
+ * The width of the packed values is chosen to minimize the total size, given that an overflow takes two
+ * <code>int</code>s. As LCP values of natural language texts are small but for repeated passages, only a few
+ * bits per value are needed.
+ */
+public final class PackedLCPArray {
+
+    private final PackedIntArray values;
+    private final int escape;
+    // positions of overflowing values, in ascending order, and the values
+    private final int[] overflowPositions;
+    private final int[] overflowValues;
+
+    /**
+     * @param lcp an LCP array as computed by {@link SuffixArrays#computeLCP(int[], int, int, int[])}, with
+     *            <code>-1</code> in its first cell
+     */
+    public PackedLCPArray(int[] lcp) {
+        // values are stored incremented by one, the escape value is the largest one representable
+        final long[] exceeding = new long[33];
+        for (int value : lcp) {
+            exceeding[PackedIntArray.bitsFor(value + 1)]++;
+        }
+        int bits = 0;
+        long overflows = lcp.length;
+        long minimumSize = Long.MAX_VALUE;
+        for (int b = 0, fitting = 0; b < 32; fitting += exceeding[b], b++) {
+            // values needing fewer than b bits fit; counting those needing b bits as overflows overestimates the size
+            final long size = (long) lcp.length * b + 64L * (lcp.length - fitting);
+            if (size < minimumSize) {
+                minimumSize = size;
+                bits = b;
+                overflows = lcp.length - fitting;
+            }
+        }
+
+        this.values = new PackedIntArray(lcp.length, bits);
+        this.escape = (1 << bits) - 1;
+        int[] overflowPositions = new int[(int) overflows];
+        int[] overflowValues = new int[overflowPositions.length];
+        int overflowCount = 0;
+        for (int i = 0; i < lcp.length; i++) {
+            final int value = lcp[i] + 1;
+            if (value >= escape) {
+                if (overflowCount == overflowPositions.length) {
+                    overflowPositions = Arrays.copyOf(overflowPositions, overflowCount * 2 + 1);
+                    overflowValues = Arrays.copyOf(overflowValues, overflowCount * 2 + 1);
+                }
+                overflowPositions[overflowCount] = i;
+                overflowValues[overflowCount] = lcp[i];
+                overflowCount++;
+                values.set(i, escape);
+            } else {
+                values.set(i, value);
+            }
+        }
+        this.overflowPositions = Arrays.copyOf(overflowPositions, overflowCount);
+        this.overflowValues = Arrays.copyOf(overflowValues, overflowCount);
+    }
+
+    public int get(int index) {
+        final int value = values.get(index);
+        return (value == escape ? overflowValues[Arrays.binarySearch(overflowPositions, index)] : value - 1);
+    }
+
+    public int length() {
+        return values.length();
+    }
+
+    /**
+     * @return the number of bytes occupied by the packed values and the overflows
+     */
+    public long sizeInBytes() {
+        return values.sizeInBytes() + 8L * overflowPositions.length;
+    }
+}
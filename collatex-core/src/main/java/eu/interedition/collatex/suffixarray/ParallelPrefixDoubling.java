@@ -0,0 +1,182 @@
+package eu.interedition.collatex.suffixarray;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Prefix doubling (Manber-Myers), refining groups of suffixes with equal prefixes in parallel.
+ * <p>
+ * Suffixes are first sorted by their initial symbol. In each round, the suffixes of every group sharing a prefix of
+ * length <code>h</code> are sorted by the rank of the suffix <code>h</code> positions further on, which yields their
+ * order by prefixes of length <code>2h</code>; a rank is the index of a suffix's group in the suffix array. Rounds
+ * end once all groups consist of a single suffix. Groups are sorted and split concurrently in the common
+ * {@link ForkJoinPool}, large groups additionally via {@link Arrays#parallelSort(long[], int, int)}.
+ * <p>
+ * The result is identical to that of {@link SAIS}: a suffix sorts before all suffixes it is a proper prefix of.
+ * Inputs shorter than a configurable threshold are delegated to {@link SAIS}, which is faster on a single core. Any
+ * input symbols are accepted and no trailing cells are required.
+ */
+public final class ParallelPrefixDoubling implements ISuffixArrayBuilder {
+
+    /**
+     * Default input length from which on suffixes are sorted in parallel.
+     */
+    public static final int DEFAULT_THRESHOLD = 1 << 16;
+
+    /**
+     * Groups smaller than this are sorted on a single thread.
+     */
+    private static final int SEQUENTIAL_SORT = 1 << 13;
+
+    private final int threshold;
+
+    public ParallelPrefixDoubling() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param threshold the input length from which on suffixes are sorted in parallel
+     */
+    public ParallelPrefixDoubling(int threshold) {
+        Tools.assertAlways(threshold >= 0, "threshold must not be negative");
+        this.threshold = threshold;
+    }
+
+    @Override
+    public int[] buildSuffixArray(int[] input, int start, int length) {
+        Tools.assertAlways(start >= 0 && length >= 0 && start + length <= input.length, "range out of bounds");
+        if (length == 0) {
+            return new int[0];
+        }
+        if (length < threshold && Tools.minmax(input, start, length).min >= 0) {
+            // SA-IS reads the input from its beginning
+            return new SAIS().buildSuffixArray(start == 0 ? input : Arrays.copyOfRange(input, start, start + length), 0, length);
+        }
+
+        final long[] keys = new long[length];
+        final int[] sa = new int[length];
+        final int[] rank = new int[length];
+        IntStream.range(0, length).parallel().forEach(i -> keys[i] = ((long) input[start + i] << 32) | i);
+        Arrays.parallelSort(keys);
+
+        int[] groups = { 0, length };
+        for (int h = 1; ; h *= 2) {
+            final int[] chunks = chunks(groups);
+            groups = split(keys, sa, rank, groups, chunks);
+            if (groups.length == 0) {
+                return sa;
+            }
+            sort(keys, sa, rank, groups, chunks(groups), h);
+        }
+    }
+
+    /**
+     * Partitions groups into consecutive ranges of about equal numbers of suffixes, a few per worker thread.
+     *
+     * @return indices of the first group of each range, followed by the number of groups
+     */
+    private static int[] chunks(int[] groups) {
+        final int groupCount = groups.length / 2;
+        long suffixes = 0;
+        for (int g = 0; g < groupCount; g++) {
+            suffixes += groups[2 * g + 1] - groups[2 * g];
+        }
+        final long chunkSize = Math.max(SEQUENTIAL_SORT, suffixes / (4L * ForkJoinPool.getCommonPoolParallelism()) + 1);
+        final IntArray chunks = new IntArray();
+        long size = chunkSize;
+        for (int g = 0; g < groupCount; g++) {
+            if (size >= chunkSize) {
+                chunks.add(g);
+                size = 0;
+            }
+            size += groups[2 * g + 1] - groups[2 * g];
+        }
+        chunks.add(groupCount);
+        return chunks.toArray();
+    }
+
+    /**
+     * Sorts the suffixes of each group by the rank <code>h</code> positions further on, leaving them in
+     * <code>keys</code>, with the rank in the upper and the suffix in the lower half of each key.
+     */
+    private static void sort(long[] keys, int[] sa, int[] rank, int[] groups, int[] chunks, int h) {
+        final int length = sa.length;
+        IntStream.range(0, chunks.length - 1).parallel().forEach(c -> {
+            for (int g = chunks[c]; g < chunks[c + 1]; g++) {
+                final int begin = groups[2 * g], end = groups[2 * g + 1];
+                for (int i = begin; i < end; i++) {
+                    final int suffix = sa[i];
+                    final int next = suffix + h;
+                    keys[i] = ((long) (next < length ? rank[next] : -1) << 32) | suffix;
+                }
+                if (end - begin < SEQUENTIAL_SORT) {
+                    Arrays.sort(keys, begin, end);
+                } else {
+                    Arrays.parallelSort(keys, begin, end);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stores the suffixes of sorted groups in the suffix array and splits groups by key, ranking their suffixes.
+     *
+     * @return the groups left with more than one suffix
+     */
+    private static int[] split(long[] keys, int[] sa, int[] rank, int[] groups, int[] chunks) {
+        final int[][] split = IntStream.range(0, chunks.length - 1).parallel().mapToObj(c -> {
+            final IntArray unsorted = new IntArray();
+            for (int g = chunks[c]; g < chunks[c + 1]; g++) {
+                final int begin = groups[2 * g], end = groups[2 * g + 1];
+                int groupStart = begin;
+                for (int i = begin; i < end; i++) {
+                    if (i > begin && (keys[i] >> 32) != (keys[i - 1] >> 32)) {
+                        if (i - groupStart > 1) {
+                            unsorted.add(groupStart);
+                            unsorted.add(i);
+                        }
+                        groupStart = i;
+                    }
+                    sa[i] = (int) keys[i];
+                    rank[sa[i]] = groupStart;
+                }
+                if (end - groupStart > 1) {
+                    unsorted.add(groupStart);
+                    unsorted.add(end);
+                }
+            }
+            return unsorted.toArray();
+        }).toArray(int[][]::new);
+
+        final IntArray unsorted = new IntArray();
+        for (int[] chunk : split) {
+            unsorted.addAll(chunk);
+        }
+        return unsorted.toArray();
+    }
+
+    private static class IntArray {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(int[] add) {
+            if (size + add.length > values.length) {
+                values = Arrays.copyOf(values, Math.max(size * 2, size + add.length));
+            }
+            System.arraycopy(add, 0, values, size, add.length);
+            size += add.length;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
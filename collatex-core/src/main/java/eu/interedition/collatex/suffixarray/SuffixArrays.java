@@ -1,8 +1,11 @@
 package eu.interedition.collatex.suffixarray;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /*
  * TODO: ultimately, this class should be "intelligent" enough to pick the best
@@ -73,8 +76,8 @@ public final class SuffixArrays {
      */
     public static SuffixData createWithLCP(CharSequence s, ISuffixArrayBuilder builder) {
         final CharSequenceAdapter adapter = new CharSequenceAdapter(builder);
-        final int[] sa = adapter.buildSuffixArray(s);
-        final int[] lcp = computeLCP(adapter.input, 0, s.length(), sa);
+        final int[] sa = trim(adapter.buildSuffixArray(s), s.length());
+        final int[] lcp = computeLCPByPhi(adapter.input, 0, s.length(), sa, false);
         return new SuffixData(sa, lcp);
     }
 
@@ -93,8 +96,18 @@ public final class SuffixArrays {
      */
     public static SuffixData createWithLCP(int[] input, int start, int length,
                                            ISuffixArrayBuilder builder) {
-        final int[] sa = builder.buildSuffixArray(input, start, length);
-        final int[] lcp = computeLCP(input, start, length, sa);
+        return createWithLCP(input, start, length, builder, LCPAlgorithm.KASAI);
+    }
+
+    /**
+     * Create a suffix array and an LCP array for a given input sequence of symbols, a
+     * custom suffix array building strategy and LCP algorithm. Note that the
+     * {@link LCPAlgorithm#PHI} variants overwrite the input.
+     */
+    public static SuffixData createWithLCP(int[] input, int start, int length,
+                                           ISuffixArrayBuilder builder, LCPAlgorithm lcpAlgorithm) {
+        final int[] sa = trim(builder.buildSuffixArray(input, start, length), length);
+        final int[] lcp = lcpAlgorithm.computeLCP(input, start, length, sa);
         return new SuffixData(sa, lcp);
     }
 
@@ -104,9 +117,18 @@ public final class SuffixArrays {
      * comparator.
      */
     public static <T> SuffixData createWithLCP(T[] input, ISuffixArrayBuilder builder, Comparator<? super T> comparator) {
+        return createWithLCP(input, builder, comparator, LCPAlgorithm.PHI);
+    }
+
+    /**
+     * Create a suffix array and an LCP array for a given generic array, a custom suffix
+     * array building strategy and LCP algorithm, using the given T object comparator.
+     */
+    public static <T> SuffixData createWithLCP(T[] input, ISuffixArrayBuilder builder, Comparator<? super T> comparator,
+                                               LCPAlgorithm lcpAlgorithm) {
         final GenericArrayAdapter adapter = new GenericArrayAdapter(builder, comparator);
-        final int[] sa = adapter.buildSuffixArray(input);
-        final int[] lcp = computeLCP(adapter.input, 0, input.length, sa);
+        final int[] sa = trim(adapter.buildSuffixArray(input), input.length);
+        final int[] lcp = lcpAlgorithm.computeLCP(adapter.input, 0, input.length, sa);
         return new SuffixData(sa, lcp);
     }
 
@@ -146,10 +168,66 @@ public final class SuffixArrays {
         return lcp;
     }
 
+    /**
+     * Calculate the longest common prefix (LCP) array like {@link #computeLCP(int[], int, int, int[])}, but via the
+     * permuted LCP array, <b>overwriting the input</b> between <code>start</code> and <code>start + length</code>.
+     * <p>
+     * The LCP of each suffix and its predecessor in the suffix array (Φ) is computed in text order, where it
+     * decreases by at most one from suffix to suffix, and then permuted into suffix array order. Instead of an inverse
+     * suffix array, only the Φ array is allocated, which eventually holds the result; the input serves as scratch
+     * space for the permutation. Only three arrays of the input's length are live at any time, whereas Kasai's
+     * algorithm requires four. Text order also makes for sequential memory access to the input.
+     * <p>
+     * In parallel, the text is split into one range per task, each of which starts comparing prefixes from scratch.
+     * <p>
+     * The algorithm comes from <tt>J. Kärkkäinen, G. Manzini, and S. J. Puglisi. Permuted Longest-Common-Prefix
+     * Array. In Proc. 20th Symposium on Combinatorial Pattern Matching (CPM ’09), pages 181–192. Springer-Verlag LNCS
+     * n. 5577, 2009.</tt>
+     */
+    public static int[] computeLCPByPhi(int[] input, final int start, final int length, int[] sa, boolean parallel) {
+        final int[] lcp = new int[length];
+        range(0, length, parallel).forEach(i -> lcp[sa[i]] = (i == 0 ? -1 : sa[i - 1]));
+
+        final int tasks = (parallel ? Math.min(4 * ForkJoinPool.getCommonPoolParallelism(), Math.max(1, length / 4096)) : 1);
+        range(0, tasks, parallel).forEach(t -> {
+            final int to = (int) ((long) length * (t + 1) / tasks);
+            int h = 0;
+            for (int i = (int) ((long) length * t / tasks); i < to; i++) {
+                final int j = lcp[i];
+                if (j < 0) {
+                    h = 0;
+                    continue;
+                }
+                while (i + h < length && j + h < length && input[start + i + h] == input[start + j + h]) {
+                    h++;
+                }
+                lcp[i] = h;
+                if (h > 0) h--;
+            }
+        });
+
+        range(0, length, parallel).forEach(i -> input[start + i] = lcp[sa[i]]);
+        range(0, length, parallel).forEach(i -> lcp[i] = input[start + i]);
+        return lcp;
+    }
+
+    private static IntStream range(int from, int to, boolean parallel) {
+        final IntStream range = IntStream.range(from, to);
+        return (parallel ? range.parallel() : range);
+    }
+
     /**
      * @return Return a new instance of the default algorithm for use in other methods. At
      * the moment {@link QSufSort} is used.
      */
+    /**
+     * Some builders (e.g. {@link QSufSort}) return extra cells for their sentinel suffixes; the suffix arrays of
+     * {@link SuffixData} have exactly one cell per input symbol, like their LCP arrays.
+     */
+    private static int[] trim(int[] sa, int length) {
+        return (sa.length == length ? sa : Arrays.copyOf(sa, length));
+    }
+
     private static ISuffixArrayBuilder defaultAlgorithm() {
         return new QSufSort();
     }
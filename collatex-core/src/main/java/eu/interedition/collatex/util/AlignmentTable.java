@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.util;
+
+import eu.interedition.collatex.IndexedVariantGraph;
+import eu.interedition.collatex.Token;
+import eu.interedition.collatex.Witness;
+import eu.interedition.collatex.WitnessSet;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An alignment table in columnar layout: one column per rank of a variant graph containing tokens, one row per
+ * witness, with rows ordered by sigil.
+ * <p>
+ * All tokens are kept in a single array, grouped by witness and ordered by column. Per witness, an int array holds
+ * the offset of each column's cell within that array, so a cell is the range between the offsets of two consecutive
+ * columns, and an empty cell denotes a gap. Cells can be read via {@link #cursor()} without allocating.
+ */
+public class AlignmentTable {
+
+    private final Witness[] witnesses;
+    private final int columns;
+    private final int[][] cellOffsets;
+    private final Token[] tokens;
+
+    private AlignmentTable(Witness[] witnesses, int columns, int[][] cellOffsets, Token[] tokens) {
+        this.witnesses = witnesses;
+        this.columns = columns;
+        this.cellOffsets = cellOffsets;
+        this.tokens = tokens;
+    }
+
+    public static AlignmentTable of(IndexedVariantGraph graph) {
+        return of(graph, VariantGraphRanking.ranks(graph));
+    }
+
+    /**
+     * @param ranks the rank of each vertex, indexed by vertex identifier; vertices with negative ranks are skipped
+     */
+    public static AlignmentTable of(IndexedVariantGraph graph, int[] ranks) {
+        final WitnessSet.Index index = graph.witnessIndex();
+        final Witness[] witnesses = graph.witnesses().stream().sorted(Witness.SIGIL_COMPARATOR).toArray(Witness[]::new);
+        final int[] rows = new int[index.size()];
+        Arrays.fill(rows, -1);
+        for (int row = 0; row < witnesses.length; row++) {
+            rows[index.ordinalOf(witnesses[row])] = row;
+        }
+
+        // bucket vertices by rank
+        int rankCount = 0;
+        for (int rank : ranks) {
+            rankCount = Math.max(rankCount, rank + 1);
+        }
+        final int[] rankOffsets = new int[rankCount + 1];
+        for (int rank : ranks) {
+            if (rank >= 0) {
+                rankOffsets[rank + 1]++;
+            }
+        }
+        for (int r = 0; r < rankCount; r++) {
+            rankOffsets[r + 1] += rankOffsets[r];
+        }
+        final int[] byRank = new int[rankOffsets[rankCount]];
+        final int[] next = Arrays.copyOf(rankOffsets, rankCount);
+        for (int v = 0; v < ranks.length; v++) {
+            if (ranks[v] >= 0) {
+                byRank[next[ranks[v]]++] = v;
+            }
+        }
+
+        // count tokens per row and the columns, i.e. ranks with tokens
+        final int[] rowTokens = new int[witnesses.length + 1];
+        int columns = 0;
+        for (int r = 0; r < rankCount; r++) {
+            boolean column = false;
+            for (int vc = rankOffsets[r]; vc < rankOffsets[r + 1]; vc++) {
+                for (Token token : graph.tokens(byRank[vc])) {
+                    rowTokens[row(rows, index, token) + 1]++;
+                    column = true;
+                }
+            }
+            if (column) {
+                columns++;
+            }
+        }
+        for (int row = 0; row < witnesses.length; row++) {
+            rowTokens[row + 1] += rowTokens[row];
+        }
+
+        final Token[] tokens = new Token[rowTokens[witnesses.length]];
+        final int[][] cellOffsets = new int[witnesses.length][columns + 1];
+        final int[] cursors = Arrays.copyOf(rowTokens, witnesses.length);
+        int column = 0;
+        for (int r = 0; r < rankCount; r++) {
+            boolean hasTokens = false;
+            for (int row = 0; row < witnesses.length; row++) {
+                cellOffsets[row][column] = cursors[row];
+            }
+            for (int vc = rankOffsets[r]; vc < rankOffsets[r + 1]; vc++) {
+                for (Token token : graph.tokens(byRank[vc])) {
+                    tokens[cursors[row(rows, index, token)]++] = token;
+                    hasTokens = true;
+                }
+            }
+            if (hasTokens) {
+                column++;
+            }
+        }
+        for (int row = 0; row < witnesses.length; row++) {
+            cellOffsets[row][columns] = cursors[row];
+        }
+        return new AlignmentTable(witnesses, columns, cellOffsets, tokens);
+    }
+
+    private static int row(int[] rows, WitnessSet.Index index, Token token) {
+        final int ordinal = index.ordinalOf(token.getWitness());
+        if (ordinal < 0 || rows[ordinal] < 0) {
+            throw new IllegalArgumentException(String.valueOf(token));
+        }
+        return rows[ordinal];
+    }
+
+    /**
+     * @return the witnesses of the table's rows, ordered by sigil
+     */
+    public List<Witness> witnesses() {
+        return Collections.unmodifiableList(Arrays.asList(witnesses));
+    }
+
+    public int rows() {
+        return witnesses.length;
+    }
+
+    public int columns() {
+        return columns;
+    }
+
+    public int size(int row, int column) {
+        return cellOffsets[row][column + 1] - cellOffsets[row][column];
+    }
+
+    public boolean isEmpty(int row, int column) {
+        return size(row, column) == 0;
+    }
+
+    public Token token(int row, int column, int index) {
+        if (index < 0 || index >= size(row, column)) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        return tokens[cellOffsets[row][column] + index];
+    }
+
+    /**
+     * @return a read-only view of the tokens of a cell
+     */
+    public List<Token> tokens(int row, int column) {
+        return Collections.unmodifiableList(Arrays.asList(tokens).subList(cellOffsets[row][column], cellOffsets[row][column + 1]));
+    }
+
+    /**
+     * @return a cursor positioned before the first column
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Iterates the columns of the table; cells of the current column are addressed by row.
+     */
+    public class Cursor {
+
+        private int column = -1;
+
+        public boolean next() {
+            if (column < columns) {
+                column++;
+            }
+            return column < columns;
+        }
+
+        public int column() {
+            return column;
+        }
+
+        public int size(int row) {
+            return AlignmentTable.this.size(row, column);
+        }
+
+        public boolean isEmpty(int row) {
+            return AlignmentTable.this.isEmpty(row, column);
+        }
+
+        public Token token(int row, int index) {
+            return AlignmentTable.this.token(row, column, index);
+        }
+    }
+}
@@ -62,7 +62,7 @@ public class GreedyStringTilingAlgorithm extends CollationAlgorithm.Base {
 
     @Override
     public void collate(VariantGraph graph, Iterable<Token> witness) {
-        final VariantGraph.Vertex[][] vertices = VariantGraphRanking.of(graph).asArray();
+        final VariantGraph.Vertex[][] vertices = VariantGraphRanking.verticesByRank(graph);
         final Token[] tokens = StreamUtil.stream(witness).toArray(Token[]::new);
 
         final SortedSet<SortedSet<VertexMatch.WithTokenIndex>> matches = new TreeSet<>(VertexMatch.<VertexMatch.WithTokenIndex>setComparator());
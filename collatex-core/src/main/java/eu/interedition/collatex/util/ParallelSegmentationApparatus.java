@@ -19,8 +19,8 @@
 
 package eu.interedition.collatex.util;
 
+import eu.interedition.collatex.IndexedVariantGraph;
 import eu.interedition.collatex.Token;
-import eu.interedition.collatex.VariantGraph;
 import eu.interedition.collatex.Witness;
 
 import java.util.*;
@@ -40,49 +40,78 @@ public class ParallelSegmentationApparatus {
     }
 
     public static void generate(VariantGraphRanking ranking, GeneratorCallback callback) {
+        generate(ranking.graph(), ranking.ranks(), callback);
+    }
 
-        callback.start();
-
-        final Set<Witness> allWitnesses = ranking.witnesses();
-      for (final Map.Entry<Integer, Set<VariantGraph.Vertex>> row : ranking.getByRank().entrySet()) {
-        final int rank = row.getKey();
-        final Collection<VariantGraph.Vertex> verticesOfRank = row.getValue();
+    /**
+     * @param ranks the rank of each vertex, indexed by vertex identifier; negative for vertices to be skipped
+     */
+    public static void generate(IndexedVariantGraph graph, int[] ranks, GeneratorCallback callback) {
 
+        callback.start();
 
-        if (verticesOfRank.size() == 1 && verticesOfRank.stream().findFirst().map(VariantGraph.Vertex::tokens).map(Set::isEmpty).orElse(false)) {
-          // skip start and end vertex
-          continue;
+        // bucket vertices by rank
+        int rankCount = 0;
+        for (int rank : ranks) {
+            rankCount = Math.max(rankCount, rank + 1);
         }
-
-        // spreading vertices with same rank according to their registered transpositions
-        final SortedMap<Integer, List<VariantGraph.Vertex>> verticesByTranspositionRank = new TreeMap<>();
-        for (VariantGraph.Vertex v : verticesOfRank) {
-          int transpositionRank = 0;
-          for (Set<VariantGraph.Vertex> transposition : v.transpositions()) {
-            for (VariantGraph.Vertex tv : transposition) {
-              transpositionRank += (ranking.apply(tv) - rank);
+        final int[] rankOffsets = new int[rankCount + 1];
+        for (int rank : ranks) {
+            if (rank >= 0) {
+                rankOffsets[rank + 1]++;
             }
-          }
-          verticesByTranspositionRank.computeIfAbsent(transpositionRank, r -> new LinkedList<>()).add(v);
         }
+        for (int r = 0; r < rankCount; r++) {
+            rankOffsets[r + 1] += rankOffsets[r];
+        }
+        final int[] verticesByRank = new int[rankOffsets[rankCount]];
+        final int[] rankFill = Arrays.copyOf(rankOffsets, rankCount);
+        for (int v = 0; v < ranks.length; v++) {
+            if (ranks[v] >= 0) {
+                verticesByRank[rankFill[ranks[v]]++] = v;
+            }
+        }
+
+        final Set<Witness> allWitnesses = graph.witnesses();
+        for (int rank = 0; rank < rankCount; rank++) {
+            final int first = rankOffsets[rank];
+            final int last = rankOffsets[rank + 1];
 
-        // render segments
-        verticesByTranspositionRank.values().forEach(vertices -> {
-          final Map<Witness, List<Token>> tokensByWitness = new HashMap<>();
-          for (VariantGraph.Vertex v : vertices) {
-            for (Token token : v.tokens()) {
-              tokensByWitness.computeIfAbsent(token.getWitness(), w -> new LinkedList<>()).add(token);
+            if (last - first == 1 && graph.tokens(verticesByRank[first]).isEmpty()) {
+                // skip start and end vertex
+                continue;
             }
-          }
 
-          final SortedMap<Witness, Iterable<Token>> cellContents = new TreeMap<>(Witness.SIGIL_COMPARATOR);
-          for (Witness witness : allWitnesses) {
-            cellContents.put(witness, Collections.unmodifiableCollection(tokensByWitness.getOrDefault(witness, Collections.emptyList())));
-          }
+            // spreading vertices with same rank according to their registered transpositions
+            final SortedMap<Integer, List<Integer>> verticesByTranspositionRank = new TreeMap<>();
+            for (int vc = first; vc < last; vc++) {
+                final int v = verticesByRank[vc];
+                int transpositionRank = 0;
+                for (int transposition : graph.transpositions(v)) {
+                    for (int tv : graph.transposition(transposition)) {
+                        transpositionRank += (ranks[tv] - rank);
+                    }
+                }
+                verticesByTranspositionRank.computeIfAbsent(transpositionRank, r -> new LinkedList<>()).add(v);
+            }
 
-          callback.segment(cellContents);
-        });
-      }
+            // render segments
+            verticesByTranspositionRank.values().forEach(vertices -> {
+                final Map<Witness, List<Token>> tokensByWitness = new HashMap<>();
+                for (int v : vertices) {
+                    for (Token token : graph.tokens(v)) {
+                        tokensByWitness.computeIfAbsent(token.getWitness(), w -> new LinkedList<>()).add(token);
+                    }
+                }
+
+                final SortedMap<Witness, Iterable<Token>> cellContents = new TreeMap<>(Witness.SIGIL_COMPARATOR);
+                for (Witness witness : allWitnesses) {
+                    cellContents.put(witness, Collections.unmodifiableCollection(tokensByWitness.getOrDefault(witness, Collections.emptyList())));
+                }
+
+                callback.segment(cellContents);
+            });
+        }
 
         callback.end();
     }
@@ -19,114 +19,469 @@
 
 package eu.interedition.collatex.util;
 
+import eu.interedition.collatex.FrozenVariantGraph;
+import eu.interedition.collatex.IndexedVariantGraph;
 import eu.interedition.collatex.Token;
 import eu.interedition.collatex.VariantGraph;
 import eu.interedition.collatex.VariantGraph.Vertex;
 import eu.interedition.collatex.Witness;
 
-import java.util.Collections;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 /**
+ * Ranks of the vertices in a variant graph.
+ * <p>
+ * Ranks are kept in an array indexed by vertex identifier; the vertices of each rank are laid out consecutively in
+ * a second array (CSR layout). Map and set based accessors are read-only views on these arrays.
+ * <p>
+ * Rankings of a live {@link VariantGraph} refer to its vertices. Rankings of other {@link IndexedVariantGraph indexed
+ * graphs}, such as {@link FrozenVariantGraph frozen} ones, address vertices by identifier only, via {@link #rank(int)}
+ * and {@link #vertexIdentifiers(int)}; their views on {@link VariantGraph.Vertex vertex objects} throw
+ * {@link UnsupportedOperationException}. Only the ranks of a {@link VariantGraph} can become {@link #isStale() stale}.
+ *
  * @author <a href="http://gregor.middell.net/">Gregor Middell</a>
  * @author Ronald Haentjens Dekker
  */
 public class VariantGraphRanking implements Iterable<Set<VariantGraph.Vertex>>, Function<Vertex, Integer> {
 
-    private final Map<VariantGraph.Vertex, Integer> byVertex = new HashMap<>();
-    private final SortedMap<Integer, Set<Vertex>> byRank = new TreeMap<>();
-    private final VariantGraph graph;
+    /**
+     * Returned by {@link #rank(VariantGraph.Vertex)} for vertices without a rank.
+     */
+    public static final int UNRANKED = Integer.MIN_VALUE;
+
+    private final IndexedVariantGraph graph;
+    private final int modCount;
+    private final int[] ranks;
+    private final int minRank;
+    private final int[] rankOffsets;
+    private final int[] byRank;
 
-    VariantGraphRanking(VariantGraph graph) {
+    VariantGraphRanking(IndexedVariantGraph graph, int[] ranks) {
         this.graph = graph;
+        this.modCount = (graph instanceof VariantGraph ? ((VariantGraph) graph).modCount() : 0);
+        this.ranks = ranks;
+
+        int minRank = Integer.MAX_VALUE;
+        int maxRank = Integer.MIN_VALUE;
+        int ranked = 0;
+        for (int rank : ranks) {
+            if (rank != UNRANKED) {
+                minRank = Math.min(minRank, rank);
+                maxRank = Math.max(maxRank, rank);
+                ranked++;
+            }
+        }
+        this.minRank = (ranked == 0 ? 0 : minRank);
+        this.rankOffsets = new int[(ranked == 0 ? 0 : maxRank - minRank + 1) + 1];
+        for (int rank : ranks) {
+            if (rank != UNRANKED) {
+                rankOffsets[rank - this.minRank + 1]++;
+            }
+        }
+        for (int r = 1; r < rankOffsets.length; r++) {
+            rankOffsets[r] += rankOffsets[r - 1];
+        }
+        this.byRank = new int[ranked];
+        final int[] next = Arrays.copyOf(rankOffsets, rankOffsets.length - 1);
+        for (int v = 0; v < ranks.length; v++) {
+            if (ranks[v] != UNRANKED) {
+                byRank[next[ranks[v] - this.minRank]++] = v;
+            }
+        }
     }
 
+    /**
+     * Takes a snapshot of the ranks maintained by the given graph.
+     */
     public static VariantGraphRanking of(VariantGraph graph) {
-        final VariantGraphRanking ranking = new VariantGraphRanking(graph);
-        for (VariantGraph.Vertex v : graph.vertices()) {
+        final int[] ranks = new int[graph.size()];
+        for (int v = 0; v < ranks.length; v++) {
+            final int rank = graph.rank(v);
+            ranks[v] = (rank < 0 ? UNRANKED : rank);
+        }
+        return new VariantGraphRanking(graph, ranks);
+    }
+
+    /**
+     * Ranks the given graph; vertices not reachable from the start vertex have no rank.
+     *
+     * @see #ranks(IndexedVariantGraph)
+     */
+    public static VariantGraphRanking of(IndexedVariantGraph graph) {
+        if (graph instanceof VariantGraph) {
+            return of((VariantGraph) graph);
+        }
+        final int[] ranks = ranks(graph);
+        for (int v = 0; v < ranks.length; v++) {
+            if (ranks[v] < 0) {
+                ranks[v] = UNRANKED;
+            }
+        }
+        return new VariantGraphRanking(graph, ranks);
+    }
+
+    /**
+     * @return the rank of each vertex, indexed by vertex identifier; <code>-1</code> for vertices not reachable from
+     * the start vertex
+     */
+    public static int[] ranks(IndexedVariantGraph graph) {
+        if (graph instanceof FrozenVariantGraph) {
+            return ((FrozenVariantGraph) graph).ranks();
+        }
+        final int[] order = VariantGraphTraversal.order(graph);
+        final int[] ranks = new int[graph.size()];
+        Arrays.fill(ranks, -1);
+        int[] sources = new int[0];
+        for (int v : order) {
+            final int inDegree = graph.inDegree(v);
+            sources = graph.incoming(v, sources);
             int rank = -1;
-            for (VariantGraph.Vertex incoming : v.incoming().keySet()) {
-                rank = Math.max(rank, ranking.byVertex.get(incoming));
+            for (int ic = 0; ic < inDegree; ic++) {
+                rank = Math.max(rank, ranks[sources[ic]]);
             }
-            rank++;
-            ranking.byVertex.put(v, rank);
-            ranking.byRank.computeIfAbsent(rank, r -> new HashSet<>()).add(v);
+            ranks[v] = rank + 1;
         }
-        return ranking;
+        return ranks;
     }
 
+    /**
+     * Ranks the graph counting only the given vertices, so vertices not given share the rank of a predecessor. The
+     * start vertex has rank <code>-1</code> unless it is given.
+     */
     public static VariantGraphRanking ofOnlyCertainVertices(VariantGraph graph, Set<VariantGraph.Vertex> vertices) {
-        final VariantGraphRanking ranking = new VariantGraphRanking(graph);
-        for (VariantGraph.Vertex v : graph.vertices()) {
+        return new VariantGraphRanking(graph, ranksOfOnlyCertainVertices(graph, vertices));
+    }
+
+    /**
+     * @return the ranks of {@link #ofOnlyCertainVertices(VariantGraph, Set)}, indexed by vertex identifier;
+     * {@link #UNRANKED} for vertices not reachable from the start vertex
+     */
+    public static int[] ranksOfOnlyCertainVertices(VariantGraph graph, Set<VariantGraph.Vertex> vertices) {
+        final int[] ranks = new int[graph.size()];
+        Arrays.fill(ranks, UNRANKED);
+        for (VariantGraph.Vertex v : inRankOrder(graph)) {
             int rank = -1;
             for (VariantGraph.Vertex incoming : v.incoming().keySet()) {
-                rank = Math.max(rank, ranking.byVertex.get(incoming));
+                rank = Math.max(rank, ranks[incoming.id()]);
             }
             if (vertices.contains(v)) {
                 rank++;
             }
-            ranking.byVertex.put(v, rank);
-            ranking.byRank.computeIfAbsent(rank, r -> new HashSet<>()).add(v);
+            ranks[v.id()] = rank;
+        }
+        return ranks;
+    }
+
+    /**
+     * Groups the vertices reachable from the start vertex by the rank the graph maintains for them, like
+     * {@link #asArray()} of a snapshot, but without taking one.
+     */
+    public static VariantGraph.Vertex[][] verticesByRank(VariantGraph graph) {
+        final int size = graph.size();
+        final int[] rankSizes = new int[graph.rank(graph.getEnd()) + 1];
+        for (int v = 0; v < size; v++) {
+            final int rank = graph.rank(v);
+            if (rank >= 0) {
+                rankSizes[rank]++;
+            }
+        }
+        final VariantGraph.Vertex[][] vertices = new VariantGraph.Vertex[rankSizes.length][];
+        for (int r = 0; r < vertices.length; r++) {
+            vertices[r] = new VariantGraph.Vertex[rankSizes[r]];
+            rankSizes[r] = 0;
+        }
+        for (int v = 0; v < size; v++) {
+            final int rank = graph.rank(v);
+            if (rank >= 0) {
+                vertices[rank][rankSizes[rank]++] = graph.vertex(v);
+            }
         }
-        return ranking;
+        return vertices;
+    }
+
+    /**
+     * Lists the vertices reachable from the start vertex ordered by their rank in the graph, which is a topological
+     * order as well.
+     */
+    static VariantGraph.Vertex[] inRankOrder(VariantGraph graph) {
+        final int size = graph.size();
+        int rankCount = 0;
+        for (int v = 0; v < size; v++) {
+            rankCount = Math.max(rankCount, graph.rank(v) + 1);
+        }
+        final int[] rankOffsets = new int[rankCount + 1];
+        for (int v = 0; v < size; v++) {
+            final int rank = graph.rank(v);
+            if (rank >= 0) {
+                rankOffsets[rank + 1]++;
+            }
+        }
+        for (int r = 0; r < rankCount; r++) {
+            rankOffsets[r + 1] += rankOffsets[r];
+        }
+        final VariantGraph.Vertex[] vertices = new VariantGraph.Vertex[rankOffsets[rankCount]];
+        for (int v = 0; v < size; v++) {
+            final int rank = graph.rank(v);
+            if (rank >= 0) {
+                vertices[rankOffsets[rank]++] = graph.vertex(v);
+            }
+        }
+        return vertices;
+    }
+
+    /**
+     * @return <code>true</code> if the graph has been modified since this ranking has been computed
+     */
+    public boolean isStale() {
+        return (graph instanceof VariantGraph) && ((VariantGraph) graph).modCount() != modCount;
     }
 
     public Set<Witness> witnesses() {
         return graph.witnesses();
     }
 
+    IndexedVariantGraph graph() {
+        return graph;
+    }
+
+    int[] ranks() {
+        final int[] ranks = new int[graph.size()];
+        for (int v = 0; v < ranks.length; v++) {
+            ranks[v] = rank(v);
+            if (ranks[v] == UNRANKED) {
+                ranks[v] = -1;
+            }
+        }
+        return ranks;
+    }
+
+    /**
+     * @return the rank of the given vertex, or {@link #UNRANKED} if it has none
+     */
+    public int rank(VariantGraph.Vertex vertex) {
+        return rank(vertex.id());
+    }
+
+    public int rank(int vertex) {
+        return (vertex < ranks.length ? ranks[vertex] : UNRANKED);
+    }
+
+    /**
+     * @return the vertices of the given rank
+     */
+    public Set<VariantGraph.Vertex> vertices(int rank) {
+        return new Rank(rank);
+    }
+
+    /**
+     * @return the identifiers of the vertices of the given rank
+     */
+    public int[] vertexIdentifiers(int rank) {
+        return Arrays.copyOfRange(byRank, from(rank), to(rank));
+    }
+
+    private int from(int rank) {
+        final int r = rank - minRank;
+        return (r < 0 || r >= size() ? 0 : rankOffsets[r]);
+    }
+
+    private int to(int rank) {
+        final int r = rank - minRank;
+        return (r < 0 || r >= size() ? 0 : rankOffsets[r + 1]);
+    }
+
+    private VariantGraph.Vertex vertex(int vertex) {
+        if (!(graph instanceof VariantGraph)) {
+            throw new UnsupportedOperationException("Vertex objects of " + graph + " are not available; use vertex identifiers");
+        }
+        return ((VariantGraph) graph).vertex(vertex);
+    }
+
     public Map<VariantGraph.Vertex, Integer> getByVertex() {
-        return Collections.unmodifiableMap(byVertex);
+        return new AbstractMap<VariantGraph.Vertex, Integer>() {
+            @Override
+            public Integer get(Object key) {
+                return (key instanceof VariantGraph.Vertex ? apply((VariantGraph.Vertex) key) : null);
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return get(key) != null;
+            }
+
+            @Override
+            public int size() {
+                return byRank.length;
+            }
+
+            @Override
+            public Set<Entry<VariantGraph.Vertex, Integer>> entrySet() {
+                return new AbstractSet<Entry<VariantGraph.Vertex, Integer>>() {
+                    @Override
+                    public Iterator<Entry<VariantGraph.Vertex, Integer>> iterator() {
+                        return Arrays.stream(byRank)
+                                .mapToObj(v -> (Entry<VariantGraph.Vertex, Integer>) new SimpleImmutableEntry<>(vertex(v), rank(v)))
+                                .iterator();
+                    }
+
+                    @Override
+                    public int size() {
+                        return byRank.length;
+                    }
+                };
+            }
+        };
     }
 
     public Map<Integer, Set<VariantGraph.Vertex>> getByRank() {
-        return Collections.unmodifiableMap(byRank);
+        return new AbstractMap<Integer, Set<VariantGraph.Vertex>>() {
+            @Override
+            public Set<VariantGraph.Vertex> get(Object key) {
+                return (containsKey(key) ? vertices((Integer) key) : null);
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return (key instanceof Integer) && (Integer) key >= minRank && (Integer) key < minRank + size();
+            }
+
+            @Override
+            public int size() {
+                return VariantGraphRanking.this.size();
+            }
+
+            @Override
+            public Set<Entry<Integer, Set<VariantGraph.Vertex>>> entrySet() {
+                return new AbstractSet<Entry<Integer, Set<VariantGraph.Vertex>>>() {
+                    @Override
+                    public Iterator<Entry<Integer, Set<VariantGraph.Vertex>>> iterator() {
+                        final Iterator<Set<VariantGraph.Vertex>> ranks = VariantGraphRanking.this.iterator();
+                        return new Iterator<Entry<Integer, Set<VariantGraph.Vertex>>>() {
+                            private int rank = minRank;
+
+                            @Override
+                            public boolean hasNext() {
+                                return ranks.hasNext();
+                            }
+
+                            @Override
+                            public Entry<Integer, Set<VariantGraph.Vertex>> next() {
+                                return new SimpleImmutableEntry<>(rank++, ranks.next());
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return VariantGraphRanking.this.size();
+                    }
+                };
+            }
+        };
     }
 
     public int size() {
-        return byRank.keySet().size();
+        return rankOffsets.length - 1;
     }
 
     @Override
     public Iterator<Set<VariantGraph.Vertex>> iterator() {
-        return byRank.values().iterator();
+        return new Iterator<Set<VariantGraph.Vertex>>() {
+            private int rank = minRank;
+
+            @Override
+            public boolean hasNext() {
+                return rank < minRank + size();
+            }
+
+            @Override
+            public Set<VariantGraph.Vertex> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return vertices(rank++);
+            }
+        };
     }
 
     public List<SortedMap<Witness, Set<Token>>> asTable() {
-        return byRank.values().stream()
-            .filter(rank -> rank.stream().anyMatch(v -> !v.tokens().isEmpty()))
-            .map(vertices -> {
-                final SortedMap<Witness, Set<Token>> row = new TreeMap<>(Witness.SIGIL_COMPARATOR);
-                vertices.stream()//
-                    .flatMap(v -> v.tokens().stream())//
-                    .forEach(token -> row.computeIfAbsent(token.getWitness(), w -> new HashSet<>()).add(token));
-                return row;
-            })
-            .collect(Collectors.toList());
+        final AlignmentTable alignmentTable = asAlignmentTable();
+        final List<SortedMap<Witness, Set<Token>>> table = new ArrayList<>(alignmentTable.columns());
+        for (AlignmentTable.Cursor column = alignmentTable.cursor(); column.next(); ) {
+            final SortedMap<Witness, Set<Token>> row = new TreeMap<>(Witness.SIGIL_COMPARATOR);
+            for (int wc = 0; wc < alignmentTable.rows(); wc++) {
+                if (!column.isEmpty(wc)) {
+                    row.put(alignmentTable.witnesses().get(wc), new HashSet<>(alignmentTable.tokens(wc, column.column())));
+                }
+            }
+            table.add(row);
+        }
+        return table;
+    }
+
+    public AlignmentTable asAlignmentTable() {
+        final int[] ranks = new int[this.ranks.length];
+        for (int v = 0; v < ranks.length; v++) {
+            ranks[v] = (this.ranks[v] == UNRANKED ? -1 : this.ranks[v] - minRank);
+        }
+        return AlignmentTable.of(graph, ranks);
     }
 
     public VariantGraph.Vertex[][] asArray() {
-        final VariantGraph.Vertex[][] arr = new VariantGraph.Vertex[byRank.size()][];
-        byRank.forEach((rank, vertices) -> arr[rank] = vertices.toArray(new Vertex[vertices.size()]));
+        final VariantGraph.Vertex[][] arr = new VariantGraph.Vertex[size()][];
+        for (int r = 0; r < arr.length; r++) {
+            arr[r] = Arrays.stream(byRank, rankOffsets[r], rankOffsets[r + 1])
+                    .mapToObj(this::vertex)
+                    .toArray(VariantGraph.Vertex[]::new);
+        }
         return arr;
     }
 
     @Override
     public Integer apply(VariantGraph.Vertex vertex) {
-        return byVertex.get(vertex);
+        final int rank = rank(vertex);
+        return (rank == UNRANKED ? null : rank);
     }
 
     public Comparator<VariantGraph.Vertex> comparator() {
-        return Comparator.comparingInt(byVertex::get);
+        return Comparator.comparingInt(this::rank);
+    }
+
+    private class Rank extends AbstractSet<VariantGraph.Vertex> {
+
+        private final int rank;
+
+        private Rank(int rank) {
+            this.rank = rank;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return (o instanceof VariantGraph.Vertex) && rank((VariantGraph.Vertex) o) == rank
+                    && ((VariantGraph.Vertex) o).graph() == graph;
+        }
+
+        @Override
+        public Iterator<VariantGraph.Vertex> iterator() {
+            return Arrays.stream(byRank, from(rank), to(rank)).mapToObj(VariantGraphRanking.this::vertex).iterator();
+        }
+
+        @Override
+        public int size() {
+            return to(rank) - from(rank);
+        }
     }
 }
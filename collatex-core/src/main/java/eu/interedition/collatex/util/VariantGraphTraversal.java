@@ -19,8 +19,11 @@
 
 package eu.interedition.collatex.util;
 
+import eu.interedition.collatex.FrozenVariantGraph;
+import eu.interedition.collatex.IndexedVariantGraph;
 import eu.interedition.collatex.VariantGraph;
 import eu.interedition.collatex.Witness;
+import eu.interedition.collatex.WitnessSet;
 
 import java.util.*;
 
@@ -29,11 +32,11 @@ import java.util.*;
  */
 public class VariantGraphTraversal implements Iterable<VariantGraph.Vertex> {
   private final VariantGraph graph;
-  private final Set<Witness> witnesses;
+  private final WitnessSet witnesses;
 
   private VariantGraphTraversal(VariantGraph graph, Set<Witness> witnesses) {
     this.graph = graph;
-    this.witnesses = witnesses;
+    this.witnesses = (witnesses == null ? null : graph.witnessIndex().of(witnesses));
   }
 
   public static VariantGraphTraversal of(VariantGraph graph, Set<Witness> witnesses) {
@@ -44,43 +47,98 @@ public class VariantGraphTraversal implements Iterable<VariantGraph.Vertex> {
     return new VariantGraphTraversal(graph, null);
   }
 
+  /**
+   * Orders the vertices of a graph topologically, visiting them in the same order as {@link #iterator()}.
+   *
+   * @return the identifiers of all vertices reachable from the start vertex
+   */
+  public static int[] order(IndexedVariantGraph graph) {
+    if (graph instanceof FrozenVariantGraph) {
+      final int[] order = new int[graph.size()];
+      Arrays.setAll(order, v -> v);
+      return order;
+    }
+    return order(graph, null);
+  }
+
+  /**
+   * Kahn's algorithm on vertex identifiers; the resulting order doubles as the work queue.
+   * <p>
+   * Per vertex, <code>pending</code> holds the number of incoming edges not traversed yet, plus one. It is
+   * initialized from the (filtered) in-degree when the vertex is first encountered; zero denotes a vertex that has not
+   * been encountered so far.
+   *
+   * @param witnesses only traverse edges of these witnesses, or all edges if <code>null</code>
+   * @throws IllegalStateException if the traversal is blocked by a cycle
+   */
+  public static int[] order(IndexedVariantGraph graph, Set<Witness> witnesses) {
+    final WitnessSet mask = (witnesses == null ? null : graph.witnessIndex().of(witnesses));
+    final int[] pending = new int[graph.size()];
+    final int[] order = new int[graph.size()];
+    int[] targets = new int[0];
+    int[] sources = new int[0];
+
+    int head = 0;
+    int tail = 0;
+    order[tail++] = graph.start();
+    pending[graph.start()] = 1;
+    while (head < tail) {
+      final int vertex = order[head++];
+      final int outDegree = graph.outDegree(vertex);
+      targets = graph.outgoing(vertex, targets);
+      for (int oc = 0; oc < outDegree; oc++) {
+        final int end = targets[oc];
+        if (mask != null && !graph.witnesses(vertex, end).intersects(mask)) {
+          continue;
+        }
+
+        if (pending[end] == 0) {
+          int endIncoming = graph.inDegree(end);
+          if (mask != null) {
+            sources = graph.incoming(end, sources);
+            for (int ic = 0, inDegree = endIncoming; ic < inDegree; ic++) {
+              if (!graph.witnesses(sources[ic], end).intersects(mask)) {
+                endIncoming--;
+              }
+            }
+          }
+          pending[end] = endIncoming + 1;
+        }
+
+        if (pending[end] == 1) {
+          throw new IllegalStateException(String.format("Encountered cycle traversing %d to %d", vertex, end));
+        } else if (--pending[end] == 1) {
+          order[tail++] = end;
+        }
+      }
+    }
+
+    for (int v = 0; v < pending.length; v++) {
+      if (pending[v] > 1) {
+        throw new IllegalStateException(String.format("Encountered cycle blocking traversal of %d", v));
+      }
+    }
+    return (tail == order.length ? order : Arrays.copyOf(order, tail));
+  }
+
   @Override
   public Iterator<VariantGraph.Vertex> iterator() {
+    final int[] order = order(graph, witnesses);
     return new Iterator<VariantGraph.Vertex>() {
 
-      private final Map<VariantGraph.Vertex, Long> encountered = new HashMap<>();
-      private final Queue<VariantGraph.Vertex> queue = new ArrayDeque<>();
-      private Optional<VariantGraph.Vertex> next = Optional.of(graph.getStart());
+      private int next = 0;
 
       @Override
       public boolean hasNext() {
-        return next.isPresent();
+        return next < order.length;
       }
 
       @Override
       public VariantGraph.Vertex next() {
-        final VariantGraph.Vertex next = this.next.get();
-        for (Map.Entry<VariantGraph.Vertex, Set<Witness>> edge : next.outgoing().entrySet()) {
-          if (witnesses != null && edge.getValue().stream().noneMatch(witnesses::contains)) {
-            continue;
-          }
-          final VariantGraph.Vertex end = edge.getKey();
-
-          final long endEncountered = Optional.ofNullable(encountered.get(end)).orElse(0L);
-          final long endIncoming = end.incoming().entrySet().stream()//
-              .filter(e -> witnesses == null || e.getValue().stream().anyMatch(witnesses::contains))//
-              .count();
-
-          if (endIncoming == endEncountered) {
-            throw new IllegalStateException(String.format("Encountered cycle traversing %s to %s", edge, end));
-          } else if ((endIncoming - endEncountered) == 1) {
-            queue.add(end);
-          }
-
-          encountered.put(end, endEncountered + 1);
+        if (!hasNext()) {
+          throw new NoSuchElementException();
         }
-        this.next = Optional.ofNullable(queue.poll());
-        return next;
+        return graph.vertex(order[next++]);
       }
     };
   }
@@ -24,6 +24,7 @@ import eu.interedition.collatex.dekker.InspectableCollationAlgorithm;
 import eu.interedition.collatex.dekker.Match;
 import eu.interedition.collatex.matching.EqualityTokenComparator;
 import eu.interedition.collatex.simple.SimpleToken;
+import eu.interedition.collatex.simple.SimpleVariantGraphSerializer;
 import eu.interedition.collatex.simple.SimpleWitness;
 import eu.interedition.collatex.util.StreamUtil;
 import eu.interedition.collatex.util.VariantGraphRanking;
@@ -31,6 +32,9 @@ import eu.interedition.collatex.util.VariantGraphTraversal;
 import org.junit.Assert;
 import org.junit.Before;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -183,6 +187,16 @@ public abstract class AbstractTest {
                 .collect(Collectors.joining("|")));
     }
 
+    protected static String toCsv(IndexedVariantGraph graph) {
+        try {
+            final StringWriter csv = new StringWriter();
+            new SimpleVariantGraphSerializer(graph).toCsv(csv);
+            return csv.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     protected void assertPhraseMatches(String... expectedPhrases) {
         List<List<Match>> phraseMatches = ((InspectableCollationAlgorithm) collationAlgorithm).getPhraseMatches();
         int i = 0;
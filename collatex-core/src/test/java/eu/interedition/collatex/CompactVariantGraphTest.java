@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex;
+
+import eu.interedition.collatex.simple.SimpleWitness;
+import eu.interedition.collatex.util.VariantGraphRanking;
+import eu.interedition.collatex.util.VariantGraphTraversal;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompactVariantGraphTest extends AbstractTest {
+
+    @Test
+    public void emptyGraph() {
+        final CompactVariantGraph graph = new CompactVariantGraph();
+        assertEquals(2, graph.size());
+        assertEquals(1, graph.outDegree(graph.start()));
+        assertEquals(1, graph.inDegree(graph.end()));
+        assertTrue(graph.witnesses().isEmpty());
+        assertArrayEquals(new int[]{graph.start(), graph.end()}, VariantGraphTraversal.order(graph));
+    }
+
+    @Test
+    public void oneWitness() {
+        final SimpleWitness[] w = createWitnesses("only one witness");
+        final CompactVariantGraph graph = replay(collate(w), w);
+
+        assertEquals(5, graph.size());
+        assertEquals(0, graph.inDegree(graph.start()));
+        assertEquals(null, graph.witnesses(graph.start(), graph.end()));
+        assertArrayEquals(new int[]{0, 4, 1, 2, 3}, VariantGraphRanking.ranks(graph));
+        assertHasWitnesses(graph.witnesses(graph.start(), 2), w[0]);
+        assertHasWitnesses(graph.witnesses(4, graph.end()), w[0]);
+    }
+
+    @Test
+    public void sameAlignmentAsVariantGraph() {
+        final SimpleWitness[] w = createWitnesses("the black cat and the white dog", "the white cat and the black dog", "a black cat");
+        final VariantGraph graph = collate(w);
+        final CompactVariantGraph compact = replay(graph, w);
+
+        assertEquals(graph.size(), compact.size());
+        assertEquals(graph.witnesses(), compact.witnesses());
+        assertArrayEquals(VariantGraphRanking.ranks(graph), VariantGraphRanking.ranks(compact));
+        assertEquals(toCsv(graph), toCsv(compact));
+    }
+
+    private static CompactVariantGraph replay(VariantGraph graph, SimpleWitness... witnesses) {
+        final Map<Token, Integer> vertices = new HashMap<>();
+        for (int v = 0; v < graph.size(); v++) {
+            for (Token token : graph.tokens(v)) {
+                vertices.put(token, v);
+            }
+        }
+
+        final CompactVariantGraph compact = new CompactVariantGraph();
+        final CollationAlgorithm.Base merger = new CollationAlgorithm.Base() {
+            @Override
+            public void collate(VariantGraph against, Iterable<Token> witness) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        for (SimpleWitness witness : witnesses) {
+            merger.merge(compact, witness, token -> {
+                final int vertex = vertices.get(token);
+                return (vertex < compact.size() ? vertex : -1);
+            });
+        }
+        for (int t = 0; t < graph.transpositionCount(); t++) {
+            compact.transpose(graph.transposition(t));
+        }
+        return compact;
+    }
+}
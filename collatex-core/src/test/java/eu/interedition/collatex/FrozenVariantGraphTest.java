@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex;
+
+import eu.interedition.collatex.simple.SimpleWitness;
+import eu.interedition.collatex.util.ParallelSegmentationApparatus;
+import eu.interedition.collatex.util.VariantGraphRanking;
+import eu.interedition.collatex.util.VariantGraphTraversal;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrozenVariantGraphTest extends AbstractTest {
+
+    @Test
+    public void sameOutputAsLiveGraph() {
+        final SimpleWitness[] w = createWitnesses("the black cat and the white dog", "the white dog and the black cat", "a black cat");
+        final VariantGraph graph = VariantGraph.JOIN.apply(collate(w));
+        final FrozenVariantGraph frozen = graph.freeze();
+
+        assertEquals(graph.witnesses(), frozen.witnesses());
+        assertEquals(VariantGraphTraversal.order(graph).length, frozen.size());
+        assertEquals(graph.transpositions().size(), frozen.transpositionCount());
+        assertEquals(toCsv(graph), toCsv(frozen));
+    }
+
+    @Test
+    public void verticesInRankOrder() {
+        final FrozenVariantGraph frozen = collate("the black cat", "the white and black cat", "a cat").freeze();
+        final int[] ranks = VariantGraphRanking.ranks(frozen);
+
+        assertEquals(0, frozen.start());
+        assertEquals(frozen.size() - 1, frozen.end());
+        assertEquals(frozen.rankCount() - 1, ranks[frozen.end()]);
+        int[] targets = new int[0];
+        for (int v = 0; v < frozen.size(); v++) {
+            assertTrue(v == 0 || ranks[v - 1] <= ranks[v]);
+            assertTrue(frozen.firstOfRank(ranks[v]) <= v && v < frozen.firstOfRank(ranks[v] + 1));
+            targets = frozen.outgoing(v, targets);
+            for (int oc = 0; oc < frozen.outDegree(v); oc++) {
+                assertTrue(ranks[targets[oc]] > ranks[v]);
+                assertTrue(frozen.witnesses(v).containsAll(frozen.witnesses(v, targets[oc])) || v == frozen.start());
+            }
+        }
+        assertArrayEquals(IntStream.range(0, frozen.size()).toArray(), VariantGraphTraversal.order(frozen));
+    }
+
+    @Test
+    public void sameSegmentsAsLiveGraph() {
+        final VariantGraph graph = collate("the black cat and the white dog", "the white dog and the black cat", "a black cat");
+        final FrozenVariantGraph frozen = graph.freeze();
+        final List<String> expected = new ArrayList<>();
+        ParallelSegmentationApparatus.generate(VariantGraphRanking.of(graph), segments(expected));
+        final List<String> actual = new ArrayList<>();
+        ParallelSegmentationApparatus.generate(VariantGraphRanking.of(frozen), segments(actual));
+        assertEquals(expected, actual);
+    }
+
+    private static ParallelSegmentationApparatus.GeneratorCallback segments(List<String> segments) {
+        return new ParallelSegmentationApparatus.GeneratorCallback() {
+            @Override
+            public void start() {
+            }
+
+            @Override
+            public void segment(SortedMap<Witness, Iterable<Token>> contents) {
+                segments.add(contents.toString());
+            }
+
+            @Override
+            public void end() {
+            }
+        };
+    }
+
+    @Test
+    public void rankingOfFrozenGraph() {
+        final VariantGraph graph = collate("the black cat and the white dog", "the white dog and the black cat", "a black cat");
+        final VariantGraphRanking expected = VariantGraphRanking.of(graph);
+        final VariantGraphRanking actual = VariantGraphRanking.of((IndexedVariantGraph) graph.freeze());
+        assertEquals(expected.size(), actual.size());
+        for (int rank = 0; rank < expected.size(); rank++) {
+            assertEquals(expected.vertices(rank).size(), actual.vertexIdentifiers(rank).length);
+        }
+        assertEquals(expected.asTable(), actual.asTable());
+        assertFalse(actual.isStale());
+    }
+
+    @Test
+    public void concurrentReads() {
+        final FrozenVariantGraph frozen = collate("the black cat and the white dog", "the white dog and the black cat").freeze();
+        final String expected = toCsv(frozen);
+        final List<String> serialized = IntStream.range(0, 16).parallel()
+                .mapToObj(i -> toCsv(frozen))
+                .collect(Collectors.toList());
+        serialized.forEach(csv -> assertEquals(expected, csv));
+    }
+}
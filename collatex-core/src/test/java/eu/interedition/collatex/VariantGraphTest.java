@@ -23,12 +23,17 @@ import eu.interedition.collatex.simple.SimpleVariantGraphSerializer;
 import eu.interedition.collatex.simple.SimpleWitness;
 import eu.interedition.collatex.util.StreamUtil;
 import eu.interedition.collatex.util.VariantGraphTraversal;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
 import java.io.StringWriter;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
@@ -41,6 +46,28 @@ public class VariantGraphTest extends AbstractTest {
         assetGraphSize(graph, 2, 1);
     }
 
+    @Test(expected = IllegalStateException.class)
+    public void cycle() {
+        final SimpleWitness[] w = createWitnesses("a b");
+        final VariantGraph graph = collate(w);
+        final VariantGraph.Vertex a = vertexWith(graph, "a", w[0]);
+        final VariantGraph.Vertex b = vertexWith(graph, "b", w[0]);
+        graph.connect(b, a, Collections.singleton(w[0]));
+        VariantGraphTraversal.of(graph).iterator();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void cycleAmongUnrankedVertices() {
+        final SimpleWitness[] w = createWitnesses("a b");
+        final VariantGraph graph = new VariantGraph();
+        final VariantGraph.Vertex a = graph.add(w[0].getTokens().get(0));
+        final VariantGraph.Vertex b = graph.add(w[0].getTokens().get(1));
+        graph.connect(a, b, Collections.singleton(w[0]));
+        graph.connect(b, a, Collections.singleton(w[0]));
+        graph.connect(graph.getStart(), a, Collections.singleton(w[0]));
+        graph.rank(a);
+    }
+
     @Test
     public void getTokens() {
         final SimpleWitness[] w = createWitnesses("a b c d");
@@ -169,6 +196,27 @@ public class VariantGraphTest extends AbstractTest {
         assertHasWitnesses(edgeBetween(whiteVertex, catVertex), w[1]);
     }
 
+    @Test
+    public void transpositionIdentifiers() {
+        final SimpleWitness[] w = createWitnesses("a b", "c d");
+        final VariantGraph graph = collate(w);
+        final Set<VariantGraph.Vertex> transposed = new HashSet<>();
+        transposed.add(vertexWith(graph, "a", w[0]));
+        transposed.add(vertexWith(graph, "c", w[1]));
+        final Set<VariantGraph.Vertex> transposition = graph.transpose(transposed);
+        assertEquals(1, graph.transpositions().size());
+        assertSame(transposition, graph.transpose(new HashSet<>(transposed)));
+
+        final int[] members = graph.transposition(0);
+        assertEquals(transposition.size(), members.length);
+        for (int member : members) {
+            assertArrayEquals(new int[] { 0 }, graph.transpositions(member));
+            assertTrue(graph.vertex(member).transpositions().contains(transposition));
+        }
+        assertEquals(0, graph.transpose(members));
+        assertEquals(1, graph.transpositionCount());
+    }
+
     @Test
     public void joinTwoDifferentWitnessesWithTranspositions() {
         final SimpleWitness[] w = createWitnesses("voor Zo nu en dan zin2 na voor", "voor zin2 Nu en dan voor");
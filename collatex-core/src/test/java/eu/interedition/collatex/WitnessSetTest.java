@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex;
+
+import eu.interedition.collatex.simple.SimpleWitness;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class WitnessSetTest {
+
+    @Test
+    public void interning() {
+        final WitnessSet.Index index = new WitnessSet.Index();
+        final Witness a = new SimpleWitness("A");
+        final Witness b = new SimpleWitness("B");
+
+        final WitnessSet ab = index.of(Arrays.asList(a, b));
+        assertSame(ab, index.of(a).union(index.of(b)));
+        assertSame(ab, index.of(new HashSet<>(Arrays.asList(b, a))));
+        assertSame(index.empty(), index.of(new HashSet<>()));
+        assertEquals(new HashSet<>(Arrays.asList(a, b)), ab);
+        assertEquals(ab, new HashSet<>(Arrays.asList(a, b)));
+        assertEquals(new HashSet<>(Arrays.asList(a, b)).hashCode(), ab.hashCode());
+        assertEquals(Arrays.asList(a, b), new ArrayList<>(ab));
+    }
+
+    @Test
+    public void moreThan64Witnesses() {
+        final WitnessSet.Index index = new WitnessSet.Index();
+        final List<Witness> witnesses = new ArrayList<>();
+        for (int wc = 0; wc < 150; wc++) {
+            witnesses.add(new SimpleWitness("W" + wc));
+        }
+
+        final WitnessSet none = index.of(witnesses.subList(0, 0));
+        WitnessSet all = none;
+        for (Witness witness : witnesses) {
+            all = all.union(index.of(witness));
+        }
+        assertEquals(150, all.size());
+        assertEquals(witnesses, new ArrayList<>(all));
+        assertSame(all, index.of(witnesses));
+
+        final WitnessSet first = index.of(witnesses.get(0));
+        final WitnessSet last = index.of(witnesses.get(149));
+        assertTrue(all.contains(witnesses.get(100)));
+        assertTrue(all.intersects(last));
+        assertFalse(first.intersects(last));
+        assertFalse(last.contains(witnesses.get(0)));
+        assertSame(first, first.union(index.of(witnesses.get(0))));
+        assertEquals(2, first.union(last).size());
+        assertFalse(index.of(witnesses.subList(64, 150)).intersects(index.of(witnesses.subList(0, 64))));
+    }
+}
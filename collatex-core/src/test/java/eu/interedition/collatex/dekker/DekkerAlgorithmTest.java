@@ -202,4 +202,45 @@ public class DekkerAlgorithmTest extends AbstractTest {
         assertThat(graph, graph(w[2]).aligned("those to which the parent-species had been exposed under nature . there is also , i think , some probability"));
         assertThat(graph, graph(w[3]).aligned("those to which the parent-species had been exposed under nature . there is , ").aligned(4, "also").aligned(", some probability"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testProgressiveAlignment() {
+        SimpleWitness[] w = createWitnesses("και αποκριθεισ ειπεν αυτω ου βλεπεισ ταυτασ μεγαλασ οικοδομασ αμην λεγω σοι ο(υ μη α)φεθη ωδε λιθοσ επι λιθω (οσ ου) μη καταλυθη", "και αποκριθεισ ο ι̅σ̅ ειπεν αυτω βλεπεισ Ταυτασ τασ μεγαλασ οικοδομασ λεγω υμιν ου μη αφεθη λιθοσ επι λιθου οσ ου μη καταλυθη", "και ο ι̅σ̅ αποκριθεισ ειπεν αυτω βλεπεισ ταυτασ τασ μεγαλασ οικοδομασ ου μη αφεθη λιθοσ επι λιθον οσ ου μη καταλυθη");
+        VariantGraph expected = new VariantGraph();
+        new DekkerAlgorithm().collate(expected, w);
+
+        DekkerAlgorithm aligner = new DekkerAlgorithm();
+        VariantGraph graph = new VariantGraph();
+        for (SimpleWitness witness : w) {
+            aligner.collate(graph, witness);
+        }
+        assertEquals(toString(table(expected)), toString(table(graph)));
+
+        // a new aligner indexes the witnesses already in the graph
+        VariantGraph continued = new VariantGraph();
+        new DekkerAlgorithm().collate(continued, w[0], w[1]);
+        new DekkerAlgorithm().collate(continued, w[2]);
+        assertEquals(toString(table(expected)), toString(table(continued)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testProgressiveAlignmentRejectsCompactTokenIndex() {
+        SimpleWitness[] w = createWitnesses("a b c", "a c");
+        DekkerAlgorithm aligner = new DekkerAlgorithm();
+        aligner.setCompactTokenIndex(true);
+        aligner.collate(new VariantGraph(), w[0]);
+    }
+
+    @Test
+    public void testCompactTokenIndex() {
+        SimpleWitness[] w = createWitnesses("those to which the parent-species have been exposed under nature. There is, also, I think, some probability", "those to which the parent-species have been exposed under nature. There is also, I think, some probability", "those to which the parent-species had been exposed under nature. There is also, I think, some probability", "those to which the parent-species had been exposed under nature. There is, also, some probability");
+        VariantGraph expected = new VariantGraph();
+        new DekkerAlgorithm().collate(expected, w);
+
+        DekkerAlgorithm aligner = new DekkerAlgorithm();
+        aligner.setCompactTokenIndex(true);
+        VariantGraph graph = new VariantGraph();
+        aligner.collate(graph, w);
+        assertEquals(toString(table(expected)), toString(table(graph)));
+    }
+}
@@ -23,11 +23,16 @@ import eu.interedition.collatex.AbstractTest;
 import eu.interedition.collatex.VariantGraph;
 import eu.interedition.collatex.util.StreamUtil;
 import eu.interedition.collatex.util.VariantGraphRanking;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class VariantGraphRankerTest extends AbstractTest {
 
@@ -72,4 +77,50 @@ public class VariantGraphRankerTest extends AbstractTest {
         assertVertexEquals("so", vertices.get(6));
         assertEquals(6, (long) ranking.apply(vertices.get(6)));
     }
+
+    @Test
+    public void incrementalRanking() {
+        final VariantGraph graph = new VariantGraph();
+        final VariantGraphRanking empty = VariantGraphRanking.of(graph);
+        assertEquals(1, graph.rank(graph.getEnd()));
+
+        collate(graph, createWitnesses("a b c d", "a x y z c d", "b c a d"));
+        assertTrue(empty.isStale());
+        assertArrayEquals(VariantGraphRanking.ranks(graph), ranks(graph));
+
+        final VariantGraphRanking ranking = VariantGraphRanking.of(graph);
+        assertFalse(ranking.isStale());
+        VariantGraph.JOIN.apply(graph);
+        assertTrue(ranking.isStale());
+        assertArrayEquals(VariantGraphRanking.ranks(graph), ranks(graph));
+    }
+
+    @Test
+    public void rankViews() {
+        final VariantGraph graph = collate("The black cat", "The black and white cat", "The black and green cat");
+        final VariantGraphRanking ranking = VariantGraphRanking.of(graph);
+
+        assertEquals(7, ranking.size());
+        assertEquals(graph.size(), ranking.getByVertex().size());
+        assertEquals(ranking.size(), ranking.getByRank().size());
+        int rank = 0;
+        for (Set<VariantGraph.Vertex> vertices : ranking) {
+            assertEquals(vertices, ranking.getByRank().get(rank));
+            assertEquals(vertices.size(), ranking.asArray()[rank].length);
+            for (VariantGraph.Vertex vertex : vertices) {
+                assertEquals(rank, ranking.rank(vertex));
+                assertEquals(rank, (long) ranking.getByVertex().get(vertex));
+                assertTrue(ranking.vertices(rank).contains(vertex));
+            }
+            rank++;
+        }
+        assertEquals(2, ranking.vertices(4).size());
+        assertTrue(ranking.vertices(ranking.size()).isEmpty());
+        assertEquals(5, ranking.asTable().size());
+        assertArrayEquals(ranking.asArray(), VariantGraphRanking.verticesByRank(graph));
+    }
+
+    private static int[] ranks(VariantGraph graph) {
+        return IntStream.range(0, graph.size()).map(graph::rank).toArray();
+    }
 }
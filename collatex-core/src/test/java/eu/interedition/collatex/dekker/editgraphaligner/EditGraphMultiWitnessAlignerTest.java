@@ -285,6 +285,60 @@ public class EditGraphMultiWitnessAlignerTest extends AbstractTest {
     assertThat(g, graph(w[1]).aligned("a g c t"));
   }
 
+  @Test
+  public void testBandedAlignment() {
+    final SimpleWitness[] w = createWitnesses(
+        "the black cat sat on the mat and the dog sat on the rug",
+        "the black cat sat on a mat and the brown dog sat on the rug",
+        "a cat sat on the mat the dog lay on the rug",
+        "on the rug the dog sat and on the mat the cat sat",
+        "something else entirely"
+    );
+    VariantGraph g = new VariantGraph();
+    align(g, w);
+
+    VariantGraph banded = new VariantGraph();
+    EditGraphAligner aligner = new EditGraphAligner();
+    aligner.setBanded(true);
+    aligner.collate(banded, Arrays.asList(w));
+    assertThat(toString(table(banded)), is(toString(table(g))));
+  }
+
+  @Test
+  public void testLinearSpaceAlignment() {
+    final SimpleWitness[] w = createWitnesses(
+        "the black cat sat on the mat and the dog sat on the rug",
+        "the black cat sat on a mat and the brown dog sat on the rug",
+        "a cat sat on the mat the dog lay on the rug",
+        "on the rug the dog sat and on the mat the cat sat"
+    );
+    VariantGraph g = new VariantGraph();
+    align(g, w);
+
+    VariantGraph linear = new VariantGraph();
+    EditGraphAligner aligner = new EditGraphAligner();
+    aligner.setMaxTableCells(0);
+    aligner.collate(linear, Arrays.asList(w));
+    assertThat(toString(table(linear)), is(toString(table(g))));
+  }
+
+  @Test
+  public void testParallelTableFill() {
+    final String a = "the black cat sat on the mat and the dog sat on the rug ";
+    final String b = "the black cat sat on a mat and the brown dog sat on the rug ";
+    final String c = "on the rug the dog sat and on the mat the cat sat ";
+    final SimpleWitness[] w = createWitnesses(a + b + c + a, b + a + a + c, c + c + b + a);
+    VariantGraph g = new VariantGraph();
+    align(g, w);
+
+    VariantGraph parallel = new VariantGraph();
+    EditGraphAligner aligner = new EditGraphAligner();
+    aligner.setParallelTableCells(0);
+    aligner.tileSize = 32;
+    aligner.collate(parallel, Arrays.asList(w));
+    assertThat(toString(table(parallel)), is(toString(table(g))));
+  }
+
   private void align(VariantGraph g, SimpleWitness[] w) {
     EditGraphAligner aligner = new EditGraphAligner();
     List<SimpleWitness> witnesses = new ArrayList<>();
@@ -4,18 +4,34 @@ import eu.interedition.collatex.AbstractTest;
 import eu.interedition.collatex.Token;
 import eu.interedition.collatex.Witness;
 import eu.interedition.collatex.matching.EqualityTokenComparator;
+import eu.interedition.collatex.matching.StrictEqualityTokenComparator;
 import eu.interedition.collatex.simple.SimpleWitness;
+import eu.interedition.collatex.suffixarray.Algorithm;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Created by ronald on 4/20/15.
  */
 public class TokenIndexTest extends AbstractTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     class MySpecialToken implements Token {
         private final Witness w;
         protected String specialContent;
@@ -153,4 +169,271 @@ public class TokenIndexTest extends AbstractTest {
         Arrays.sort(index.token_array, new TokenIndex.MarkerTokenComparator(new MySpecialComparator()));
         assertEquals("[$1, $2, huh, interesting, nice, nice, right, very]", Arrays.toString(index.token_array));
     }
+
+    @Test
+    public void keyedComparatorYieldsSameIndex() {
+        final SimpleWitness[] w = createWitnesses("the black cat and the white dog", "the white dog and the black cat", "a black cat");
+        final EqualityTokenComparator keyed = new EqualityTokenComparator();
+        final TokenIndex byKey = new TokenIndex(keyed, w);
+        byKey.prepare();
+        final TokenIndex byComparator = new TokenIndex(keyed::compare, w);
+        byComparator.prepare();
+
+        assertArrayEquals(byComparator.suffix_array, byKey.suffix_array);
+        assertArrayEquals(byComparator.LCP_array, byKey.LCP_array);
+        assertEquals(byComparator.blocks.toString(), byKey.blocks.toString());
+    }
+
+    @Test
+    public void suffixArrayAlgorithms() {
+        final SimpleWitness[] w = createWitnesses("the black cat and the white dog", "the white dog and the black cat", "a black cat");
+        final TokenIndex expected = prepare(w, index -> index.setSuffixArrayAlgorithm(Algorithm.SAIS));
+        for (Algorithm algorithm : Algorithm.values()) {
+            final TokenIndex index = prepare(w, i -> i.setSuffixArrayAlgorithm(algorithm));
+            assertArrayEquals(algorithm.toString(), expected.suffix_array, index.suffix_array);
+            assertArrayEquals(algorithm.toString(), expected.LCP_array, index.LCP_array);
+        }
+    }
+
+    @Test
+    public void blockDepthsAndInstances() {
+        final SimpleWitness[] w = createAnimalWitnesses();
+        final TokenIndex tokenIndex = prepare(w, index -> {});
+
+        int instances = 0;
+        for (Block block : tokenIndex.blocks) {
+            final Set<Witness> witnesses = new HashSet<>();
+            for (Block.Instance instance : block.getAllInstances()) {
+                witnesses.add(instance.getWitness());
+            }
+            assertEquals(block.toString(), witnesses.size(), block.getDepth());
+            instances += block.getFrequency();
+        }
+        for (SimpleWitness witness : w) {
+            for (Block.Instance instance : tokenIndex.getBlockInstancesForWitness(witness)) {
+                assertEquals(witness, instance.getWitness());
+                instances--;
+            }
+        }
+        assertEquals(0, instances);
+    }
+
+    @Test
+    public void blockPruning() {
+        final SimpleWitness[] w = createWitnesses(
+                "the cat and the dog and the bird",
+                "the dog and the cat and the bird",
+                "a cat and a dog and the bird");
+        final TokenIndex all = prepare(w, index -> {});
+
+        final TokenIndex pruned = prepare(w, index -> index.setBlockPruning(BlockPruning.NONE.withMaximumFrequency(length -> length == 1 ? 4 : Integer.MAX_VALUE)));
+        long suppressedMatches = 0;
+        int suppressedBlocks = 0;
+        final Set<Integer> instanceBlocks = new HashSet<>();
+        for (int ic = 0; ic < pruned.block_instance_block.length; ic++) {
+            instanceBlocks.add(pruned.block_instance_block[ic]);
+        }
+        for (int b = 0; b < pruned.block_count; b++) {
+            final Block block = pruned.blocks.get(b);
+            final boolean frequent = block.length == 1 && block.getFrequency() > 4;
+            assertEquals(block.toString(), !frequent, instanceBlocks.contains(b));
+            if (frequent) {
+                suppressedBlocks++;
+                final List<Block.Instance> instances = block.getAllInstances();
+                for (Block.Instance a : instances) {
+                    for (Block.Instance b2 : instances) {
+                        if (a.start_token < b2.start_token && a.getWitness() != b2.getWitness()) {
+                            suppressedMatches++;
+                        }
+                    }
+                }
+            }
+        }
+        assertEquals(suppressedBlocks, pruned.getSuppressedBlocks());
+        assertEquals(suppressedMatches, pruned.getSuppressedMatches());
+        assertEquals(0, all.getSuppressedMatches());
+
+        final TokenIndex nearest = prepare(w, index -> index.setBlockPruning(BlockPruning.NONE.withNearestOccurrences(1)));
+        long skipped = 0;
+        for (int ic = 0; ic < all.block_instance_block.length; ic++) {
+            final int[] occurrences = all.getPrecedingOccurrences(ic);
+            final int[] nearestOccurrences = nearest.getPrecedingOccurrences(ic);
+            assertEquals(Math.min(1, occurrences.length), nearestOccurrences.length);
+            if (nearestOccurrences.length > 0) {
+                assertTrue(Arrays.stream(occurrences).anyMatch(o -> o == nearestOccurrences[0]));
+            }
+            skipped += (long) Math.max(0, occurrences.length - 1) * all.block_length[all.block_instance_block[ic]];
+        }
+        assertEquals(skipped, nearest.getSuppressedMatches());
+    }
+
+    @Test
+    public void incrementalIndexMatchesBatchIndex() {
+        final SimpleWitness[] w = createAnimalWitnesses();
+        final IncrementalTokenIndex incremental = new IncrementalTokenIndex(new EqualityTokenComparator());
+        for (int k = 0; k < w.length; k++) {
+            final TokenIndex batch = prepare(Arrays.copyOf(w, k + 1), index -> {});
+            assertEquals(batch.getStartTokenPositionForWitness(w[k]), incremental.add(w[k]));
+            assertEquals(batch.size(), incremental.size());
+            assertEquals(matchedTokens(batch, w[k]), matchedTokens(incremental, w[k]));
+        }
+    }
+
+    @Test
+    public void compactIndexYieldsSameBlocksAndOccurrences() {
+        final SimpleWitness[] w = createAnimalWitnesses();
+        final TokenIndex expected = prepare(w, index -> {});
+        final TokenIndex compact = prepare(w, index -> index.setCompact(true));
+
+        assertNull(compact.suffix_array);
+        assertNull(compact.token_array);
+        assertEquals(expected.size(), compact.size());
+        for (int i = 0; i < expected.suffix_array.length; i++) {
+            assertEquals(expected.suffix_array[i], compact.getSuffix(i));
+            assertEquals(expected.LCP_array[i], compact.getLCP(i));
+        }
+        assertArrayEquals(expected.block_instance_block, compact.block_instance_block);
+        assertArrayEquals(expected.block_instance_token, compact.block_instance_token);
+        for (int ic = 0; ic < expected.block_instance_block.length; ic++) {
+            assertArrayEquals(expected.getPrecedingOccurrences(ic), compact.getPrecedingOccurrences(ic));
+        }
+        for (SimpleWitness witness : w) {
+            assertEquals(expected.getBlockInstancesForWitness(witness).stream().map(i -> i.getTokens()).collect(Collectors.toList()),
+                    compact.getBlockInstancesForWitness(witness).stream().map(i -> i.getTokens()).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void phraseSearch() {
+        final SimpleWitness[] w = createAnimalWitnesses();
+        final TokenIndex plain = prepare(w, index -> {});
+        final TokenIndex compact = prepare(w, index -> index.setCompact(true));
+        final TokenIndex byComparator = new TokenIndex((a, b) -> new EqualityTokenComparator().compare(a, b), w);
+        byComparator.prepare();
+
+        for (String phrase : new String[] { "the", "the cat", "black cat and", "cat", "the cat the cat", "and a dog", "a cat", "dog and the black cat", "unicorn" }) {
+            final List<TokenIndex.Occurrence> expected = new ArrayList<>();
+            final List<Token> query = new SimpleWitness("q", phrase).getTokens();
+            for (SimpleWitness witness : w) {
+                final List<Token> tokens = witness.getTokens();
+                for (int start = 0; start + query.size() <= tokens.size(); start++) {
+                    int length = 0;
+                    while (length < query.size() && new EqualityTokenComparator().compare(tokens.get(start + length), query.get(length)) == 0) {
+                        length++;
+                    }
+                    if (length == query.size()) {
+                        expected.add(new TokenIndex.Occurrence(witness, start));
+                    }
+                }
+            }
+            for (TokenIndex tokenIndex : Arrays.asList(plain, compact, byComparator)) {
+                assertEquals(phrase, expected, tokenIndex.search(query));
+            }
+        }
+    }
+
+    private SimpleWitness[] createAnimalWitnesses() {
+        return createWitnesses(
+                "the black cat and the black dog and the white cat",
+                "the white dog and the black cat and the cat",
+                "a black cat and a dog",
+                "the cat the cat the cat");
+    }
+
+    private static TokenIndex prepare(SimpleWitness[] witnesses, Consumer<TokenIndex> configuration) {
+        final TokenIndex tokenIndex = new TokenIndex(new EqualityTokenComparator(), witnesses);
+        configuration.accept(tokenIndex);
+        tokenIndex.prepare();
+        return tokenIndex;
+    }
+
+    /**
+     * @return pairs of positions of a witness' tokens and of the tokens of preceding witnesses they match
+     */
+    private static Set<List<Integer>> matchedTokens(BlockIndex tokenIndex, Witness witness) {
+        final Set<List<Integer>> matches = new HashSet<>();
+        for (int ic = tokenIndex.getFirstBlockInstanceForWitness(witness); ic < tokenIndex.getEndBlockInstanceForWitness(witness); ic++) {
+            final int token = tokenIndex.getBlockInstanceToken(ic);
+            final int length = tokenIndex.getBlockLength(tokenIndex.getBlockInstanceBlock(ic));
+            for (int occurrence : tokenIndex.getPrecedingOccurrences(ic)) {
+                for (int t = 0; t < length; t++) {
+                    matches.add(Arrays.asList(token + t, occurrence + t));
+                }
+            }
+        }
+        return matches;
+    }
+
+    @Test
+    public void corpusIndexYieldsSameIndexForSubsets() throws IOException {
+        final SimpleWitness[] w = createWitnesses(
+                "the black cat and the black dog and the white cat",
+                "the white dog and the black cat and the cat",
+                "a black cat and a dog",
+                "the cat the cat the cat",
+                "and the white cat");
+        final CorpusTokenIndex corpus = new CorpusTokenIndex(new EqualityTokenComparator(), Arrays.asList(w));
+        final Path path = folder.newFile().toPath();
+        corpus.write(path);
+        final CorpusTokenIndex mapped = CorpusTokenIndex.open(path);
+        assertEquals(corpus.getSigla(), mapped.getSigla());
+
+        for (SimpleWitness[] subset : new SimpleWitness[][] { w, { w[1], w[3] }, { w[4], w[0], w[2] }, { w[3] } }) {
+            final TokenIndex expected = prepare(subset, index -> {});
+            for (CorpusTokenIndex corpusIndex : Arrays.asList(corpus, mapped)) {
+                final TokenIndex derived = prepare(subset, index -> index.setCorpusIndex(corpusIndex));
+                assertEquals(blocks(expected), blocks(derived));
+                for (SimpleWitness witness : subset) {
+                    assertEquals(matchedTokens(expected, witness), matchedTokens(derived, witness));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void corpusIndexRejectsEditedWitnesses() {
+        final CorpusTokenIndex corpus = new CorpusTokenIndex(new EqualityTokenComparator(),
+                Arrays.asList(createWitnesses("the black cat", "the white dog")));
+        prepare(createWitnesses("the brown cat", "the white dog"), index -> index.setCorpusIndex(corpus));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void corpusIndexRejectsOtherComparators() {
+        final SimpleWitness[] w = createWitnesses("The black cat", "the white dog");
+        final CorpusTokenIndex corpus = new CorpusTokenIndex(new StrictEqualityTokenComparator(), Arrays.asList(w));
+        prepare(w, index -> index.setCorpusIndex(corpus));
+    }
+
+    @Test(expected = IOException.class)
+    public void corpusIndexRejectsCorruptFiles() throws IOException {
+        final Path path = folder.newFile().toPath();
+        new CorpusTokenIndex(new EqualityTokenComparator(), Arrays.asList(createWitnesses("the black cat"))).write(path);
+        final byte[] bytes = Files.readAllBytes(path);
+        // witness count
+        ByteBuffer.wrap(bytes).putInt(2 * Integer.BYTES, Integer.MAX_VALUE);
+        Files.write(path, bytes);
+        CorpusTokenIndex.open(path);
+    }
+
+    /**
+     * @return the length, depth and sorted token positions of each block; blocks contained in another one of the same
+     * length, which the scan of the LCP array yields depending on the order of tokens, are skipped
+     */
+    private static Set<List<Integer>> blocks(TokenIndex tokenIndex) {
+        final Set<List<Integer>> blocks = new HashSet<>();
+        for (Block block : tokenIndex.blocks) {
+            final List<Integer> positions = new ArrayList<>();
+            for (int i = block.start; i <= block.end; i++) {
+                positions.add(tokenIndex.suffix_array[i]);
+            }
+            Collections.sort(positions);
+            positions.add(0, block.getDepth());
+            positions.add(0, block.length);
+            blocks.add(positions);
+        }
+        blocks.removeIf(block -> blocks.stream().anyMatch(other -> other != block
+                && other.get(0).equals(block.get(0))
+                && other.subList(2, other.size()).containsAll(block.subList(2, block.size()))));
+        return blocks;
+    }
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.lab;
+
+import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.Witness;
+import eu.interedition.collatex.simple.SimpleToken;
+import eu.interedition.collatex.simple.SimpleWitness;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Measures {@link VariantGraph#JOIN} on synthetic graphs of growing size; the time per vertex should stay constant.
+ * <p>
+ * Usage: <code>JoinBenchmark [max. number of vertices, default: 1000000]</code>
+ */
+public class JoinBenchmark {
+
+    public static void main(String... args) {
+        final int maxSize = (args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000);
+
+        // warm up
+        for (int run = 0; run < 5; run++) {
+            VariantGraph.JOIN.apply(graph(10_000));
+        }
+
+        for (int size = 1_000; size <= maxSize; size *= 10) {
+            final VariantGraph graph = graph(size);
+            final long start = System.nanoTime();
+            VariantGraph.JOIN.apply(graph);
+            final long elapsed = System.nanoTime() - start;
+            System.out.printf("%,10d vertices: %,8d ms, %,6d ns/vertex%n", size, elapsed / 1_000_000, elapsed / size);
+        }
+    }
+
+    /**
+     * Two witnesses agreeing on nine out of ten tokens. Every hundredth variant is marked as a transposition.
+     */
+    static VariantGraph graph(int size) {
+        final VariantGraph graph = new VariantGraph();
+        final SimpleWitness a = new SimpleWitness("A");
+        final SimpleWitness b = new SimpleWitness("B");
+        final Set<Witness> aSet = Collections.singleton(a);
+        final Set<Witness> bSet = Collections.singleton(b);
+
+        VariantGraph.Vertex lastA = graph.getStart();
+        VariantGraph.Vertex lastB = graph.getStart();
+        for (int tc = 0; graph.size() < size; tc++) {
+            final String content = Integer.toString(tc % 1000);
+            if (tc % 10 == 9) {
+                final VariantGraph.Vertex va = graph.add(new SimpleToken(a, content, content));
+                final VariantGraph.Vertex vb = graph.add(new SimpleToken(b, content + "'", content + "'"));
+                graph.connect(lastA, va, aSet);
+                graph.connect(lastB, vb, bSet);
+                if (tc % 100 == 99) {
+                    graph.transpose(new HashSet<>(Arrays.asList(va, vb)));
+                }
+                lastA = va;
+                lastB = vb;
+            } else {
+                final VariantGraph.Vertex v = graph.add(new SimpleToken(a, content, content));
+                v.add(Collections.singleton(new SimpleToken(b, content, content)));
+                graph.connect(lastA, v, aSet);
+                graph.connect(lastB, v, bSet);
+                lastA = v;
+                lastB = v;
+            }
+        }
+        graph.connect(lastA, graph.getEnd(), aSet);
+        graph.connect(lastB, graph.getEnd(), bSet);
+        return graph;
+    }
+}
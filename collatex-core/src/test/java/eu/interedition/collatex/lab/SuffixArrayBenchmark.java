@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.lab;
+
+import eu.interedition.collatex.simple.SimplePatternTokenizer;
+import eu.interedition.collatex.simple.SimpleTokenNormalizers;
+import eu.interedition.collatex.suffixarray.Algorithm;
+import eu.interedition.collatex.suffixarray.ISuffixArrayBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the suffix array builders on token arrays as {@link eu.interedition.collatex.dekker.token_index.TokenIndex}
+ * produces them: the concatenated witnesses of a collation, separated by unique markers, mapped to dense symbols.
+ * Its results calibrate the thresholds of {@link Algorithm#AUTO}.
+ * <p>
+ * Witnesses are variants of a base text, either read from the given text files or drawn from a Zipf-distributed
+ * vocabulary; each variant substitutes, omits and transposes a few percent of the base text's tokens.
+ * <p>
+ * Usage: <code>SuffixArrayBenchmark [text file ...]</code>
+ */
+public class SuffixArrayBenchmark {
+
+    private static final int WITNESSES = 5;
+    private static final int TRAILING_SPACE = 1024;
+
+    public static void main(String... args) throws IOException {
+        final List<String> base = new ArrayList<>();
+        for (String file : args) {
+            final String text = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+            SimplePatternTokenizer.BY_WS_OR_PUNCT.apply(text).map(SimpleTokenNormalizers.LC_TRIM_WS).forEach(base::add);
+        }
+
+        final Algorithm[] algorithms = Algorithm.values();
+        System.out.printf("%10s %8s", "length", "alphabet");
+        for (Algorithm algorithm : algorithms) {
+            System.out.printf(" %12s", algorithm);
+        }
+        System.out.println();
+
+        for (int length : new int[] { 100, 500, 1_000, 5_000, 10_000, 50_000, 100_000, 500_000, 2_000_000 }) {
+            final int[] input = symbols(base.isEmpty() ? zipf(length / WITNESSES) : cycle(base, length / WITNESSES), length);
+            final int alphabet = Arrays.stream(input, 0, length).max().orElse(0) + 1;
+            System.out.printf("%,10d %,8d", length, alphabet);
+            int[] expected = null;
+            for (Algorithm algorithm : algorithms) {
+                final long time = time(algorithm, input, length, alphabet);
+                System.out.printf(" %12s", time < 0 ? "-" : String.format("%,.3f ms", time / 1e6));
+                if (time >= 0) {
+                    final int[] sa = Arrays.copyOf(algorithm(algorithm, alphabet).buildSuffixArray(input.clone(), 0, length), length);
+                    if (expected == null) {
+                        expected = sa;
+                    } else if (!Arrays.equals(expected, sa)) {
+                        throw new IllegalStateException(algorithm + " differs");
+                    }
+                }
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * @return the median time in nanoseconds, or <code>-1</code> if the algorithm does not support the input
+     */
+    private static long time(Algorithm algorithm, int[] input, int length, int alphabet) {
+        if (algorithm(algorithm, alphabet) == null) {
+            return -1;
+        }
+        final int runs = Math.max(3, Math.min(50, 2_000_000 / length));
+        final long[] times = new long[runs];
+        for (int run = -runs; run < runs; run++) {
+            final int[] copy = input.clone();
+            final ISuffixArrayBuilder builder = algorithm(algorithm, alphabet);
+            final long start = System.nanoTime();
+            builder.buildSuffixArray(copy, 0, length);
+            if (run >= 0) {
+                times[run] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(times);
+        return times[runs / 2];
+    }
+
+    private static ISuffixArrayBuilder algorithm(Algorithm algorithm, int alphabet) {
+        switch (algorithm) {
+            case DIVSUFSORT:
+            case BPR:
+            case DEEP_SHALLOW:
+                return (alphabet <= 256 ? algorithm.getInstance() : null);
+            case SKEW:
+            case SKEW_D:
+                return (alphabet <= 0x10000 ? Algorithm.SKEW.getDecoratedInstance() : null);
+            default:
+                return algorithm.getInstance();
+        }
+    }
+
+    /**
+     * Concatenates variants of the base text, separated by unique markers, and maps them to dense symbols in order of
+     * first occurrence.
+     */
+    private static int[] symbols(List<String> base, int length) {
+        final Random random = new Random(length);
+        final int[] input = new int[length + TRAILING_SPACE];
+        final Map<String, Integer> symbols = new HashMap<>();
+        int position = 0;
+        for (int witness = 0; position < length; witness++) {
+            final List<String> variant = new ArrayList<>(base);
+            for (int t = 0; t < variant.size(); t++) {
+                final double p = random.nextDouble();
+                if (p < 0.03) {
+                    variant.set(t, variant.get(random.nextInt(variant.size())));
+                } else if (p < 0.05) {
+                    variant.remove(t);
+                } else if (p < 0.06 && t + 10 < variant.size()) {
+                    variant.add(t + random.nextInt(10), variant.remove(t));
+                }
+            }
+            variant.add("$" + witness);
+            for (String token : variant) {
+                if (position == length) {
+                    break;
+                }
+                input[position++] = symbols.computeIfAbsent(token, k -> symbols.size());
+            }
+        }
+        return input;
+    }
+
+    private static List<String> zipf(int length) {
+        final Random random = new Random(length);
+        final int vocabulary = Math.max(10, (int) (10 * Math.pow(length, 0.6)));
+        final double[] cumulative = new double[vocabulary];
+        double sum = 0;
+        for (int rank = 0; rank < vocabulary; rank++) {
+            cumulative[rank] = (sum += 1.0 / (rank + 1));
+        }
+        final List<String> text = new ArrayList<>(length);
+        for (int t = 0; t < length; t++) {
+            final int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            text.add("w" + (rank < 0 ? -rank - 1 : rank));
+        }
+        return text;
+    }
+
+    private static List<String> cycle(List<String> base, int length) {
+        return IntStream.range(0, length).mapToObj(t -> base.get(t % base.size())).collect(Collectors.toList());
+    }
+}
@@ -23,10 +23,14 @@ import eu.interedition.collatex.AbstractTest;
 import eu.interedition.collatex.Token;
 import eu.interedition.collatex.VariantGraph;
 import eu.interedition.collatex.Witness;
+import eu.interedition.collatex.simple.SimpleToken;
 import eu.interedition.collatex.simple.SimpleWitness;
+import eu.interedition.collatex.util.AlignmentTable;
+import eu.interedition.collatex.util.VariantGraphRanking;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.SortedMap;
@@ -144,4 +148,27 @@ public class AlignmentTableTest extends AbstractTest {
     public void stringOutputEmptyCells() {
         assertEquals("A: |the|black|cat|\nB: |the| | |\n", toString(table(collate("the black cat", "the"))));
     }
+
+    @Test
+    public void columnarLayout() {
+        final SimpleWitness[] w = createWitnesses("the black cat", "the black and white cat", "the cat");
+        final VariantGraph graph = collate(w);
+        final AlignmentTable table = VariantGraphRanking.of(graph).asAlignmentTable();
+        assertEquals(Arrays.asList(w[0], w[1], w[2]), table.witnesses());
+        assertEquals(5, table.columns());
+
+        final StringBuilder rows = new StringBuilder();
+        for (int row = 0; row < table.rows(); row++) {
+            rows.append('|');
+            for (AlignmentTable.Cursor cursor = table.cursor(); cursor.next(); ) {
+                for (int t = 0; t < cursor.size(row); t++) {
+                    rows.append(((SimpleToken) cursor.token(row, t)).getNormalized());
+                }
+                rows.append(cursor.isEmpty(row) ? " " : "").append('|');
+            }
+            rows.append('\n');
+        }
+        assertEquals("|the|black| | |cat|\n|the|black|and|white|cat|\n|the| | | |cat|\n", rows.toString());
+        assertEquals(AlignmentTable.of(graph).tokens(1, 3), table.tokens(1, 3));
+    }
 }
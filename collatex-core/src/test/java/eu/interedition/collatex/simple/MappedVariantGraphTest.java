@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.simple;
+
+import eu.interedition.collatex.AbstractTest;
+import eu.interedition.collatex.FrozenVariantGraph;
+import eu.interedition.collatex.Token;
+import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.util.VariantGraphRanking;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MappedVariantGraphTest extends AbstractTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip() throws IOException {
+        final SimpleWitness[] w = createWitnesses("the black cat and the white dog", "the white dog and the black cat", "a black cat");
+        final VariantGraph graph = VariantGraph.JOIN.apply(collate(w));
+        final FrozenVariantGraph frozen = graph.freeze();
+
+        final Path file = folder.newFile().toPath();
+        MappedVariantGraph.write(graph, file);
+        final MappedVariantGraph mapped = MappedVariantGraph.open(file);
+
+        assertEquals(frozen.size(), mapped.size());
+        assertEquals(frozen.transpositionCount(), mapped.transpositionCount());
+        assertArrayEquals(frozen.ranks(), VariantGraphRanking.ranks(mapped));
+        for (int v = 0; v < frozen.size(); v++) {
+            assertEquals(frozen.rank(v), mapped.rank(v));
+            assertArrayEquals(frozen.transpositions(v), mapped.transpositions(v));
+        }
+        assertEquals(toCsv(graph), toCsv(mapped));
+
+        assertEquals(w.length, mapped.witnessList().size());
+        for (int wc = 0; wc < w.length; wc++) {
+            final SimpleWitness restored = mapped.witnessList().get(wc);
+            assertEquals(w[wc].getSigil(), restored.getSigil());
+            assertEquals(contents(w[wc]), contents(restored));
+        }
+        // tokens are shared by the vertices and the witnesses
+        for (int v = 0; v < mapped.size(); v++) {
+            for (Token token : mapped.tokens(v)) {
+                assertTrue(((SimpleWitness) token.getWitness()).getTokens().stream().anyMatch(t -> t == token));
+                assertTrue(mapped.tokens(v).stream().anyMatch(t -> t == token));
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        final Path file = folder.newFile().toPath();
+        Files.write(file, new byte[64]);
+        MappedVariantGraph.open(file);
+    }
+
+    @Test
+    public void restoredTokensCanBeReplaced() throws IOException {
+        final Path file = folder.newFile().toPath();
+        MappedVariantGraph.write(collate("the black cat"), file);
+        final SimpleWitness restored = MappedVariantGraph.open(file).witnessList().get(0);
+        restored.setTokenContents(Stream.of("a", "cat"), String::toLowerCase);
+        assertEquals("a|cat", contents(restored));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedFiles() throws IOException {
+        final Path file = folder.newFile().toPath();
+        MappedVariantGraph.write(collate("the black cat", "the white cat"), file);
+        final byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - Integer.BYTES));
+        MappedVariantGraph.open(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsNegativeSectionSizes() throws IOException {
+        final Path file = folder.newFile().toPath();
+        MappedVariantGraph.write(collate("the black cat", "the white cat"), file);
+        final byte[] bytes = Files.readAllBytes(file);
+        // token count
+        ByteBuffer.wrap(bytes).putInt(7 * Integer.BYTES, -1);
+        Files.write(file, bytes);
+        MappedVariantGraph.open(file);
+    }
+
+    private static String contents(SimpleWitness witness) {
+        return witness.getTokens().stream().map(t -> ((SimpleToken) t).getContent()).collect(Collectors.joining("|"));
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.suffixarray;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class AutoSuffixArrayBuilderTest {
+
+    @Test
+    public void offsetInput() {
+        assertArrayEquals(new int[] { 3, 1, 2, 0 }, new AutoSuffixArrayBuilder().buildSuffixArray(new int[] { 9, 9, 2, 1, 2, 1 }, 2, 4));
+
+        final Random random = new Random(42);
+        for (int length : new int[] { 17, AutoSuffixArrayBuilder.SHORT_INPUT + 100 }) {
+            final int[] input = new int[length];
+            for (int i = 0; i < length; i++) {
+                input[i] = random.nextInt(50);
+            }
+            final int[] expected = new SAIS().buildSuffixArray(input.clone(), 0, length);
+
+            // offset with and without trailing space
+            for (int trailing : new int[] { 0, 1 }) {
+                final int[] shifted = new int[length + 3 + trailing];
+                System.arraycopy(input, 0, shifted, 3, length);
+                assertArrayEquals(expected, new AutoSuffixArrayBuilder().buildSuffixArray(shifted, 3, length));
+            }
+        }
+    }
+}
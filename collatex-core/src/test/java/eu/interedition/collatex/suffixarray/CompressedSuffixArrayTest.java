@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.suffixarray;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompressedSuffixArrayTest {
+
+    @Test
+    public void packedIntArray() {
+        final Random random = new Random(42);
+        for (int bits = 0; bits < 32; bits++) {
+            final int[] values = new int[1000];
+            final PackedIntArray packed = new PackedIntArray(values.length, bits);
+            for (int round = 0; round < 2; round++) {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = (bits == 0 ? 0 : random.nextInt() >>> (32 - bits));
+                    packed.set(i, values[i]);
+                }
+                for (int i = 0; i < values.length; i++) {
+                    assertEquals(values[i], packed.get(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void compressedArrays() {
+        final Random random = new Random(42);
+        for (int length : new int[] { 1, 2, 17, 1000, 100_000 }) {
+            final int[] input = new int[length];
+            for (int i = 0; i < length; i++) {
+                input[i] = (i > 100 && random.nextInt(10) > 0 ? input[i - 100] : random.nextInt(20));
+            }
+            final int[] sa = new SAIS().buildSuffixArray(input.clone(), 0, length);
+            final int[] lcp = SuffixArrays.computeLCP(input, 0, length, sa);
+
+            for (int samplingRate : new int[] { 1, 5, CompressedSuffixArray.DEFAULT_SAMPLING_RATE }) {
+                final CompressedSuffixArray compressed = new CompressedSuffixArray(sa, samplingRate);
+                for (int i = 0; i < length; i++) {
+                    assertEquals(sa[i], compressed.get(i));
+                }
+            }
+            final PackedLCPArray packed = new PackedLCPArray(lcp);
+            for (int i = 0; i < length; i++) {
+                assertEquals(lcp[i], packed.get(i));
+            }
+            if (length >= 1000) {
+                assertTrue(new CompressedSuffixArray(sa).sizeInBytes() < 2L * length);
+                assertTrue(packed.sizeInBytes() < 2L * length);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.suffixarray;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class ParallelPrefixDoublingTest {
+
+    @Test
+    public void sameAsSais() {
+        final Random random = new Random(42);
+        for (int length : new int[] { 1, 2, 17, 1000, 50_000 }) {
+            for (int alphabet : new int[] { 1, 2, 50 }) {
+                final int[] input = new int[length];
+                for (int i = 0; i < length; i++) {
+                    // repeat earlier stretches to produce long common prefixes
+                    input[i] = (i > 100 && random.nextInt(10) > 0 ? input[i - 100] : random.nextInt(alphabet));
+                }
+                final int[] expected = new SAIS().buildSuffixArray(input.clone(), 0, length);
+                assertArrayEquals(new ParallelPrefixDoubling(0).buildSuffixArray(input.clone(), 0, length), expected);
+
+                // negative symbols and offsets
+                final int[] shifted = new int[length + 3];
+                for (int i = 0; i < length; i++) {
+                    shifted[i + 3] = input[i] - alphabet;
+                }
+                assertArrayEquals(new ParallelPrefixDoubling(0).buildSuffixArray(shifted, 3, length), expected);
+                assertArrayEquals(new ParallelPrefixDoubling().buildSuffixArray(Arrays.copyOf(input, length + 5), 0, length), expected);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.suffixarray;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class SuffixArraysTest {
+
+    @Test
+    public void lcpByPhi() {
+        final Random random = new Random(42);
+        for (int length : new int[] { 1, 2, 17, 1000, 100_000 }) {
+            final int[] input = new int[length + 2];
+            for (int i = 2; i < input.length; i++) {
+                input[i] = (i > 100 && random.nextInt(10) > 0 ? input[i - 100] : random.nextInt(20));
+            }
+            final int[] sa = new ParallelPrefixDoubling().buildSuffixArray(input, 2, length);
+            final int[] expected = SuffixArrays.computeLCP(input, 2, length, sa);
+
+            assertArrayEquals(expected, SuffixArrays.computeLCPByPhi(input.clone(), 2, length, sa, false));
+            assertArrayEquals(expected, SuffixArrays.computeLCPByPhi(input.clone(), 2, length, sa, true));
+        }
+    }
+}
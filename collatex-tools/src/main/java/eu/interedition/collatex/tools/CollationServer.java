@@ -20,6 +20,7 @@
 package eu.interedition.collatex.tools;
 
 import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.dekker.token_index.TokenIndex;
 import eu.interedition.collatex.simple.SimpleCollation;
 import eu.interedition.collatex.simple.SimpleToken;
 import eu.interedition.collatex.simple.SimpleVariantGraphSerializer;
@@ -40,6 +41,7 @@ import java.io.*;
 import java.nio.charset.Charset;
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
@@ -124,21 +126,45 @@ public class CollationServer {
 
     public void service(Request request, Response response) throws Exception {
         final Deque<String> path = path(request);
-        if (path.isEmpty() || !"collate".equals(path.pop())) {
+        final String endpoint = (path.isEmpty() ? "" : path.pop());
+        if ("collate".equals(endpoint)) {
+            collate(request, response);
+        } else if ("search".equals(endpoint)) {
+            search(request, response);
+        } else {
             response.sendError(404);
+        }
+    }
+
+    private void search(Request request, Response response) throws Exception {
+        final PhraseSearch search = JsonProcessor.readPhraseSearch(request.getInputStream());
+        if (exceedsMaxCollationSize(search.getWitnesses())) {
+            response.sendError(413, "Request Entity Too Large");
             return;
         }
 
-        final SimpleCollation collation = JsonProcessor.read(request.getInputStream());
-        if (maxCollationSize > 0) {
-            for (SimpleWitness witness : collation.getWitnesses()) {
-                final int witnessLength = witness.getTokens().stream()
-                        .filter(t -> t instanceof SimpleToken).map(t -> (SimpleToken) t).mapToInt(t -> t.getContent().length()).sum();
-                if (witnessLength > maxCollationSize) {
-                    response.sendError(413, "Request Entity Too Large");
-                    return;
+        response.suspend(60, TimeUnit.SECONDS, new EmptyCompletionHandler<>());
+        collationThreads.submit(() -> {
+            try {
+                final List<TokenIndex.Occurrence> occurrences = search.search();
+
+                allowCrossOrigin(request, response);
+                response.setContentType("application/json");
+                try (final OutputStream responseStream = response.getOutputStream()) {
+                    JsonProcessor.write(search, occurrences, responseStream);
                 }
+                response.resume();
+            } catch (IOException e) {
+                // FIXME: ignored
             }
+        });
+    }
+
+    private void collate(Request request, Response response) throws Exception {
+        final SimpleCollation collation = JsonProcessor.read(request.getInputStream());
+        if (exceedsMaxCollationSize(collation.getWitnesses())) {
+            response.sendError(413, "Request Entity Too Large");
+            return;
         }
 
         response.suspend(60, TimeUnit.SECONDS, new EmptyCompletionHandler<>());
@@ -147,12 +173,7 @@ public class CollationServer {
                 final VariantGraph graph = new VariantGraph();
                 collation.collate(graph);
 
-                // CORS support
-                response.setHeader("Access-Control-Allow-Origin", Optional.ofNullable(request.getHeader("Origin")).orElse("*"));
-                response.setHeader("Access-Control-Allow-Methods", Optional.ofNullable(request.getHeader("Access-Control-Request-Method")).orElse("GET, POST, HEAD, OPTIONS"));
-                response.setHeader("Access-Control-Allow-Headers", Optional.ofNullable(request.getHeader("Access-Control-Request-Headers")).orElse("Content-Type, Accept, X-Requested-With"));
-                response.setHeader("Access-Control-Max-Age", "86400");
-                response.setHeader("Access-Control-Allow-Credentials", "true");
+                allowCrossOrigin(request, response);
 
                 final String clientAccepts = Optional.ofNullable(request.getHeader(Header.Accept)).orElse("");
 
@@ -268,6 +289,28 @@ public class CollationServer {
         });
     }
 
+    private boolean exceedsMaxCollationSize(List<SimpleWitness> witnesses) {
+        if (maxCollationSize > 0) {
+            for (SimpleWitness witness : witnesses) {
+                final int witnessLength = witness.getTokens().stream()
+                        .filter(t -> t instanceof SimpleToken).map(t -> (SimpleToken) t).mapToInt(t -> t.getContent().length()).sum();
+                if (witnessLength > maxCollationSize) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // CORS support
+    private static void allowCrossOrigin(Request request, Response response) {
+        response.setHeader("Access-Control-Allow-Origin", Optional.ofNullable(request.getHeader("Origin")).orElse("*"));
+        response.setHeader("Access-Control-Allow-Methods", Optional.ofNullable(request.getHeader("Access-Control-Request-Method")).orElse("GET, POST, HEAD, OPTIONS"));
+        response.setHeader("Access-Control-Allow-Headers", Optional.ofNullable(request.getHeader("Access-Control-Request-Headers")).orElse("Content-Type, Accept, X-Requested-With"));
+        response.setHeader("Access-Control-Max-Age", "86400");
+        response.setHeader("Access-Control-Allow-Credentials", "true");
+    }
+
     private static Deque<String> path(Request request) {
         return Pattern.compile("/+").splitAsStream(Optional.ofNullable(request.getPathInfo()).orElse(""))
             .filter(s -> !s.isEmpty())
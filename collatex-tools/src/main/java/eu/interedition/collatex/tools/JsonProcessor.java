@@ -21,9 +21,10 @@ package eu.interedition.collatex.tools;
 
 import eu.interedition.collatex.CollationAlgorithm;
 import eu.interedition.collatex.CollationAlgorithmFactory;
-import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.IndexedVariantGraph;
 import eu.interedition.collatex.Witness;
 import eu.interedition.collatex.dekker.InspectableCollationAlgorithm;
+import eu.interedition.collatex.dekker.token_index.TokenIndex;
 import eu.interedition.collatex.matching.EditDistanceTokenComparator;
 import eu.interedition.collatex.matching.EqualityTokenComparator;
 import eu.interedition.collatex.simple.SimpleCollation;
@@ -60,168 +61,228 @@ import java.util.stream.StreamSupport;
 public class JsonProcessor {
 
     public static SimpleCollation read(InputStream inputStream) throws IOException {
-        try (JsonReader reader = Json.createReader(inputStream)) {
-            final JsonStructure collationNode = reader.read();
-            if (collationNode.getValueType() != JsonValue.ValueType.OBJECT) {
-                throw new IOException("Expecting JSON object");
+        final JsonObject collationObject = readObject(inputStream);
+        final List<SimpleWitness> witnesses = readWitnesses(collationObject);
+        final Comparator<eu.interedition.collatex.Token> tokenComparator = readTokenComparator(collationObject);
+
+        CollationAlgorithm collationAlgorithm = null;
+        final JsonValue collationAlgorithmNode = collationObject.get("algorithm");
+        if (collationAlgorithmNode != null && collationAlgorithmNode.getValueType() == JsonValue.ValueType.STRING) {
+            final String collationAlgorithmValue = ((JsonString) collationAlgorithmNode).getString();
+            if ("needleman-wunsch".equalsIgnoreCase(collationAlgorithmValue)) {
+                collationAlgorithm = CollationAlgorithmFactory.needlemanWunsch(tokenComparator);
+            } else if ("gst".equalsIgnoreCase(collationAlgorithmValue)) {
+                collationAlgorithm = CollationAlgorithmFactory.greedyStringTiling(tokenComparator, 2);
+            } else if ("medite".equalsIgnoreCase(collationAlgorithmValue)) {
+                collationAlgorithm = CollationAlgorithmFactory.medite(tokenComparator, SimpleToken.TOKEN_MATCH_EVALUATOR);
             }
-            final JsonObject collationObject = (JsonObject) collationNode;
+        }
+        if (collationAlgorithm == null) {
+            collationAlgorithm = CollationAlgorithmFactory.dekker(tokenComparator);
+        }
 
-            JsonArray witnessesNode;
+        boolean joined = true;
+        try {
+            joined = collationObject.getBoolean("joined", true);
+        } catch (ClassCastException e) {
+            // ignored
+        }
+
+        if (collationAlgorithm instanceof InspectableCollationAlgorithm) {
+            boolean mergeTranspositions = true;
             try {
-                witnessesNode = collationObject.getJsonArray("witnesses");
+                mergeTranspositions = collationObject.getBoolean("transpositions", true);
             } catch (ClassCastException e) {
-                throw new IOException("Expecting 'witnesses' array");
+                // ignored
             }
+            ((InspectableCollationAlgorithm) collationAlgorithm).setMergeTranspositions(mergeTranspositions);
+        }
+        return new SimpleCollation(witnesses, collationAlgorithm, joined);
+    }
 
-            final List<SimpleWitness> witnesses = new ArrayList<>(witnessesNode.size());
+    /**
+     * Reads witnesses and a token comparator as for a collation, and a phrase to search for in its 'phrase' field.
+     */
+    public static PhraseSearch readPhraseSearch(InputStream inputStream) throws IOException {
+        final JsonObject searchObject = readObject(inputStream);
+        final List<SimpleWitness> witnesses = readWitnesses(searchObject);
+
+        final String phrase;
+        try {
+            phrase = searchObject.getString("phrase");
+        } catch (ClassCastException | NullPointerException e) {
+            throw new IOException("Expected textual 'phrase'");
+        }
+        final SimpleWitness phraseWitness = new SimpleWitness("phrase");
+        phraseWitness.setTokenContents(SimplePatternTokenizer.BY_WS_OR_PUNCT.apply(phrase), SimpleTokenNormalizers.LC_TRIM_WS);
+        if (phraseWitness.getTokens().isEmpty()) {
+            throw new IOException("Empty 'phrase' encountered");
+        }
+        return new PhraseSearch(witnesses, readTokenComparator(searchObject), phraseWitness.getTokens());
+    }
 
-            for (JsonValue witnessNode : witnessesNode) {
-                if (witnessNode.getValueType() != JsonValue.ValueType.OBJECT) {
-                    throw new IOException("Expecting witness object");
-                }
-                final JsonObject witnessObject = (JsonObject) witnessNode;
+    private static JsonObject readObject(InputStream inputStream) throws IOException {
+        try (JsonReader reader = Json.createReader(inputStream)) {
+            final JsonStructure node = reader.read();
+            if (node.getValueType() != JsonValue.ValueType.OBJECT) {
+                throw new IOException("Expecting JSON object");
+            }
+            return (JsonObject) node;
+        }
+    }
 
-                final String witnessId;
-                try {
-                    witnessId = witnessObject.getString("id").trim();
-                } catch (ClassCastException e) {
-                    throw new IOException("Expected textual witness 'id'");
-                }
-                if (witnessId.length() == 0) {
-                    throw new IOException("Empty witness 'id' encountered");
-                }
+    private static List<SimpleWitness> readWitnesses(JsonObject collationObject) throws IOException {
+        JsonArray witnessesNode;
+        try {
+            witnessesNode = collationObject.getJsonArray("witnesses");
+        } catch (ClassCastException e) {
+            throw new IOException("Expecting 'witnesses' array");
+        }
 
-                final SimpleWitness witness = new SimpleWitness(witnessId);
-                if (witnesses.contains(witness)) {
-                    throw new IOException(String.format("Duplicate sigil for witness '%s", witness));
-                }
+        final List<SimpleWitness> witnesses = new ArrayList<>(witnessesNode.size());
 
-                final JsonValue contentNode = witnessObject.get("content");
-                final JsonValue tokensNode = witnessObject.get("tokens");
-                if (contentNode == null && tokensNode == null) {
-                    throw new IOException(String.format("Expected either 'tokens' or 'content' field in witness \"%s\"", witness));
-                }
+        for (JsonValue witnessNode : witnessesNode) {
+            if (witnessNode.getValueType() != JsonValue.ValueType.OBJECT) {
+                throw new IOException("Expecting witness object");
+            }
+            final JsonObject witnessObject = (JsonObject) witnessNode;
 
-                if (tokensNode != null) {
-                    if (tokensNode.getValueType() != JsonValue.ValueType.ARRAY) {
-                        throw new IOException(String.format("Expected 'tokens' array in witness \"%s\"", witness));
-                    }
-                    final JsonArray tokensArray = (JsonArray) tokensNode;
-                    final List<eu.interedition.collatex.Token> tokens = new ArrayList<>(tokensArray.size());
-                    for (JsonValue tokenNode : tokensArray) {
-                        if (tokenNode.getValueType() != JsonValue.ValueType.OBJECT) {
-                            throw new IOException(String.format("Expected token object in 'tokens' field in witness \"%s\"", witness));
-                        }
-                        final JsonObject tokenObject = (JsonObject) tokenNode;
-                        String tokenContent;
-                        try {
-                            tokenContent = tokenObject.getString("t");
-                        } catch (ClassCastException | NullPointerException e) {
-                            throw new IOException(String.format("Expected textual token content field 't' in witness \"%s\"", witness));
-                        }
+            final String witnessId;
+            try {
+                witnessId = witnessObject.getString("id").trim();
+            } catch (ClassCastException e) {
+                throw new IOException("Expected textual witness 'id'");
+            }
+            if (witnessId.length() == 0) {
+                throw new IOException("Empty witness 'id' encountered");
+            }
 
-                        String normalizedTokenContent;
-                        if (tokenObject.containsKey("n")) {
-                            try {
-                                normalizedTokenContent = tokenObject.getString("n");
-                            } catch (ClassCastException e) {
-                                throw new IOException(String.format("Expected textual normalized token content in witness \"%s\"", witness));
-                            }
-                        } else {
-                            normalizedTokenContent = SimpleWitness.TOKEN_NORMALIZER.apply(tokenContent);
-                        }
+            final SimpleWitness witness = new SimpleWitness(witnessId);
+            if (witnesses.contains(witness)) {
+                throw new IOException(String.format("Duplicate sigil for witness '%s", witness));
+            }
 
-                        if (normalizedTokenContent == null || normalizedTokenContent.length() == 0) {
-                            throw new IOException(String.format("Empty token encountered in witness \"%s\"", witness));
-                        }
+            final JsonValue contentNode = witnessObject.get("content");
+            final JsonValue tokensNode = witnessObject.get("tokens");
+            if (contentNode == null && tokensNode == null) {
+                throw new IOException(String.format("Expected either 'tokens' or 'content' field in witness \"%s\"", witness));
+            }
 
-                        tokens.add(new Token(witness, tokenContent, normalizedTokenContent, tokenObject));
+            if (tokensNode != null) {
+                if (tokensNode.getValueType() != JsonValue.ValueType.ARRAY) {
+                    throw new IOException(String.format("Expected 'tokens' array in witness \"%s\"", witness));
+                }
+                final JsonArray tokensArray = (JsonArray) tokensNode;
+                final List<eu.interedition.collatex.Token> tokens = new ArrayList<>(tokensArray.size());
+                for (JsonValue tokenNode : tokensArray) {
+                    if (tokenNode.getValueType() != JsonValue.ValueType.OBJECT) {
+                        throw new IOException(String.format("Expected token object in 'tokens' field in witness \"%s\"", witness));
                     }
-                    witness.setTokens(tokens);
-                } else {
-                    if (contentNode.getValueType() != JsonValue.ValueType.STRING) {
-                        throw new IOException(String.format("Expected 'content' text field in witness \"%s\"", witness));
+                    final JsonObject tokenObject = (JsonObject) tokenNode;
+                    String tokenContent;
+                    try {
+                        tokenContent = tokenObject.getString("t");
+                    } catch (ClassCastException | NullPointerException e) {
+                        throw new IOException(String.format("Expected textual token content field 't' in witness \"%s\"", witness));
                     }
-                    witness.setTokenContents(
-                        SimplePatternTokenizer.BY_WS_OR_PUNCT.apply(((JsonString) contentNode).getString()),
-                        SimpleTokenNormalizers.LC_TRIM_WS
-                    );
-                }
-                witnesses.add(witness);
-            }
 
-            if (witnesses.isEmpty()) {
-                throw new IOException("No witnesses in collation");
-            }
+                    String normalizedTokenContent;
+                    if (tokenObject.containsKey("n")) {
+                        try {
+                            normalizedTokenContent = tokenObject.getString("n");
+                        } catch (ClassCastException e) {
+                            throw new IOException(String.format("Expected textual normalized token content in witness \"%s\"", witness));
+                        }
+                    } else {
+                        normalizedTokenContent = SimpleWitness.TOKEN_NORMALIZER.apply(tokenContent);
+                    }
 
-            Comparator<eu.interedition.collatex.Token> tokenComparator = null;
-            final JsonValue tokenComparatorNode = collationObject.get("tokenComparator");
-            if (tokenComparatorNode != null && tokenComparatorNode.getValueType() == JsonValue.ValueType.OBJECT) {
-                final JsonObject tokenComparatorObject = (JsonObject) tokenComparatorNode;
-                try {
-                    if ("levenshtein".equals(tokenComparatorObject.getString("type"))) {
-                        final int configuredDistance = tokenComparatorObject.getInt("distance", 0);
-                        tokenComparator = new EditDistanceTokenComparator(configuredDistance == 0 ? 1 : configuredDistance);
+                    if (normalizedTokenContent == null || normalizedTokenContent.length() == 0) {
+                        throw new IOException(String.format("Empty token encountered in witness \"%s\"", witness));
                     }
-                } catch (ClassCastException e) {
-                    // ignored
-                }
-            }
-            if (tokenComparator == null) {
-                tokenComparator = new EqualityTokenComparator();
-            }
 
-            CollationAlgorithm collationAlgorithm = null;
-            final JsonValue collationAlgorithmNode = collationObject.get("algorithm");
-            if (collationAlgorithmNode != null && collationAlgorithmNode.getValueType() == JsonValue.ValueType.STRING) {
-                final String collationAlgorithmValue = ((JsonString) collationAlgorithmNode).getString();
-                if ("needleman-wunsch".equalsIgnoreCase(collationAlgorithmValue)) {
-                    collationAlgorithm = CollationAlgorithmFactory.needlemanWunsch(tokenComparator);
-                } else if ("gst".equalsIgnoreCase(collationAlgorithmValue)) {
-                    collationAlgorithm = CollationAlgorithmFactory.greedyStringTiling(tokenComparator, 2);
-                } else if ("medite".equalsIgnoreCase(collationAlgorithmValue)) {
-                    collationAlgorithm = CollationAlgorithmFactory.medite(tokenComparator, SimpleToken.TOKEN_MATCH_EVALUATOR);
+                    tokens.add(new Token(witness, tokenContent, normalizedTokenContent, tokenObject));
                 }
+                witness.setTokens(tokens);
+            } else {
+                if (contentNode.getValueType() != JsonValue.ValueType.STRING) {
+                    throw new IOException(String.format("Expected 'content' text field in witness \"%s\"", witness));
+                }
+                witness.setTokenContents(
+                    SimplePatternTokenizer.BY_WS_OR_PUNCT.apply(((JsonString) contentNode).getString()),
+                    SimpleTokenNormalizers.LC_TRIM_WS
+                );
             }
-            if (collationAlgorithm == null) {
-                collationAlgorithm = CollationAlgorithmFactory.dekker(tokenComparator);
-            }
+            witnesses.add(witness);
+        }
+
+        if (witnesses.isEmpty()) {
+            throw new IOException("No witnesses in collation");
+        }
+        return witnesses;
+    }
 
-            boolean joined = true;
+    private static Comparator<eu.interedition.collatex.Token> readTokenComparator(JsonObject collationObject) {
+        Comparator<eu.interedition.collatex.Token> tokenComparator = null;
+        final JsonValue tokenComparatorNode = collationObject.get("tokenComparator");
+        if (tokenComparatorNode != null && tokenComparatorNode.getValueType() == JsonValue.ValueType.OBJECT) {
+            final JsonObject tokenComparatorObject = (JsonObject) tokenComparatorNode;
             try {
-                joined = collationObject.getBoolean("joined", true);
+                if ("levenshtein".equals(tokenComparatorObject.getString("type"))) {
+                    final int configuredDistance = tokenComparatorObject.getInt("distance", 0);
+                    tokenComparator = new EditDistanceTokenComparator(configuredDistance == 0 ? 1 : configuredDistance);
+                }
             } catch (ClassCastException e) {
                 // ignored
             }
-
-            if (collationAlgorithm instanceof InspectableCollationAlgorithm) {
-                boolean mergeTranspositions = true;
-                try {
-                    mergeTranspositions = collationObject.getBoolean("transpositions", true);
-                } catch (ClassCastException e) {
-                    // ignored
-                }
-                ((InspectableCollationAlgorithm) collationAlgorithm).setMergeTranspositions(mergeTranspositions);
-            }
-            return new SimpleCollation(witnesses, collationAlgorithm, joined);
         }
+        if (tokenComparator == null) {
+            tokenComparator = new EqualityTokenComparator();
+        }
+        return tokenComparator;
     }
 
-    public static void write(VariantGraph graph, OutputStream outputStream) throws IOException {
+    /**
+     * Writes the alignment table of a graph, which may be a live, a frozen or a mapped one.
+     */
+    public static void write(IndexedVariantGraph graph, OutputStream outputStream) throws IOException {
         try (final JsonGenerator jgen = Json.createGenerator(outputStream)) {
             write(jgen, graph);
         }
     }
 
-    public static void write(VariantGraph graph, PrintWriter writer) throws IOException {
+    public static void write(IndexedVariantGraph graph, PrintWriter writer) throws IOException {
         try (final JsonGenerator jgen = Json.createGenerator(writer)) {
             write(jgen, graph);
         }
     }
 
-    protected static void write(JsonGenerator jgen, VariantGraph graph) {
-        ParallelSegmentationApparatus.generate(VariantGraphRanking.of(graph), new ParallelSegmentationApparatus.GeneratorCallback() {
+    /**
+     * Writes the occurrences of a phrase, with the phrase's normalized tokens.
+     */
+    public static void write(PhraseSearch search, List<TokenIndex.Occurrence> occurrences, OutputStream outputStream) throws IOException {
+        try (final JsonGenerator jgen = Json.createGenerator(outputStream)) {
+            jgen.writeStartObject();
+
+            jgen.writeStartArray("phrase");
+            search.getPhrase().stream().map(t -> ((SimpleToken) t).getNormalized()).forEach(jgen::write);
+            jgen.writeEnd();
+
+            jgen.writeStartArray("occurrences");
+            for (TokenIndex.Occurrence occurrence : occurrences) {
+                jgen.writeStartObject();
+                jgen.write("witness", occurrence.witness.getSigil());
+                jgen.write("position", occurrence.position);
+                jgen.writeEnd();
+            }
+            jgen.writeEnd();
+
+            jgen.writeEnd();
+        }
+    }
+
+    protected static void write(JsonGenerator jgen, IndexedVariantGraph graph) {
+        ParallelSegmentationApparatus.generate(graph, VariantGraphRanking.ranks(graph), new ParallelSegmentationApparatus.GeneratorCallback() {
             @Override
             public void start() {
                 jgen.writeStartObject();
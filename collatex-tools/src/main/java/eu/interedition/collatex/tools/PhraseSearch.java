@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.tools;
+
+import eu.interedition.collatex.Token;
+import eu.interedition.collatex.dekker.token_index.TokenIndex;
+import eu.interedition.collatex.simple.SimpleWitness;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A phrase to be searched for in witnesses, via the suffix array of a {@link TokenIndex}.
+ */
+public class PhraseSearch {
+
+    private final List<SimpleWitness> witnesses;
+    private final Comparator<Token> comparator;
+    private final List<Token> phrase;
+
+    public PhraseSearch(List<SimpleWitness> witnesses, Comparator<Token> comparator, List<Token> phrase) {
+        this.witnesses = witnesses;
+        this.comparator = comparator;
+        this.phrase = phrase;
+    }
+
+    public List<SimpleWitness> getWitnesses() {
+        return witnesses;
+    }
+
+    public Comparator<Token> getComparator() {
+        return comparator;
+    }
+
+    public List<Token> getPhrase() {
+        return phrase;
+    }
+
+    public List<TokenIndex.Occurrence> search() {
+        final TokenIndex tokenIndex = new TokenIndex(comparator, witnesses);
+        tokenIndex.prepare();
+        return tokenIndex.search(phrase);
+    }
+}